@@ -0,0 +1,61 @@
+package net.contal.demo.benchmarks;
+
+import net.contal.demo.AccountNumberAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Account number allocation throughput, shared by every benchmark thread, against an embedded in-memory H2.
+ * <p>
+ * A block of {@code blockSize} counters costs one database round trip, every number in it one atomic increment, so
+ * the smaller the block the more the threads queue for refills. Run it across thread counts with
+ * {@code -PjmhThreads=8 -PjmhIncludes=AccountNumberAllocatorBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AccountNumberAllocatorBenchmark {
+
+    private static final int BULK_SIZE = 100;
+
+    @Param({"100", "1000", "10000"})
+    public int blockSize;
+
+    private ConfigurableApplicationContext context;
+    private AccountNumberAllocator allocator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BankServiceBenchmark.start("bench-allocator", "--bank.account-number.block-size=" + blockSize);
+        allocator = context.getBean(AccountNumberAllocator.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int nextAccountNumber() {
+        return allocator.nextAccountNumber();
+    }
+
+    /**
+     * {@value #BULK_SIZE} numbers per operation, as an import chunk allocates them.
+     */
+    @Benchmark
+    public int[] nextAccountNumbers() {
+        return allocator.nextAccountNumbers(BULK_SIZE);
+    }
+}
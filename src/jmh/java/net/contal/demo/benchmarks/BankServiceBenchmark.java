@@ -0,0 +1,131 @@
+package net.contal.demo.benchmarks;
+
+import net.contal.demo.DemoApplication;
+import net.contal.demo.modal.CustomerAccount;
+import net.contal.demo.modal.TransactionDetails;
+import net.contal.demo.modal.TransactionPage;
+import net.contal.demo.modal.TransactionRequest;
+import net.contal.demo.services.BankService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BankService hot paths against an embedded in-memory H2, for an account holding {@code historySize} transactions.
+ * <p>
+ * The history is written through the batch posting path during setup, so setup of the largest size takes a while.
+ * Posting benchmarks keep adding to the history of the benchmark account.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BankServiceBenchmark {
+
+    private static final int SEED_BATCH_SIZE = 10_000;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int historySize;
+
+    private ConfigurableApplicationContext context;
+    private BankService bankService;
+    private int accountNumber;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = start("bench-service");
+        bankService = context.getBean(BankService.class);
+
+        CustomerAccount account = new CustomerAccount();
+        account.setFirstName("Bench");
+        account.setLastName("Account");
+        accountNumber = bankService.createAnAccount(account);
+
+        List<TransactionRequest> batch = new ArrayList<>(SEED_BATCH_SIZE);
+        for (int i = 0; i < historySize; i++) {
+            batch.add(new TransactionRequest(accountNumber, 100L));
+            if (batch.size() == SEED_BATCH_SIZE || i == historySize - 1) {
+                bankService.addTransactionsBatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int createAnAccount() {
+        CustomerAccount account = new CustomerAccount();
+        account.setFirstName("Bench");
+        account.setLastName("Created");
+        return bankService.createAnAccount(account);
+    }
+
+    @Benchmark
+    public boolean addTransactions() {
+        return bankService.addTransactions(accountNumber, 100L);
+    }
+
+    @Benchmark
+    public long getBalance() {
+        return bankService.getBalance(accountNumber);
+    }
+
+    @Benchmark
+    public long getBalanceVerified() {
+        return bankService.getBalance(accountNumber, true);
+    }
+
+    @Benchmark
+    public Map<LocalDate, Long> getDateBalance() {
+        return bankService.getDateBalance(accountNumber);
+    }
+
+    @Benchmark
+    public List<TransactionDetails> getLastTenTransactions() {
+        return bankService.getLastTenTransactions(accountNumber);
+    }
+
+    @Benchmark
+    public TransactionPage getTransactionHistory() {
+        return bankService.getTransactionHistory(accountNumber, null, null);
+    }
+
+    /**
+     * Start the application without a web server on its own in-memory database.
+     *
+     * @param properties further properties, as {@code --name=value}
+     */
+    static ConfigurableApplicationContext start(String database, String... properties) {
+        // command line arguments, default properties would lose to application.properties
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "--spring.datasource.url=jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1",
+                "--spring.jpa.hibernate.ddl-auto=create-drop",
+                "--spring.jpa.show-sql=false",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN"));
+        args.addAll(Arrays.asList(properties));
+        return new SpringApplicationBuilder(DemoApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(args.toArray(new String[0]));
+    }
+}
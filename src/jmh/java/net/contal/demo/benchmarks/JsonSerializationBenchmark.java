@@ -0,0 +1,105 @@
+package net.contal.demo.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import net.contal.demo.modal.AccountDetails;
+import net.contal.demo.modal.BankTransaction;
+import net.contal.demo.modal.CustomerAccount;
+import net.contal.demo.modal.TransactionDetails;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON serialisation of the controller responses, with the object mapper configuration Spring Boot uses: the
+ * entities the controllers used to return through a reflective mapper, and the projections they return now through
+ * writers of the mapper with Afterburner, as {@code JsonConfiguration} registers it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JsonSerializationBenchmark {
+
+    @Param({"1", "10", "1000"})
+    public int listSize;
+
+    private ObjectMapper objectMapper;
+    private List<CustomerAccount> accounts;
+    private List<BankTransaction> transactions;
+
+    private ObjectWriter accountDetailsWriter;
+    private ObjectWriter transactionDetailsWriter;
+    private List<AccountDetails> accountDetails;
+    private List<TransactionDetails> transactionDetails;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        ObjectMapper afterburnerMapper = Jackson2ObjectMapperBuilder.json().modulesToInstall(new AfterburnerModule()).build();
+        accountDetailsWriter = afterburnerMapper.writerFor(new TypeReference<List<AccountDetails>>() {
+        });
+        transactionDetailsWriter = afterburnerMapper.writerFor(new TypeReference<List<TransactionDetails>>() {
+        });
+        accounts = new ArrayList<>(listSize);
+        transactions = new ArrayList<>(listSize);
+        accountDetails = new ArrayList<>(listSize);
+        transactionDetails = new ArrayList<>(listSize);
+        LocalDateTime time = LocalDateTime.of(2024, 9, 10, 12, 0);
+        for (int i = 0; i < listSize; i++) {
+            CustomerAccount account = new CustomerAccount();
+            account.setId(i);
+            account.setAccountNumber(10000000 + i);
+            account.setFirstName("First" + i);
+            account.setLastName("Last" + i);
+            account.setAccountBalanceCents(i * 1050L);
+            accounts.add(account);
+
+            BankTransaction transaction = new BankTransaction();
+            transaction.setId(i);
+            transaction.setCustomerAccount(account);
+            transaction.setTransactionAmountCents(i * 125L);
+            transaction.setTransactionTime(time.plusMinutes(i));
+            transaction.setTransactionDate(LocalDate.from(time.plusMinutes(i)));
+            transactions.add(transaction);
+
+            accountDetails.add(AccountDetails.of(account));
+            transactionDetails.add(new TransactionDetails(transaction.getId(), transaction.getTransactionAmountCents(),
+                    transaction.getTransactionDate(), transaction.getTransactionTime()));
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeAccounts() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(accounts);
+    }
+
+    @Benchmark
+    public byte[] serializeTransactions() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(transactions);
+    }
+
+    @Benchmark
+    public byte[] serializeAccountDetails() throws JsonProcessingException {
+        return accountDetailsWriter.writeValueAsBytes(accountDetails);
+    }
+
+    @Benchmark
+    public byte[] serializeTransactionDetails() throws JsonProcessingException {
+        return transactionDetailsWriter.writeValueAsBytes(transactionDetails);
+    }
+}
@@ -0,0 +1,127 @@
+package net.contal.demo.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import net.contal.demo.DbUtils;
+import net.contal.demo.modal.AccountDetails;
+import net.contal.demo.modal.BankTransaction;
+import net.contal.demo.modal.CustomerAccount;
+import net.contal.demo.modal.TransactionDetails;
+import net.contal.demo.modal.TransactionRequest;
+import net.contal.demo.services.BankService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The /banks/account and /banks/transactionsLastTen responses from query to JSON bytes, read as entities and
+ * serialised reflectively as before, against the constructor projections serialised with the application's object
+ * mapper through reused writers. Run with {@code -PjmhProfilers=gc} and compare {@code gc.alloc.rate.norm}, the
+ * bytes allocated per response.
+ * <p>
+ * Both sides run the same queries as the service on every call, without the account cache and the archive.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResponseAllocationBenchmark {
+
+    private static final String ACCOUNT_ENTITY_SQL = "from CustomerAccount ca where ca.accountNumber = :accountNumber";
+
+    private static final String ACCOUNT_DETAILS_SQL = "select new net.contal.demo.modal.AccountDetails(ca.id, " +
+            "ca.accountNumber, ca.firstName, ca.lastName, ca.accountBalanceCents) from CustomerAccount ca " +
+            "where ca.accountNumber = :accountNumber";
+
+    private static final String LAST_TEN_ENTITIES_SQL = "select bt from BankTransaction bt " +
+            "where bt.customerAccount.accountNumber = :accountNumber order by bt.transactionTime desc, bt.id desc";
+
+    private static final String LAST_TEN_SQL = "select new net.contal.demo.modal.TransactionDetails(bt.id, " +
+            "bt.transactionAmountCents, bt.transactionDate, bt.transactionTime) from BankTransaction bt " +
+            "where bt.customerAccount.accountNumber = :accountNumber order by bt.transactionTime desc, bt.id desc";
+
+    private ConfigurableApplicationContext context;
+    private BankService bankService;
+    private DbUtils dbUtils;
+    private int accountNumber;
+
+    private ObjectMapper reflectiveMapper;
+    private ObjectWriter accountWriter;
+    private ObjectWriter transactionsWriter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BankServiceBenchmark.start("bench-response");
+        bankService = context.getBean(BankService.class);
+        dbUtils = context.getBean(DbUtils.class);
+
+        CustomerAccount account = new CustomerAccount();
+        account.setFirstName("Bench");
+        account.setLastName("Account");
+        account.setAccountBalanceCents(10000L);
+        accountNumber = bankService.createAnAccount(account);
+        List<TransactionRequest> batch = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            batch.add(new TransactionRequest(accountNumber, 100L));
+        }
+        bankService.addTransactionsBatch(batch);
+
+        reflectiveMapper = Jackson2ObjectMapperBuilder.json().build();
+        ObjectMapper objectMapper = context.getBean(ObjectMapper.class);
+        accountWriter = objectMapper.writerFor(AccountDetails.class);
+        transactionsWriter = objectMapper.writerFor(new TypeReference<List<TransactionDetails>>() {
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] accountEntity() throws JsonProcessingException {
+        CustomerAccount account = dbUtils.readOnly(session -> session.createQuery(ACCOUNT_ENTITY_SQL, CustomerAccount.class)
+                .setParameter("accountNumber", accountNumber)
+                .uniqueResult());
+        return reflectiveMapper.writeValueAsBytes(account);
+    }
+
+    @Benchmark
+    public byte[] accountProjection() throws JsonProcessingException {
+        AccountDetails account = dbUtils.readOnly(session -> session.createQuery(ACCOUNT_DETAILS_SQL, AccountDetails.class)
+                .setParameter("accountNumber", accountNumber)
+                .uniqueResult());
+        return accountWriter.writeValueAsBytes(account);
+    }
+
+    @Benchmark
+    public byte[] lastTenEntities() throws JsonProcessingException {
+        List<BankTransaction> transactions = dbUtils.readOnly(session -> session.createQuery(LAST_TEN_ENTITIES_SQL, BankTransaction.class)
+                .setParameter("accountNumber", accountNumber)
+                .setMaxResults(10)
+                .getResultList());
+        return reflectiveMapper.writeValueAsBytes(transactions);
+    }
+
+    @Benchmark
+    public byte[] lastTenProjection() throws JsonProcessingException {
+        List<TransactionDetails> transactions = dbUtils.readOnly(session -> session.createQuery(LAST_TEN_SQL, TransactionDetails.class)
+                .setParameter("accountNumber", accountNumber)
+                .setMaxResults(10)
+                .getResultList());
+        return transactionsWriter.writeValueAsBytes(transactions);
+    }
+}
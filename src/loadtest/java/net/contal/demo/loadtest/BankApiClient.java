@@ -0,0 +1,98 @@
+package net.contal.demo.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal blocking client of the /banks API. Connections are kept alive and reused by the JDK
+ * as long as every response body is read to the end.
+ */
+final class BankApiClient {
+
+    private final String baseUrl;
+
+    BankApiClient(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    /**
+     * @return account number of the new account
+     */
+    int createAccount(double openingBalance) throws IOException {
+        Response response = post("/banks/create",
+                "{\"firstName\":\"Load\",\"lastName\":\"Test\",\"accountBalance\":" + openingBalance + "}");
+        if (response.status != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Account creation failed with " + response.status + ": " + response.body);
+        }
+        return Integer.parseInt(response.body.trim());
+    }
+
+    /**
+     * @return HTTP status of the response
+     */
+    int execute(Operation operation, int accountNumber) throws IOException {
+        String account = "{\"accountNumber\":" + accountNumber + "}";
+        switch (operation) {
+            case CREATE:
+                return post("/banks/create", "{\"firstName\":\"Load\",\"lastName\":\"Test\"}").status;
+            case DEPOSIT:
+                return post("/banks/transaction?accountNumber=" + accountNumber + "&amount=10.0", null).status;
+            case WITHDRAW:
+                return post("/banks/transaction?accountNumber=" + accountNumber + "&amount=-5.0", null).status;
+            case BALANCE:
+                return post("/banks/balance", account).status;
+            case LAST_TEN:
+                return post("/banks/transactionsLastTen", account).status;
+            case DATE_BALANCE:
+                return post("/banks/transactions", account).status;
+            default:
+                throw new IllegalArgumentException("Unsupported operation " + operation);
+        }
+    }
+
+    private Response post(String path, String json) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(30000);
+        if (json != null) {
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        return new Response(status, in == null ? "" : readFully(in));
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class Response {
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package net.contal.demo.loadtest;
+
+import net.contal.demo.DemoApplication;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-model load test of the /banks API.
+ * <p>
+ * Requests arrive at a fixed average rate whatever the response times are, the way independent clients do,
+ * so an overloaded server builds a backlog and its tail latency grows instead of the generator slowing down.
+ * The application is started on a random local port with a file-backed H2 database unless {@code --url} points
+ * at a running one. Every other option is listed in {@link LoadTestConfig}; run it with
+ * {@code ./gradlew loadTest -PloadTestArgs="--rate=500 --duration=120"}.
+ */
+public final class LoadTest {
+
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final LoadTestConfig config;
+    private final BankApiClient client;
+    private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+    private final Random random;
+    private final List<Operation> weightedOperations = new ArrayList<>();
+    private int[] accounts;
+
+    private LoadTest(LoadTestConfig config, String baseUrl) {
+        this.config = config;
+        this.client = new BankApiClient(baseUrl);
+        this.random = new Random(config.seed);
+        for (Map.Entry<Operation, Integer> weight : config.mix.entrySet()) {
+            stats.put(weight.getKey(), new OperationStats());
+            for (int i = 0; i < weight.getValue(); i++) {
+                weightedOperations.add(weight.getKey());
+            }
+        }
+        if (weightedOperations.isEmpty()) {
+            throw new IllegalArgumentException("The operation mix is empty");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.parse(args);
+        // the JDK keeps at most http.maxConnections idle connections per host, 5 by default
+        System.setProperty("http.maxConnections", String.valueOf(config.connections));
+
+        ConfigurableApplicationContext context = null;
+        String baseUrl = config.url;
+        if (baseUrl == null) {
+            context = startApplication(config);
+            baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        }
+        try {
+            new LoadTest(config, baseUrl).run();
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext startApplication(LoadTestConfig config) {
+        File database = new File(config.databaseDirectory, "bank");
+        List<String> properties = new ArrayList<>();
+        properties.add("server.port=0");
+        properties.add("spring.datasource.url=jdbc:h2:file:" + database.getAbsolutePath());
+        properties.add("spring.jpa.hibernate.ddl-auto=create");
+        properties.add("spring.jpa.show-sql=false");
+        properties.add("spring.main.banner-mode=off");
+        properties.add("logging.level.root=WARN");
+        // per request logging of the application would dominate the measurement
+        properties.add("logging.level.net.contal.demo=OFF");
+        properties.addAll(config.applicationProperties);
+        // command line arguments, default properties would lose to application.properties
+        List<String> args = new ArrayList<>(properties.size());
+        for (String property : properties) {
+            args.add("--" + property);
+        }
+        return new SpringApplicationBuilder(DemoApplication.class)
+                .run(args.toArray(new String[0]));
+    }
+
+    private void run() throws Exception {
+        System.out.println("Load test: " + config);
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(config.connections, config.connections,
+                0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        try {
+            seedAccounts(workers);
+            if (config.warmupSeconds > 0) {
+                System.out.println("Warming up for " + config.warmupSeconds + "s");
+                drive(workers, config.warmupSeconds);
+                // requests still queued from the warmup would otherwise be counted in the measurement
+                awaitIdle(workers);
+                for (OperationStats operationStats : stats.values()) {
+                    operationStats.reset();
+                }
+            }
+            System.out.println("Measuring for " + config.durationSeconds + "s");
+            long start = System.nanoTime();
+            int maxBacklog = drive(workers, config.durationSeconds);
+            awaitIdle(workers);
+            double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+            report(seconds, maxBacklog);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private void seedAccounts(ExecutorService workers) throws Exception {
+        System.out.println("Creating " + config.accounts + " accounts");
+        List<Future<Integer>> created = new ArrayList<>(config.accounts);
+        for (int i = 0; i < config.accounts; i++) {
+            created.add(workers.submit(() -> client.createAccount(config.openingBalance)));
+        }
+        accounts = new int[config.accounts];
+        for (int i = 0; i < accounts.length; i++) {
+            accounts[i] = created.get(i).get();
+        }
+    }
+
+    /**
+     * Schedule requests for the given time, without waiting for responses.
+     *
+     * @return largest number of requests waiting for a free connection
+     */
+    private int drive(ThreadPoolExecutor workers, int seconds) {
+        double meanIntervalNanos = TimeUnit.SECONDS.toNanos(1) / (double) config.rate;
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        double offset = 0;
+        int maxBacklog = 0;
+        while (true) {
+            // exponential gaps give poisson arrivals with the configured mean rate
+            offset += config.poissonArrivals ? -Math.log(1 - random.nextDouble()) * meanIntervalNanos : meanIntervalNanos;
+            long scheduled = start + (long) offset;
+            if (scheduled - end >= 0) {
+                return maxBacklog;
+            }
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Operation operation = weightedOperations.get(random.nextInt(weightedOperations.size()));
+            int accountNumber = pickAccount();
+            workers.execute(() -> send(operation, accountNumber, scheduled));
+            maxBacklog = Math.max(maxBacklog, workers.getQueue().size());
+        }
+    }
+
+    private int pickAccount() {
+        int hotAccounts = Math.max(1, (int) (accounts.length * config.hotFraction));
+        if (random.nextDouble() < config.hotShare) {
+            return accounts[random.nextInt(hotAccounts)];
+        }
+        return accounts[random.nextInt(accounts.length)];
+    }
+
+    private void send(Operation operation, int accountNumber, long scheduled) {
+        OperationStats operationStats = stats.get(operation);
+        try {
+            int status = client.execute(operation, accountNumber);
+            operationStats.record(System.nanoTime() - scheduled, status);
+        } catch (IOException e) {
+            operationStats.recordFailure(System.nanoTime() - scheduled);
+        }
+    }
+
+    private static void awaitIdle(ThreadPoolExecutor workers) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while ((workers.getActiveCount() > 0 || !workers.getQueue().isEmpty()) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private void report(double seconds, int maxBacklog) throws IOException {
+        String header = String.format("%-12s %9s %9s %9s %9s %10s %9s %9s %9s %9s",
+                "operation", "count", "ok", "rejected", "errors", "ops/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        System.out.println(header);
+        Path report = Paths.get(config.report);
+        if (report.getParent() != null) {
+            Files.createDirectories(report.getParent());
+        }
+        boolean newReport = !Files.exists(report);
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(report, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            if (newReport) {
+                csv.println("time,label,rate,operation,count,ok,rejected,errors,throughput,p50_ms,p99_ms,p999_ms,max_ms");
+            }
+            String time = LocalDateTime.now().toString();
+            for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+                OperationStats.Snapshot snapshot = entry.getValue().snapshot();
+                Histogram latencies = snapshot.latencies;
+                double throughput = snapshot.count() / seconds;
+                double p50 = latencies.getValueAtPercentile(50) / NANOS_PER_MILLI;
+                double p99 = latencies.getValueAtPercentile(99) / NANOS_PER_MILLI;
+                double p999 = latencies.getValueAtPercentile(99.9) / NANOS_PER_MILLI;
+                double max = latencies.getMaxValue() / NANOS_PER_MILLI;
+                System.out.println(String.format("%-12s %9d %9d %9d %9d %10.1f %9.2f %9.2f %9.2f %9.2f",
+                        entry.getKey().getLabel(), snapshot.count(), snapshot.succeeded, snapshot.rejected,
+                        snapshot.failed, throughput, p50, p99, p999, max));
+                csv.println(String.format("%s,%s,%d,%s,%d,%d,%d,%d,%.1f,%.3f,%.3f,%.3f,%.3f", time, config.label, config.rate,
+                        entry.getKey().getLabel(), snapshot.count(), snapshot.succeeded, snapshot.rejected,
+                        snapshot.failed, throughput, p50, p99, p999, max));
+            }
+        }
+        System.out.println("Largest backlog waiting for a connection: " + maxBacklog);
+        System.out.println("Results appended to " + report.toAbsolutePath());
+    }
+}
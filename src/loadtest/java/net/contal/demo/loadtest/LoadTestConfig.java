@@ -0,0 +1,110 @@
+package net.contal.demo.loadtest;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Load test settings, parsed from {@code --name=value} arguments.
+ */
+final class LoadTestConfig {
+
+    /**
+     * Base url of a running application, null to start one on a random local port
+     */
+    final String url;
+    final String databaseDirectory;
+    /**
+     * Requests per second, arrivals do not wait for earlier requests to complete
+     */
+    final int rate;
+    final boolean poissonArrivals;
+    final int warmupSeconds;
+    final int durationSeconds;
+    final int connections;
+    final int accounts;
+    final double openingBalance;
+    /**
+     * Fraction of the accounts that are hot, and the share of account traffic they receive
+     */
+    final double hotFraction;
+    final double hotShare;
+    final Map<Operation, Integer> mix;
+    final String report;
+    /**
+     * Name of the run in the report, the application options by default, so runs of different modes can be compared
+     */
+    final String label;
+    final long seed;
+    /**
+     * Options with a dot in their name, passed to the started application as Spring properties
+     */
+    final List<String> applicationProperties = new ArrayList<>();
+
+    private LoadTestConfig(Map<String, String> options) {
+        url = options.get("url");
+        databaseDirectory = option(options, "database-directory", "build/loadtest");
+        rate = Integer.parseInt(option(options, "rate", "200"));
+        poissonArrivals = !"uniform".equals(option(options, "arrivals", "poisson"));
+        warmupSeconds = Integer.parseInt(option(options, "warmup", "10"));
+        durationSeconds = Integer.parseInt(option(options, "duration", "60"));
+        connections = Integer.parseInt(option(options, "connections", "256"));
+        accounts = Integer.parseInt(option(options, "accounts", "1000"));
+        openingBalance = Double.parseDouble(option(options, "opening-balance", "1000"));
+        hotFraction = Double.parseDouble(option(options, "hot-fraction", "0.01"));
+        hotShare = Double.parseDouble(option(options, "hot-share", "0.8"));
+        mix = parseMix(option(options, "mix", "create:2,deposit:30,withdraw:15,balance:35,lastTen:10,dateBalance:8"));
+        report = option(options, "report", "build/reports/loadtest/results.csv");
+        seed = Long.parseLong(option(options, "seed", "42"));
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            if (option.getKey().contains(".")) {
+                applicationProperties.add(option.getKey() + "=" + option.getValue());
+            }
+        }
+        label = option(options, "label", applicationProperties.isEmpty() ? "default" : String.join(" ", applicationProperties));
+        if (rate <= 0 || durationSeconds <= 0 || connections <= 0 || accounts <= 0) {
+            throw new IllegalArgumentException("rate, duration, connections and accounts must be positive");
+        }
+    }
+
+    static LoadTestConfig parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            int separator = arg.indexOf('=');
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return new LoadTestConfig(options);
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    /**
+     * @param mix comma separated operation:weight pairs, operations left out are not run
+     */
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected operation:weight but got " + entry);
+            }
+            weights.put(Operation.byName(parts[0]), Integer.parseInt(parts[1]));
+        }
+        return weights;
+    }
+
+    @Override
+    public String toString() {
+        return label + ": rate=" + rate + "/s (" + (poissonArrivals ? "poisson" : "uniform") + "), warmup=" + warmupSeconds +
+                "s, duration=" + durationSeconds + "s, connections=" + connections + ", accounts=" + accounts +
+                ", hot=" + hotFraction + " of accounts taking " + hotShare + " of traffic, mix=" + mix;
+    }
+}
@@ -0,0 +1,32 @@
+package net.contal.demo.loadtest;
+
+/**
+ * Requests the load test sends to the /banks API.
+ */
+enum Operation {
+    CREATE("create"),
+    DEPOSIT("deposit"),
+    WITHDRAW("withdraw"),
+    BALANCE("balance"),
+    LAST_TEN("lastTen"),
+    DATE_BALANCE("dateBalance");
+
+    private final String label;
+
+    Operation(String label) {
+        this.label = label;
+    }
+
+    String getLabel() {
+        return label;
+    }
+
+    static Operation byName(String label) {
+        for (Operation operation : values()) {
+            if (operation.label.equalsIgnoreCase(label)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation " + label);
+    }
+}
@@ -0,0 +1,68 @@
+package net.contal.demo.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and outcome counters of one operation.
+ * Latency runs from the time the request was scheduled to be sent, not from when a worker picked it up,
+ * so queueing behind slow requests shows up in the percentiles instead of being hidden (coordinated omission).
+ */
+final class OperationStats {
+
+    private final Recorder recorder = new Recorder(3);
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    void record(long latencyNanos, int status) {
+        recorder.recordValue(latencyNanos);
+        if (status >= 200 && status < 300) {
+            succeeded.increment();
+        } else if (status >= 400 && status < 500) {
+            // insufficient balance and similar business rejections
+            rejected.increment();
+        } else {
+            failed.increment();
+        }
+    }
+
+    void recordFailure(long latencyNanos) {
+        recorder.recordValue(latencyNanos);
+        failed.increment();
+    }
+
+    /**
+     * Start a new measurement window, dropping everything recorded so far.
+     */
+    void reset() {
+        recorder.reset();
+        succeeded.reset();
+        rejected.reset();
+        failed.reset();
+    }
+
+    Snapshot snapshot() {
+        return new Snapshot(recorder.getIntervalHistogram(), succeeded.sum(), rejected.sum(), failed.sum());
+    }
+
+    static final class Snapshot {
+        final Histogram latencies;
+        final long succeeded;
+        final long rejected;
+        final long failed;
+
+        Snapshot(Histogram latencies, long succeeded, long rejected, long failed) {
+            this.latencies = latencies;
+            this.succeeded = succeeded;
+            this.rejected = rejected;
+            this.failed = failed;
+        }
+
+        long count() {
+            return succeeded + rejected + failed;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package net.contal.demo.loadtest;
+
+import net.contal.demo.DemoApplication;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start benchmark: starts the application in a new JVM, on an empty file-backed H2 database, and measures the
+ * time from launching the process to its first successful /banks/balance, which includes creating the account it
+ * reads. Every run starts a fresh JVM, so nothing is warm but the operating system's file cache.
+ * <p>
+ * Options, as {@code --name=value}: {@code runs} (5), {@code classpath} of the application (this JVM's by default),
+ * {@code jvm-args} separated by spaces, {@code database-directory} (build/startup), {@code report}
+ * (build/reports/startup/results.csv) and {@code label}. Options with a dot in their name are passed to the
+ * application as Spring properties. Run it with {@code ./gradlew startupBenchmark -PstartupArgs="--runs=10"}.
+ */
+public final class StartupBenchmark {
+
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(120);
+
+    private final int runs;
+    private final String classpath;
+    private final List<String> jvmArgs = new ArrayList<>();
+    private final String databaseDirectory;
+    private final String report;
+    private final List<String> applicationProperties = new ArrayList<>();
+    private final String label;
+
+    private StartupBenchmark(Map<String, String> options) {
+        runs = Integer.parseInt(option(options, "runs", "5"));
+        classpath = option(options, "classpath", System.getProperty("java.class.path"));
+        String jvmArgOption = option(options, "jvm-args", "");
+        if (!jvmArgOption.trim().isEmpty()) {
+            jvmArgs.addAll(Arrays.asList(jvmArgOption.trim().split("\\s+")));
+        }
+        databaseDirectory = option(options, "database-directory", "build/startup");
+        report = option(options, "report", "build/reports/startup/results.csv");
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            if (option.getKey().contains(".")) {
+                applicationProperties.add(option.getKey() + "=" + option.getValue());
+            }
+        }
+        List<String> settings = new ArrayList<>(jvmArgs);
+        settings.addAll(applicationProperties);
+        label = option(options, "label", settings.isEmpty() ? "default" : String.join(" ", settings));
+        if (runs <= 0) {
+            throw new IllegalArgumentException("runs must be positive");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            int separator = arg.indexOf('=');
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        new StartupBenchmark(options).run();
+    }
+
+    private void run() throws Exception {
+        System.out.println("Startup benchmark: " + label + ", " + runs + " runs");
+        double[] millis = new double[runs];
+        for (int i = 0; i < runs; i++) {
+            millis[i] = timeToFirstBalance(i);
+            System.out.println(String.format("run %d: %.0f ms", i + 1, millis[i]));
+        }
+        double[] sorted = millis.clone();
+        Arrays.sort(sorted);
+        double median = runs % 2 == 1 ? sorted[runs / 2] : (sorted[runs / 2 - 1] + sorted[runs / 2]) / 2;
+        System.out.println(String.format("time to first balance: min %.0f ms, median %.0f ms, max %.0f ms",
+                sorted[0], median, sorted[runs - 1]));
+
+        Path reportPath = Paths.get(report);
+        if (reportPath.getParent() != null) {
+            Files.createDirectories(reportPath.getParent());
+        }
+        boolean newReport = !Files.exists(reportPath);
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(reportPath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            if (newReport) {
+                csv.println("time,label,runs,min_ms,median_ms,max_ms");
+            }
+            csv.println(String.format("%s,\"%s\",%d,%.0f,%.0f,%.0f", LocalDateTime.now(), label, runs,
+                    sorted[0], median, sorted[runs - 1]));
+        }
+        System.out.println("Results appended to " + reportPath.toAbsolutePath());
+    }
+
+    /**
+     * @return milliseconds from launching the application to its first successful balance response
+     */
+    private double timeToFirstBalance(int run) throws Exception {
+        File database = new File(databaseDirectory, "run-" + run);
+        deleteDatabase(database);
+        int port = freePort();
+
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        command.add(classpath);
+        command.add(DemoApplication.class.getName());
+        command.add("--server.port=" + port);
+        command.add("--spring.datasource.url=jdbc:h2:file:" + new File(database, "bank").getAbsolutePath());
+        command.add("--spring.main.banner-mode=off");
+        command.add("--logging.level.root=WARN");
+        for (String property : applicationProperties) {
+            command.add("--" + property);
+        }
+        File log = new File(databaseDirectory, "run-" + run + ".log");
+        Files.createDirectories(database.toPath());
+
+        long start = System.nanoTime();
+        Process application = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log)
+                .start();
+        try {
+            BankApiClient client = new BankApiClient("http://localhost:" + port);
+            int accountNumber = -1;
+            while (true) {
+                if (!application.isAlive()) {
+                    throw new IllegalStateException("The application exited with " + application.exitValue() + ", see " + log);
+                }
+                if (System.nanoTime() - start > TIMEOUT_NANOS) {
+                    throw new IllegalStateException("No balance within " + TimeUnit.NANOSECONDS.toSeconds(TIMEOUT_NANOS) + "s, see " + log);
+                }
+                try {
+                    if (accountNumber < 0) {
+                        accountNumber = client.createAccount(10.0);
+                    }
+                    if (client.execute(Operation.BALANCE, accountNumber) == HttpURLConnection.HTTP_OK) {
+                        return (System.nanoTime() - start) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+                    }
+                } catch (IOException e) {
+                    // not listening yet
+                }
+                Thread.sleep(5);
+            }
+        } finally {
+            application.destroy();
+            if (!application.waitFor(30, TimeUnit.SECONDS)) {
+                application.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private static void deleteDatabase(File database) throws IOException {
+        File[] files = database.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+}
@@ -0,0 +1,134 @@
+package net.contal.demo;
+
+import net.contal.demo.exceptions.ServiceException;
+import net.contal.demo.modal.AccountNumberBlock;
+import org.hibernate.LockMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates unique account numbers.
+ * <p>
+ * Counters are reserved from the database in blocks of {@code bank.account-number.block-size}, so nodes sharing the
+ * database never hand out the same counter. Inside a block a counter costs one atomic increment, and it is turned
+ * into an account number by the keyed permutation of {@link AccountNumberUtil#toAccountNumber(long, long)}.
+ * The database is only touched when a block runs out.
+ */
+@Component
+public class AccountNumberAllocator {
+
+    static final String BLOCK_NAME = "account_number";
+
+    private static final int RESERVE_ATTEMPTS = 3;
+
+    private final Logger logger = LoggerFactory.getLogger(AccountNumberAllocator.class);
+
+    private final DbUtils dbUtils;
+
+    /**
+     * Permutation key, must be the same on every node and must never change once accounts exist
+     */
+    @Value("${bank.account-number.key:6364136223846793005}")
+    private long key = 6364136223846793005L;
+
+    /**
+     * Counters reserved per database round trip
+     */
+    @Value("${bank.account-number.block-size:1000}")
+    private int blockSize = 1000;
+
+    private volatile Block block = new Block(0, 0);
+
+    public AccountNumberAllocator(DbUtils dbUtils) {
+        this.dbUtils = dbUtils;
+    }
+
+    /**
+     * @return an account number no node has allocated before
+     */
+    public int nextAccountNumber() {
+        while (true) {
+            Block current = block;
+            long counter = current.next.getAndIncrement();
+            if (counter < current.end) {
+                return AccountNumberUtil.toAccountNumber(counter, key);
+            }
+            refill(current);
+        }
+    }
+
+    /**
+     * Allocate many account numbers with one atomic add per block instead of one increment per number.
+     *
+     * @param count numbers to allocate
+     * @return account numbers no node has allocated before
+     */
+    public int[] nextAccountNumbers(int count) {
+        int[] accountNumbers = new int[count];
+        int allocated = 0;
+        while (allocated < count) {
+            Block current = block;
+            long first = current.next.getAndAdd(count - allocated);
+            long end = Math.min(first + count - allocated, current.end);
+            for (long counter = first; counter < end; counter++) {
+                accountNumbers[allocated++] = AccountNumberUtil.toAccountNumber(counter, key);
+            }
+            if (allocated < count) {
+                refill(current);
+            }
+        }
+        return accountNumbers;
+    }
+
+    private synchronized void refill(Block exhausted) {
+        // another thread may have replaced the block while this one waited
+        if (block == exhausted) {
+            block = reserveBlock();
+        }
+    }
+
+    private Block reserveBlock() {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Block reserved = dbUtils.inTransaction(session -> {
+                    AccountNumberBlock row = session.get(AccountNumberBlock.class, BLOCK_NAME, LockMode.PESSIMISTIC_WRITE);
+                    if (row == null) {
+                        row = new AccountNumberBlock(BLOCK_NAME, 0L);
+                        session.save(row);
+                    }
+                    long start = row.getNextCounter();
+                    if (start >= AccountNumberUtil.ACCOUNT_NUMBERS) {
+                        throw new ServiceException("Account numbers exhausted");
+                    }
+                    long end = Math.min(start + blockSize, AccountNumberUtil.ACCOUNT_NUMBERS);
+                    row.setNextCounter(end);
+                    return new Block(start, end);
+                });
+                logger.debug("Reserved account number counters {} to {}", reserved.next.get(), reserved.end);
+                return reserved;
+            } catch (ServiceException e) {
+                throw e;
+            } catch (Exception e) {
+                // two nodes creating the row at the same time, the loser retries against the winner's row
+                if (attempt == RESERVE_ATTEMPTS) {
+                    logger.error(e.getMessage());
+                    throw new ServiceException("Unable to reserve account numbers: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static final class Block {
+        final AtomicLong next;
+        final long end;
+
+        Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
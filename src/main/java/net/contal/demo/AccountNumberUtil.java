@@ -1,19 +1,55 @@
 package net.contal.demo;
 
-import java.util.Random;
-
 public abstract class AccountNumberUtil {
 
+    public static final int FIRST_ACCOUNT_NUMBER = 10000000;
+
+    /**
+     * Number of 8 digit account numbers
+     */
+    public static final int ACCOUNT_NUMBERS = 90000000;
+
+    // the permutation runs over 2^28 values, the smallest even bit width covering ACCOUNT_NUMBERS
+    private static final int HALF_BITS = 14;
+    private static final long HALF_MASK = (1L << HALF_BITS) - 1;
+    private static final int ROUNDS = 6;
 
     /**
-     * This function should generate random integer number and return
+     * Map a counter to an account number with a keyed Feistel permutation.
+     * Distinct counters always give distinct account numbers, consecutive counters give numbers that look random.
+     * Values outside the 8 digit range are permuted again (cycle walking) until they fall inside it.
      *
-     * @return random 8 digits integer
+     * @param counter value in [0, {@link #ACCOUNT_NUMBERS})
+     * @param key     permutation key, must never change once account numbers have been issued
+     * @return 8 digits integer
      */
-    public static int generateAccountNumber() {
-        //Create random number in 8 digits
-        Random random = new Random();
-        return 10000000 + random.nextInt(90000000);
+    public static int toAccountNumber(long counter, long key) {
+        if (counter < 0 || counter >= ACCOUNT_NUMBERS) {
+            throw new IllegalArgumentException("Counter out of range " + counter);
+        }
+        long value = counter;
+        do {
+            value = permute(value, key);
+        } while (value >= ACCOUNT_NUMBERS);
+        return FIRST_ACCOUNT_NUMBER + (int) value;
+    }
+
+    private static long permute(long value, long key) {
+        long left = value >>> HALF_BITS;
+        long right = value & HALF_MASK;
+        for (int round = 0; round < ROUNDS; round++) {
+            long next = left ^ (round(right, key, round) & HALF_MASK);
+            left = right;
+            right = next;
+        }
+        return (left << HALF_BITS) | right;
+    }
+
+    private static long round(long half, long key, int round) {
+        long hash = (half + 1) * 0x9E3779B97F4A7C15L ^ (key + round * 0xBF58476D1CE4E5B9L);
+        hash ^= hash >>> 31;
+        hash *= 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 29);
     }
 
 }
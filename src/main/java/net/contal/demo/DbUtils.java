@@ -1,35 +1,130 @@
 package net.contal.demo;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.contal.demo.metrics.DbOperation;
+import net.contal.demo.metrics.SessionMetricsListener;
+import org.hibernate.FlushMode;
 import org.hibernate.Session;
+import org.hibernate.SessionBuilder;
 import org.hibernate.SessionFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import javax.persistence.EntityManagerFactory;
+import java.util.function.Function;
 
+/**
+ * Opens Hibernate sessions.
+ * <p>
+ * {@link #inTransaction(Function)} and {@link #readOnly(Function)} run a unit of work in a session they commit,
+ * roll back and close themselves, and are the way to use a session. {@link #openASession()} hands out a session
+ * with a transaction already begun for callers that have to manage it; every such session must be closed.
+ * When {@code bank.db.leak-detection-threshold-ms} is set, sessions still open after it are logged with the stack that
+ * opened them; capturing that stack costs every session, so it is off by default.
+ */
 @Component
 public class DbUtils {
         private SessionFactory hibernateFactory;
+        private final MeterRegistry meterRegistry;
+        private final Counter sessionsOpened;
+        private final Counter sessionsClosed;
+        private final SessionLeakDetector leakDetector;
         @Autowired
-        public DbUtils(EntityManagerFactory factory) {
+        public DbUtils(EntityManagerFactory factory, MeterRegistry meterRegistry,
+                       @Value("${bank.db.leak-detection-threshold-ms:0}") long leakDetectionThresholdMillis) {
             if(factory.unwrap(SessionFactory.class) == null){
                 throw new NullPointerException("factory is not a hibernate factory");
             }
             this.hibernateFactory = factory.unwrap(SessionFactory.class);
+            this.meterRegistry = meterRegistry;
+            this.sessionsOpened = Counter.builder("bank.db.sessions.opened")
+                    .description("Sessions opened through openASession")
+                    .register(meterRegistry);
+            this.sessionsClosed = Counter.builder("bank.db.sessions.closed")
+                    .description("Sessions opened through openASession and closed again")
+                    .register(meterRegistry);
+            // a value that keeps growing means sessions are leaking
+            Gauge.builder("bank.db.sessions.open", this, utils -> utils.sessionsOpened.count() - utils.sessionsClosed.count())
+                    .description("Sessions opened through openASession that are not closed yet")
+                    .register(meterRegistry);
+            this.leakDetector = leakDetectionThresholdMillis > 0 ? new SessionLeakDetector(leakDetectionThresholdMillis) : null;
+        }
+
+        @PreDestroy
+        public void stop() {
+            if (leakDetector != null) {
+                leakDetector.stop();
+            }
         }
 
         public SessionFactory getHibernateFactory() {
             return hibernateFactory;
         }
 
+        /**
+         * Open a session with a transaction already begun. The caller commits or rolls back and must close it.
+         */
         public Session openASession(){
             if(hibernateFactory != null){
-                Session se = hibernateFactory.openSession();
+                String operation = DbOperation.current();
+                SessionBuilder<?> builder = hibernateFactory.withOptions()
+                        .eventListeners(new SessionMetricsListener(meterRegistry, operation, sessionsClosed));
+                if (leakDetector != null) {
+                    builder.eventListeners(leakDetector.track(operation));
+                }
+                Session se = builder.openSession();
+                    sessionsOpened.increment();
                     se.beginTransaction();
                     return se;
             }
             return null;
         }
 
+        /**
+         * Run work in its own transaction. The transaction is committed when the work returns and rolled back when
+         * it throws, which is rethrown unchanged; the session is closed either way.
+         *
+         * @return result of the work
+         */
+        public <T> T inTransaction(Function<Session, T> work) {
+            return execute(openASession(), work);
+        }
+
+        /**
+         * Run queries in a read-only session. Loaded entities are not snapshotted for dirty checking and the session
+         * is never flushed, so entities must not be modified; the session is closed when the work returns or throws.
+         *
+         * @return result of the work
+         */
+        public <T> T readOnly(Function<Session, T> work) {
+            Session session = openASession();
+            session.setDefaultReadOnly(true);
+            session.setHibernateFlushMode(FlushMode.MANUAL);
+            return execute(session, work);
+        }
+
+        private static <T> T execute(Session session, Function<Session, T> work) {
+            try {
+                T result = work.apply(session);
+                session.getTransaction().commit();
+                return result;
+            } catch (RuntimeException | Error e) {
+                try {
+                    if (session.getTransaction().isActive()) {
+                        session.getTransaction().rollback();
+                    }
+                } catch (RuntimeException rollbackError) {
+                    e.addSuppressed(rollbackError);
+                }
+                throw e;
+            } finally {
+                session.close();
+            }
+        }
+
 
 }
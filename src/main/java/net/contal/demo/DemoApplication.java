@@ -2,10 +2,15 @@ package net.contal.demo;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
 
 @SpringBootApplication
 public class DemoApplication {
 	public static void main(String[] args) {
-		SpringApplication.run(DemoApplication.class, args);
+		ConfigurableApplicationContext context = SpringApplication.run(DemoApplication.class, args);
+		// ./gradlew cdsArchive starts the application once and archives the classes it loaded when it exits
+		if (Boolean.getBoolean("bank.cds.training")) {
+			System.exit(SpringApplication.exit(context));
+		}
 	}
 }
@@ -0,0 +1,26 @@
+package net.contal.demo;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Object mapper tuning. Spring Boot registers every {@link Module} bean with the one object mapper shared by the
+ * MVC message converter and the import and export writers, so responses and streams are serialised alike.
+ */
+@Configuration
+public class JsonConfiguration {
+
+    /**
+     * Afterburner generates bytecode accessors for the getters, setters and fields of serialised classes on first
+     * use, instead of calling them through reflection on every response. Classes it cannot generate accessors for,
+     * such as non-public ones, keep the reflective ones. Disabled with {@code bank.json.afterburner=false}.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "bank.json.afterburner", havingValue = "true", matchIfMissing = true)
+    public Module afterburnerModule() {
+        return new AfterburnerModule();
+    }
+}
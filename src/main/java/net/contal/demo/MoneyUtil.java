@@ -0,0 +1,45 @@
+package net.contal.demo;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Amounts are held as a {@code long} number of cents everywhere below the JSON layer, so sums are exact and
+ * adding them allocates nothing. Decimal amounts only exist at the edge, where they are converted with these methods.
+ */
+public abstract class MoneyUtil {
+
+    /**
+     * Decimal places of an amount
+     */
+    public static final int SCALE = 2;
+
+    private static final int CENTS_PER_UNIT = 100;
+
+    /**
+     * @param amount decimal amount with at most {@value #SCALE} decimal places
+     * @return amount in cents
+     * @throws IllegalArgumentException if the amount has more decimal places or does not fit in a long
+     */
+    public static long toCents(BigDecimal amount) {
+        try {
+            return amount.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount must have at most " + SCALE + " decimal places: " + amount);
+        }
+    }
+
+    /**
+     * Convert an amount stored as a floating point number of units, rounding to the nearest cent.
+     */
+    public static long toCents(double amount) {
+        return Math.round(amount * CENTS_PER_UNIT);
+    }
+
+    /**
+     * @return decimal amount with {@value #SCALE} decimal places
+     */
+    public static BigDecimal toDecimal(long cents) {
+        return BigDecimal.valueOf(cents, SCALE);
+    }
+}
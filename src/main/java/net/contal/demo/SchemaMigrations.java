@@ -0,0 +1,146 @@
+package net.contal.demo;
+
+import net.contal.demo.exceptions.ServiceException;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Brings rows written by earlier versions up to the current mapping, after Hibernate has updated the schema and
+ * before anything reads or posts. Beans that touch the ledger tables declare {@code @DependsOn("schemaMigrations")}.
+ * Every step is idempotent, so an interrupted migration is finished on the next start. Not lazy, a database that
+ * cannot be migrated fails the start instead of the first request.
+ */
+@Component
+@Lazy(false)
+public class SchemaMigrations {
+
+    private static final String BACKFILL_TRANSACTION_TIME_SQL = "update bank_transaction " +
+            "set transaction_time = cast(transaction_date as timestamp) where transaction_time is null";
+
+    private static final String COLUMN_EXISTS_SQL = "select count(*) from information_schema.columns " +
+            "where table_schema = schema() and table_name = :table and column_name = :column";
+
+    /**
+     * Floating point amount columns and the cents columns that replace them: table, old column, new column
+     */
+    private static final String[][] MONEY_COLUMNS = {
+            {"customer_account", "account_balance", "account_balance_cents"},
+            {"bank_transaction", "transaction_amount", "transaction_amount_cents"},
+            {"daily_balance", "net_amount", "net_amount_cents"},
+            {"daily_balance", "closing_balance", "closing_balance_cents"}
+    };
+
+    private static final String SEQUENCE_VALUE_SQL = "select current_value, increment " +
+            "from information_schema.sequences where sequence_schema = schema() and sequence_name = :sequence";
+
+    /**
+     * Sequences that replaced identity columns, and the tables holding ids they handed out: sequence, tables
+     */
+    private static final String[][] SEQUENCES = {
+            {"customer_account_seq", "customer_account"},
+            {"bank_transaction_seq", "bank_transaction", "archived_transaction"},
+            {"daily_balance_seq", "daily_balance"}
+    };
+
+    private final Logger logger = LoggerFactory.getLogger(SchemaMigrations.class);
+
+    private final DbUtils dbUtils;
+
+    public SchemaMigrations(DbUtils dbUtils) {
+        this.dbUtils = dbUtils;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        try {
+            backfillTransactionTimes();
+            migrateMoneyColumns();
+            restartSequences();
+        } catch (Exception e) {
+            logger.error(e.getMessage());
+            throw new ServiceException(e.getMessage());
+        }
+    }
+
+    /**
+     * Transactions written before transactionTime existed only have a date, they are placed at the start of that day
+     * so the history can seek on (transactionTime, id).
+     */
+    private void backfillTransactionTimes() {
+        int updated = dbUtils.inTransaction(session ->
+                session.createNativeQuery(BACKFILL_TRANSACTION_TIME_SQL).executeUpdate());
+        if (updated > 0) {
+            logger.info("Backfilled transaction time of {} transactions", updated);
+        }
+    }
+
+    /**
+     * Amounts used to be stored as floating point units, convert them to cents and drop the old column,
+     * whose NOT NULL constraint would reject new rows.
+     */
+    private void migrateMoneyColumns() {
+        for (String[] columns : MONEY_COLUMNS) {
+            String table = columns[0];
+            String oldColumn = columns[1];
+            String newColumn = columns[2];
+            int converted = dbUtils.inTransaction(session -> {
+                if (!columnExists(session, table, oldColumn)) {
+                    return -1;
+                }
+                int rows = session.createNativeQuery("update " + table + " set " + newColumn +
+                        " = round(" + oldColumn + " * 100)").executeUpdate();
+                session.createNativeQuery("alter table " + table + " drop column " + oldColumn).executeUpdate();
+                return rows;
+            });
+            if (converted >= 0) {
+                logger.info("Converted {}.{} of {} rows to {}", table, oldColumn, converted, newColumn);
+            }
+        }
+    }
+
+    /**
+     * Ids used to come from identity columns, and the sequences that replaced them start at 1. A sequence behind the
+     * largest id is restarted past it, so the next block Hibernate allocates holds no id already taken.
+     */
+    private void restartSequences() {
+        for (String[] sequence : SEQUENCES) {
+            String name = sequence[0];
+            long restartedAt = dbUtils.inTransaction(session -> {
+                long maxId = 0;
+                for (int i = 1; i < sequence.length; i++) {
+                    Number max = (Number) session.createNativeQuery("select max(id) from " + sequence[i]).getSingleResult();
+                    maxId = Math.max(maxId, max == null ? 0 : max.longValue());
+                }
+                Object[] value = (Object[]) session.createNativeQuery(SEQUENCE_VALUE_SQL)
+                        .setParameter("sequence", name.toUpperCase())
+                        .getSingleResult();
+                long current = ((Number) value[0]).longValue();
+                long increment = ((Number) value[1]).longValue();
+                if (current >= maxId) {
+                    return -1L;
+                }
+                // Hibernate creates the sequence with the allocationSize as increment, and its pooled optimizer
+                // hands out the increment ids up to the value it reads
+                long restart = maxId + increment;
+                session.createNativeQuery("alter sequence " + name + " restart with " + restart).executeUpdate();
+                return restart;
+            });
+            if (restartedAt >= 0) {
+                logger.info("Restarted {} at {}", name, restartedAt);
+            }
+        }
+    }
+
+    private static boolean columnExists(Session session, String table, String column) {
+        Number count = (Number) session.createNativeQuery(COLUMN_EXISTS_SQL)
+                .setParameter("table", table.toUpperCase())
+                .setParameter("column", column.toUpperCase())
+                .getSingleResult();
+        return count.intValue() > 0;
+    }
+}
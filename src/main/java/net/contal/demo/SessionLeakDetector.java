@@ -0,0 +1,81 @@
+package net.contal.demo;
+
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.SessionEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs the stack that opened a session when the session stays open longer than the threshold,
+ * the session counterpart of the connection pool leak detection.
+ */
+final class SessionLeakDetector {
+
+    private final Logger logger = LoggerFactory.getLogger(SessionLeakDetector.class);
+
+    private final long thresholdNanos;
+    private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler;
+
+    SessionLeakDetector(long thresholdMillis) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-leak-detector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, thresholdMillis / 2);
+        scheduler.scheduleAtFixedRate(this::check, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return listener to register on the new session, it stops tracking the session when the session ends
+     */
+    SessionEventListener track(String operation) {
+        Lease lease = new Lease(operation);
+        leases.add(lease);
+        return lease;
+    }
+
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    private void check() {
+        long now = System.nanoTime();
+        for (Lease lease : leases) {
+            if (!lease.reported && now - lease.acquired > thresholdNanos) {
+                lease.reported = true;
+                logger.warn("Session opened by {} on thread {} is still open after {} ms, apparent session leak",
+                        lease.operation, lease.thread, TimeUnit.NANOSECONDS.toMillis(now - lease.acquired), lease.stack);
+            }
+        }
+    }
+
+    private final class Lease extends BaseSessionEventListener {
+        private final String operation;
+        private final String thread = Thread.currentThread().getName();
+        private final Exception stack = new Exception("Session acquired here");
+        private final long acquired = System.nanoTime();
+        private volatile boolean reported;
+
+        Lease(String operation) {
+            this.operation = operation;
+        }
+
+        @Override
+        public void end() {
+            leases.remove(this);
+            if (reported) {
+                logger.info("Previously reported session opened by {} closed after {} ms", operation,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - acquired));
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package net.contal.demo.controllers;
+
+import net.contal.demo.modal.AdmissionLimits;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * /actuator/admission reads the limits of {@link PostingAdmission}, a POST with some of them in a JSON body replaces
+ * those and keeps the others. Changes apply to the node that receives them and last until it restarts.
+ */
+@Component
+@Endpoint(id = "admission")
+public class AdmissionEndpoint {
+
+    private final PostingAdmission admission;
+
+    public AdmissionEndpoint(PostingAdmission admission) {
+        this.admission = admission;
+    }
+
+    @ReadOperation
+    public AdmissionLimits limits() {
+        return admission.getLimits();
+    }
+
+    @WriteOperation
+    public AdmissionLimits update(@Nullable Boolean enabled, @Nullable Double accountRate, @Nullable Integer accountBurst,
+                                  @Nullable Double globalRate, @Nullable Integer globalBurst, @Nullable Long maxWaitMs,
+                                  @Nullable Integer queueCapacity) {
+        AdmissionLimits current = admission.getLimits();
+        AdmissionLimits limits;
+        try {
+            limits = new AdmissionLimits(
+                    enabled != null ? enabled : current.isEnabled(),
+                    accountRate != null ? accountRate : current.getAccountRate(),
+                    accountBurst != null ? accountBurst : current.getAccountBurst(),
+                    globalRate != null ? globalRate : current.getGlobalRate(),
+                    globalBurst != null ? globalBurst : current.getGlobalBurst(),
+                    maxWaitMs != null ? maxWaitMs : current.getMaxWaitMs(),
+                    queueCapacity != null ? queueCapacity : current.getQueueCapacity());
+        } catch (IllegalArgumentException e) {
+            throw new InvalidEndpointRequestException(e.getMessage(), e.getMessage());
+        }
+        admission.setLimits(limits);
+        return limits;
+    }
+}
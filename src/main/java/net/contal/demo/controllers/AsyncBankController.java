@@ -0,0 +1,152 @@
+package net.contal.demo.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.contal.demo.modal.AccountCacheStats;
+import net.contal.demo.modal.AccountDetails;
+import net.contal.demo.modal.CustomerAccount;
+import net.contal.demo.modal.ShardStats;
+import net.contal.demo.modal.TransactionDetails;
+import net.contal.demo.modal.TransactionPage;
+import net.contal.demo.modal.TransactionRequest;
+import net.contal.demo.modal.TransactionResult;
+import net.contal.demo.services.AccountImportReader;
+import net.contal.demo.services.BankService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The /banks endpoints of {@link BankController} for {@code bank.web.mode=async}.
+ * <p>
+ * Every request that touches the database runs the {@link BankController} handler on the {@link BankRequestExecutor}
+ * pool and returns a {@link CompletableFuture}, so the servlet container thread goes back to the container instead
+ * of blocking on the database for the whole request. Writes are admitted by {@link PostingAdmission} on the container
+ * thread before they are submitted, so a rejected request never takes a place in the pool queue.
+ */
+@RestController
+@RequestMapping("/banks")
+@ConditionalOnProperty(name = "bank.web.mode", havingValue = AsyncBankController.MODE)
+public class AsyncBankController {
+
+    public static final String MODE = "async";
+
+    private final BankController handlers;
+    private final BankRequestExecutor requests;
+    private final PostingAdmission admission;
+
+    public AsyncBankController(BankService dataService, ObjectMapper objectMapper, BankRequestExecutor requests,
+                               PostingAdmission admission) {
+        this.handlers = new BankController(dataService, objectMapper, null);
+        this.requests = requests;
+        this.admission = admission;
+    }
+
+    @RequestMapping(method = RequestMethod.POST,value = "/create")
+    public CompletableFuture<Long> createBankAccount(@RequestBody CustomerAccount account){
+        admission.admit();
+        return requests.submit(() -> handlers.createBankAccount(account));
+    }
+
+    // streams for as long as the upload lasts, which would exceed the async request timeout
+    @RequestMapping(method = RequestMethod.POST, value = "/import",
+            consumes = {AccountImportReader.CSV, AccountImportReader.NDJSON}, produces = AccountImportReader.NDJSON)
+    public void importAccounts(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType, InputStream body,
+                               HttpServletResponse response) throws IOException {
+        handlers.importAccounts(contentType, body, response);
+    }
+
+    @RequestMapping(method = RequestMethod.POST,value = "/transaction")
+    public CompletableFuture<ResponseEntity<Void>> addTransaction(@RequestParam("accountNumber") int accountNumber,
+                                                                 @RequestParam("amount") BigDecimal amount,
+                                                                 @RequestHeader(value = BankController.IDEMPOTENCY_KEY, required = false) String idempotencyKey){
+        admission.admit(accountNumber);
+        return requests.submit(() -> handlers.addTransaction(accountNumber, amount, idempotencyKey));
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "/transfer")
+    public CompletableFuture<Void> transfer(@RequestParam("fromAccountNumber") int fromAccountNumber,
+                                            @RequestParam("toAccountNumber") int toAccountNumber,
+                                            @RequestParam("amount") BigDecimal amount){
+        admission.admit(fromAccountNumber, toAccountNumber);
+        return requests.submit(() -> {
+            handlers.transfer(fromAccountNumber, toAccountNumber, amount);
+            return null;
+        });
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "/transactions/batch")
+    public CompletableFuture<List<TransactionResult>> addTransactionsBatch(@RequestBody List<TransactionRequest> transactions){
+        admission.admit(transactions);
+        return requests.submit(() -> handlers.addTransactionsBatch(transactions));
+    }
+
+    @RequestMapping(method = RequestMethod.POST,value = "/balance")
+    public CompletableFuture<BigDecimal> getBalance(@RequestBody Map<String, Integer> account,
+                                                    @RequestParam(value = "verify", defaultValue = "false") boolean verify,
+                                                    @RequestParam(value = "readYourWrites", defaultValue = "false") boolean readYourWrites){
+        return requests.submit(() -> handlers.getBalance(account, verify, readYourWrites));
+    }
+
+    @RequestMapping(method = RequestMethod.POST,value = "/account")
+    public CompletableFuture<AccountDetails> getAccount(@RequestParam("accountNumber") int accountNumber,
+                                                         @RequestParam(value = "readYourWrites", defaultValue = "false") boolean readYourWrites){
+        return requests.submit(() -> handlers.getAccount(accountNumber, readYourWrites));
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "/transactionsLastTen")
+    public CompletableFuture<List<TransactionDetails>> getLastTenTransactions(@RequestBody Map<String, Integer> account,
+                                                                           @RequestParam(value = "readYourWrites", defaultValue = "false") boolean readYourWrites){
+        return requests.submit(() -> handlers.getLastTenTransactions(account, readYourWrites));
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/transactions/history")
+    public CompletableFuture<TransactionPage> getTransactionHistory(@RequestParam("accountNumber") int accountNumber,
+                                                                    @RequestParam(value = "cursor", required = false) String cursor,
+                                                                    @RequestParam(value = "limit", required = false) Integer limit){
+        return requests.submit(() -> handlers.getTransactionHistory(accountNumber, cursor, limit));
+    }
+
+    // streams for as long as the export lasts, like the import
+    @RequestMapping(method = RequestMethod.GET, value = "/transactions/export")
+    public void exportTransactions(@RequestParam(value = "accountNumber", required = false) Integer accountNumber,
+                                   @RequestParam(value = "format", defaultValue = "ndjson") String format,
+                                   HttpServletResponse response) throws IOException, HttpMediaTypeNotAcceptableException {
+        handlers.exportTransactions(accountNumber, format, response);
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "/transactions")
+    public CompletableFuture<Map<LocalDate, BigDecimal>> getTransactions(@RequestBody Map<String, Integer> account,
+                                                                         @RequestParam(value = "from", required = false)
+                                                                         @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                                         @RequestParam(value = "to", required = false)
+                                                                         @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                                         @RequestParam(value = "readYourWrites", defaultValue = "false") boolean readYourWrites){
+        return requests.submit(() -> handlers.getTransactions(account, from, to, readYourWrites));
+    }
+
+    // in-memory statistics, answered on the container thread
+
+    @RequestMapping(method = RequestMethod.GET, value = "/engine")
+    public List<ShardStats> getEngineStats(){
+        return handlers.getEngineStats();
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/cache")
+    public AccountCacheStats getAccountCacheStats(){
+        return handlers.getAccountCacheStats();
+    }
+}
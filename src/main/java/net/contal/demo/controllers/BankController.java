@@ -1,24 +1,76 @@
 package net.contal.demo.controllers;
 
-import net.contal.demo.modal.BankTransaction;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import net.contal.demo.MoneyUtil;
+import net.contal.demo.exceptions.InvalidAmountException;
+import net.contal.demo.modal.AccountCacheStats;
+import net.contal.demo.modal.AccountDetails;
+import net.contal.demo.modal.AccountImportResult;
 import net.contal.demo.modal.CustomerAccount;
+import net.contal.demo.modal.PostingReceipt;
+import net.contal.demo.modal.ShardStats;
+import net.contal.demo.modal.TransactionDetails;
+import net.contal.demo.modal.TransactionPage;
+import net.contal.demo.modal.TransactionRequest;
+import net.contal.demo.modal.TransactionResult;
+import net.contal.demo.services.AccountImportReader;
 import net.contal.demo.services.BankService;
+import net.contal.demo.services.StatementWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * The /banks endpoints, each request runs on its servlet container thread.
+ * With {@code bank.web.mode=async} the {@link AsyncBankController} serves them instead.
+ * Requests that create accounts or post transactions are admitted by {@link PostingAdmission} first.
+ */
 @RestController
 @RequestMapping("/banks")
+@ConditionalOnProperty(name = "bank.web.mode", havingValue = BankController.MODE, matchIfMissing = true)
 public class BankController {
+
+    public static final String MODE = "blocking";
+
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    public static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+
     private final Logger logger = LoggerFactory.getLogger(BankController.class);
     private final BankService dataService;
+    private final ObjectMapper objectMapper;
+    private final PostingAdmission admission;
 
-    public BankController(BankService dataService) {
+    /**
+     * @param admission null when the caller admits the requests itself
+     */
+    public BankController(BankService dataService, ObjectMapper objectMapper, PostingAdmission admission) {
         this.dataService = dataService;
+        this.objectMapper = objectMapper;
+        this.admission = admission;
     }
 
     /**
@@ -30,19 +82,106 @@ public class BankController {
     @RequestMapping(method = RequestMethod.POST,value = "/create")
     public long createBankAccount(@RequestBody CustomerAccount account){
         logger.info("Account {}" , account.toString());
+        if (admission != null) {
+            admission.admit();
+        }
         return dataService.createAnAccount(account);
     }
 
+    /**
+     * Create accounts in bulk from a CSV or NDJSON upload.
+     * The upload is read and the accounts are created while the results are streamed back, one chunk at a time.
+     * An import can run for minutes, so it writes the response on the request thread instead of an async request,
+     * which would time out after {@code spring.mvc.async.request-timeout}.
+     *
+     * @param contentType {@value AccountImportReader#CSV} with lines firstName,lastName,accountBalance,
+     *                    or {@value AccountImportReader#NDJSON} with one {firstName:"", lastName:"", accountBalance:""} per line
+     * @param body        uploaded records
+     * @param response    receives one NDJSON line per record {line:"", accountNumber:""} or {line:"", error:""}, in upload order
+     */
+    @RequestMapping(method = RequestMethod.POST, value = "/import",
+            consumes = {AccountImportReader.CSV, AccountImportReader.NDJSON}, produces = AccountImportReader.NDJSON)
+    public void importAccounts(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType, InputStream body,
+                               HttpServletResponse response) throws IOException {
+        logger.info("Account import of {}", contentType);
+        Charset charset = contentType.getCharset() != null ? contentType.getCharset() : StandardCharsets.UTF_8;
+        AccountImportReader records = AccountImportReader.of(contentType.getType() + "/" + contentType.getSubtype(),
+                new InputStreamReader(body, charset), objectMapper);
+        ObjectWriter writer = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        response.setContentType(AccountImportReader.NDJSON);
+        OutputStream out = response.getOutputStream();
+        dataService.importAccounts(records, results -> {
+            try {
+                for (AccountImportResult result : results) {
+                    writer.writeValue(out, result);
+                    out.write('\n');
+                }
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
     /**
      * Create a new transaction.
      *
      * @param accountNumber BankAccount number
-     * @param amount Amount as Transaction
+     * @param amount Amount as Transaction, at most two decimal places
+     * @param idempotencyKey optional, a retry with the same key does not post the amount again
+     * @return empty, with an {@value #IDEMPOTENT_REPLAYED} header when an earlier request with the key posted it,
+     * or 429 with a Retry-After header when the account or the node is over its posting limit
      */
     @RequestMapping(method = RequestMethod.POST,value = "/transaction")
-    public void addTransaction(@RequestParam("accountNumber") int accountNumber, @RequestParam("amount") Double amount){
+    public ResponseEntity<Void> addTransaction(@RequestParam("accountNumber") int accountNumber,
+                                               @RequestParam("amount") BigDecimal amount,
+                                               @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey){
         logger.info("Bank Account number is :{} , Transaction Amount {}",accountNumber,amount);
-        dataService.addTransactions(accountNumber, amount);
+        if (admission != null) {
+            admission.admit(accountNumber);
+        }
+        if (idempotencyKey == null) {
+            dataService.addTransactions(accountNumber, toCents(amount));
+            return ResponseEntity.ok().build();
+        }
+        PostingReceipt receipt = dataService.addTransactions(accountNumber, toCents(amount), idempotencyKey);
+        if (receipt != null && receipt.isReplayed()) {
+            return ResponseEntity.ok().header(IDEMPOTENT_REPLAYED, "true").build();
+        }
+        return ResponseEntity.ok().build();
+    }
+
+    /**
+     * Move an amount between two accounts in one transaction.
+     *
+     * @param fromAccountNumber BankAccount number to debit
+     * @param toAccountNumber BankAccount number to credit
+     * @param amount positive amount to move, at most two decimal places
+     */
+    @RequestMapping(method = RequestMethod.POST, value = "/transfer")
+    public void transfer(@RequestParam("fromAccountNumber") int fromAccountNumber,
+                         @RequestParam("toAccountNumber") int toAccountNumber,
+                         @RequestParam("amount") BigDecimal amount){
+        logger.info("Transfer of {} from {} to {}", amount, fromAccountNumber, toAccountNumber);
+        if (admission != null) {
+            admission.admit(fromAccountNumber, toAccountNumber);
+        }
+        dataService.transfer(fromAccountNumber, toAccountNumber, toCents(amount));
+    }
+
+    /**
+     * Create transactions in bulk.
+     *
+     * @param transactions [{accountNumber : "", amount : ""}]
+     * @return result of each transaction, in request order
+     */
+    @RequestMapping(method = RequestMethod.POST, value = "/transactions/batch")
+    public List<TransactionResult> addTransactionsBatch(@RequestBody List<TransactionRequest> transactions){
+        logger.info("Batch of {} transactions", transactions.size());
+        if (admission != null) {
+            admission.admit(transactions);
+        }
+        return dataService.addTransactionsBatch(transactions);
     }
 
 
@@ -50,24 +189,30 @@ public class BankController {
      * Retrieve the account balance.
      *
      * @param  account customer  bank account  number in json format {accountNumber : ""}
+     * @param  verify recompute the balance from the full transaction history
+     * @param  readYourWrites include every transaction acknowledged before this request, see bank.read-model
      * @return balance
      */
     @RequestMapping(method = RequestMethod.POST,value = "/balance")
-    public Double getBalance(@RequestBody Map<String, Integer> account){
+    public BigDecimal getBalance(@RequestBody Map<String, Integer> account,
+                                 @RequestParam(value = "verify", defaultValue = "false") boolean verify,
+                                 @RequestParam(value = "readYourWrites", defaultValue = "false") boolean readYourWrites){
         logger.info("Bank Account number is :{}", account.get("accountNumber"));
-        return dataService.getBalance(account.get("accountNumber"));
+        return MoneyUtil.toDecimal(dataService.getBalance(account.get("accountNumber"), verify, readYourWrites));
     }
 
     /**
      * Retrieve account details.
      *
      * @param accountNumber customer  bank account  number
+     * @param readYourWrites include every transaction acknowledged before this request, see bank.read-model
      * @return balance
      */
     @RequestMapping(method = RequestMethod.POST,value = "/account")
-    public CustomerAccount getAccount(@RequestParam("accountNumber") int accountNumber){
+    public AccountDetails getAccount(@RequestParam("accountNumber") int accountNumber,
+                                      @RequestParam(value = "readYourWrites", defaultValue = "false") boolean readYourWrites){
         logger.info("Bank Account number is :{}", accountNumber);
-        return dataService.getAccountDetails(accountNumber);
+        return dataService.getAccountDetails(accountNumber, readYourWrites);
     }
 
 
@@ -75,12 +220,55 @@ public class BankController {
      * Retrieve last 10 transactions
      *
      * @param  account customer  bank account  number in json format {accountNumber : ""}
+     * @param  readYourWrites include every transaction acknowledged before this request, see bank.read-model
      * @return balance
      */
     @RequestMapping(method = RequestMethod.POST, value = "/transactionsLastTen")
-    public List<BankTransaction> getLastTenTransactions(@RequestBody Map<String, Integer> account){
+    public List<TransactionDetails> getLastTenTransactions(@RequestBody Map<String, Integer> account,
+                                                        @RequestParam(value = "readYourWrites", defaultValue = "false") boolean readYourWrites){
         logger.info("Bank Account number is :{}", account.get("accountNumber"));
-        return dataService.getLastTenTransactions(account.get("accountNumber"));
+        return dataService.getLastTenTransactions(account.get("accountNumber"), readYourWrites);
+    }
+
+
+    /**
+     * Page through the transaction history, newest first
+     *
+     * @param  accountNumber customer  bank account  number
+     * @param  cursor nextCursor of the previous page, omit for the first page
+     * @param  limit page size, optional
+     * @return transactions and the cursor of the next page
+     */
+    @RequestMapping(method = RequestMethod.GET, value = "/transactions/history")
+    public TransactionPage getTransactionHistory(@RequestParam("accountNumber") int accountNumber,
+                                                 @RequestParam(value = "cursor", required = false) String cursor,
+                                                 @RequestParam(value = "limit", required = false) Integer limit){
+        logger.info("Bank Account number is :{}", accountNumber);
+        return dataService.getTransactionHistory(accountNumber, cursor, limit);
+    }
+
+
+    /**
+     * Export transactions, streamed on the request thread while they are read, for the same reason as the import.
+     *
+     * @param  accountNumber customer bank account number, omit to export every account
+     * @param  format csv or ndjson (default)
+     * @param  response receives {id:"", accountNumber:"", transactionDate:"", transactionTime:"", transactionAmount:""}
+     *                  per transaction, of one account in time order or of all accounts in id order
+     */
+    @RequestMapping(method = RequestMethod.GET, value = "/transactions/export")
+    public void exportTransactions(@RequestParam(value = "accountNumber", required = false) Integer accountNumber,
+                                   @RequestParam(value = "format", defaultValue = "ndjson") String format,
+                                   HttpServletResponse response) throws IOException, HttpMediaTypeNotAcceptableException {
+        logger.info("Transaction export of {} as {}", accountNumber == null ? "all accounts" : accountNumber, format);
+        StatementWriter writer = StatementWriter.of(format, response.getOutputStream(), objectMapper);
+        if (writer == null) {
+            throw new HttpMediaTypeNotAcceptableException(Arrays.asList(
+                    MediaType.valueOf(StatementWriter.CSV), MediaType.valueOf(StatementWriter.NDJSON)));
+        }
+        response.setContentType(writer.getMediaType());
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        dataService.exportTransactions(accountNumber, writer);
     }
 
 
@@ -88,12 +276,51 @@ public class BankController {
      * List balances by date
      *
      * @param  account customer  bank account  number in json format {accountNumber : ""}
+     * @param  from first day to include (yyyy-MM-dd), optional
+     * @param  to last day to include (yyyy-MM-dd), optional
+     * @param  readYourWrites include every transaction acknowledged before this request, see bank.read-model
      * @return balance
      */
     @RequestMapping(method = RequestMethod.POST, value = "/transactions")
-    public Map<LocalDate, Double> getTransactions(@RequestBody Map<String, Integer> account){
+    public Map<LocalDate, BigDecimal> getTransactions(@RequestBody Map<String, Integer> account,
+                                                      @RequestParam(value = "from", required = false)
+                                                      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                      @RequestParam(value = "to", required = false)
+                                                      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                      @RequestParam(value = "readYourWrites", defaultValue = "false") boolean readYourWrites){
         logger.info("Bank Account number is :{}", account.get("accountNumber"));
-        return dataService.getDateBalance(account.get("accountNumber"));
+        Map<LocalDate, Long> balances = dataService.getDateBalance(account.get("accountNumber"), from, to, readYourWrites);
+        Map<LocalDate, BigDecimal> result = new LinkedHashMap<>();
+        balances.forEach((date, cents) -> result.put(date, MoneyUtil.toDecimal(cents)));
+        return result;
+    }
+
+    /**
+     * In-memory ledger engine statistics
+     *
+     * @return queue depth and throughput per shard, empty when bank.engine.mode is not sharded
+     */
+    @RequestMapping(method = RequestMethod.GET, value = "/engine")
+    public List<ShardStats> getEngineStats(){
+        return dataService.getEngineStats();
+    }
+
+    /**
+     * Account cache statistics
+     *
+     * @return size, hits, misses and evictions of the account cache
+     */
+    @RequestMapping(method = RequestMethod.GET, value = "/cache")
+    public AccountCacheStats getAccountCacheStats(){
+        return dataService.getAccountCacheStats();
+    }
+
+    private static long toCents(BigDecimal amount) {
+        try {
+            return MoneyUtil.toCents(amount);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidAmountException(e.getMessage());
+        }
     }
 
 }
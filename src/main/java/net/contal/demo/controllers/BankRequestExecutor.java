@@ -0,0 +1,61 @@
+package net.contal.demo.controllers;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool that runs the blocking work of {@link AsyncBankController} requests, so servlet container threads
+ * are released while a request waits for the database. When all threads are busy and the queue is full a request is
+ * rejected with a {@link java.util.concurrent.RejectedExecutionException} instead of queueing without limit.
+ */
+@Component
+@ConditionalOnProperty(name = "bank.web.mode", havingValue = AsyncBankController.MODE)
+public class BankRequestExecutor {
+
+    private final Logger logger = LoggerFactory.getLogger(BankRequestExecutor.class);
+
+    private final ThreadPoolExecutor executor;
+
+    public BankRequestExecutor(@Value("${bank.web.async.threads:32}") int threads,
+                               @Value("${bank.web.async.queue-capacity:2000}") int queueCapacity,
+                               MeterRegistry meterRegistry) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "bank-request-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        new ExecutorServiceMetrics(executor, "bank.web.async", null).bindTo(meterRegistry);
+        logger.info("Asynchronous request execution with {} threads, queue capacity {}", threads, queueCapacity);
+    }
+
+    /**
+     * @return future completed with the result of the work on a pool thread, or with the exception it threw
+     * @throws java.util.concurrent.RejectedExecutionException when the pool and its queue are full
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> work) {
+        return CompletableFuture.supplyAsync(work, executor);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            logger.warn("Requests still running after shutdown");
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package net.contal.demo.controllers;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.contal.demo.exceptions.ServiceException;
+import net.contal.demo.exceptions.TooManyRequestsException;
+import net.contal.demo.modal.AdmissionLimits;
+import net.contal.demo.modal.TransactionRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Admission control in front of the write endpoints, so one client posting to an account in a tight loop cannot
+ * saturate the database writer for everyone else.
+ * <p>
+ * Every posting needs a token from the bucket of its account and from the bucket of the node. The buckets are
+ * generic cell rate algorithm state: a single theoretical arrival time per bucket, advanced with a compare-and-set,
+ * so admitting a request takes no lock. Account buckets live in a bounded Caffeine map and expire when the account
+ * has been idle for a minute.
+ * <p>
+ * A request whose tokens are available within {@code maxWaitMs} reserves them and waits for its turn on the request
+ * thread, at most {@code queueCapacity} requests at a time. Any other request is rejected at once with a
+ * {@link TooManyRequestsException} telling the client when to retry. Limits are replaced at runtime through the
+ * {@link AdmissionEndpoint}.
+ */
+@Component
+public class PostingAdmission {
+
+    private volatile AdmissionLimits limits;
+
+    private final LongSupplier clock;
+    private final AtomicLong global;
+    private final Cache<Integer, AtomicLong> accounts;
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder delayed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder accountRejections = new LongAdder();
+    private final LongAdder globalRejections = new LongAdder();
+    private final LongAdder queueRejections = new LongAdder();
+
+    @Autowired
+    public PostingAdmission(@Value("${bank.admission.enabled:true}") boolean enabled,
+                            @Value("${bank.admission.account-rate:100}") double accountRate,
+                            @Value("${bank.admission.account-burst:200}") int accountBurst,
+                            @Value("${bank.admission.global-rate:5000}") double globalRate,
+                            @Value("${bank.admission.global-burst:10000}") int globalBurst,
+                            @Value("${bank.admission.max-wait-ms:100}") long maxWaitMs,
+                            @Value("${bank.admission.queue-capacity:200}") int queueCapacity,
+                            @Value("${bank.admission.maximum-accounts:100000}") long maximumAccounts,
+                            MeterRegistry meterRegistry) {
+        this(new AdmissionLimits(enabled, accountRate, accountBurst, globalRate, globalBurst, maxWaitMs, queueCapacity),
+                maximumAccounts, meterRegistry, System::nanoTime);
+    }
+
+    PostingAdmission(AdmissionLimits limits, long maximumAccounts, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.limits = limits;
+        this.clock = clock;
+        this.global = new AtomicLong(clock.getAsLong());
+        this.accounts = Caffeine.newBuilder()
+                .maximumSize(maximumAccounts)
+                .expireAfterAccess(1, TimeUnit.MINUTES)
+                .build();
+        requests(meterRegistry, admitted, "admitted");
+        requests(meterRegistry, delayed, "delayed");
+        requests(meterRegistry, rejected, "rejected");
+        rejections(meterRegistry, accountRejections, "account");
+        rejections(meterRegistry, globalRejections, "global");
+        rejections(meterRegistry, queueRejections, "queue");
+        Gauge.builder("bank.admission.waiting", waiting, AtomicInteger::get)
+                .description("Requests waiting for their turn to post")
+                .register(meterRegistry);
+    }
+
+    public AdmissionLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Replace the limits and start every bucket full under them, a bucket emptied at a low rate would otherwise take
+     * as long to refill after the rate is raised. Requests already admitted or waiting keep their turn.
+     */
+    public void setLimits(AdmissionLimits limits) {
+        this.limits = limits;
+        // a full bucket is one whose arrival time is not ahead of now
+        global.set(clock.getAsLong());
+        accounts.invalidateAll();
+    }
+
+    /**
+     * Admit a request that posts once to each of the accounts, or creates an account when there are none.
+     *
+     * @throws TooManyRequestsException when the accounts or the node are over their limits
+     */
+    public void admit(int... accountNumbers) {
+        if (!limits.isEnabled()) {
+            return;
+        }
+        Map<Integer, Integer> postings = new LinkedHashMap<>();
+        for (int accountNumber : accountNumbers) {
+            postings.merge(accountNumber, 1, Integer::sum);
+        }
+        admit(postings, Math.max(1, accountNumbers.length));
+    }
+
+    /**
+     * Admit a batch, charged one token per posting. An account is charged at most its burst, so a batch larger than
+     * the burst is not rejected forever.
+     *
+     * @throws TooManyRequestsException when the accounts or the node are over their limits
+     */
+    public void admit(List<TransactionRequest> transactions) {
+        if (!limits.isEnabled() || transactions.isEmpty()) {
+            return;
+        }
+        Map<Integer, Integer> postings = new LinkedHashMap<>();
+        for (TransactionRequest transaction : transactions) {
+            // rejected by the service
+            if (transaction == null) {
+                continue;
+            }
+            postings.merge(transaction.getAccountNumber(), 1, Integer::sum);
+        }
+        admit(postings, transactions.size());
+    }
+
+    private void admit(Map<Integer, Integer> postings, int globalPostings) {
+        AdmissionLimits limits = this.limits;
+        long maxWait = TimeUnit.MILLISECONDS.toNanos(limits.getMaxWaitMs());
+        long accountInterval = interval(limits.getAccountRate());
+        long now = clock.getAsLong();
+        long wait = 0;
+
+        List<AtomicLong> reserved = new ArrayList<>(postings.size());
+        List<Long> charged = new ArrayList<>(postings.size());
+        for (Map.Entry<Integer, Integer> entry : postings.entrySet()) {
+            AtomicLong bucket = accounts.get(entry.getKey(), key -> new AtomicLong(now));
+            long increment = Math.min(entry.getValue(), limits.getAccountBurst()) * accountInterval;
+            long bucketWait = reserve(bucket, now, increment, limits.getAccountBurst() * accountInterval, maxWait);
+            if (bucketWait > maxWait) {
+                refund(reserved, charged);
+                accountRejections.increment();
+                throw reject("Too many transactions for account " + entry.getKey(), bucketWait);
+            }
+            reserved.add(bucket);
+            charged.add(increment);
+            wait = Math.max(wait, bucketWait);
+        }
+
+        long globalInterval = interval(limits.getGlobalRate());
+        long increment = Math.min(globalPostings, limits.getGlobalBurst()) * globalInterval;
+        long globalWait = reserve(global, now, increment, limits.getGlobalBurst() * globalInterval, maxWait);
+        if (globalWait > maxWait) {
+            refund(reserved, charged);
+            globalRejections.increment();
+            throw reject("Server busy, try again later", globalWait);
+        }
+        reserved.add(global);
+        charged.add(increment);
+        wait = Math.max(wait, globalWait);
+
+        if (wait <= 0) {
+            admitted.increment();
+            return;
+        }
+        if (waiting.incrementAndGet() > limits.getQueueCapacity()) {
+            waiting.decrementAndGet();
+            refund(reserved, charged);
+            queueRejections.increment();
+            throw reject("Server busy, try again later", wait);
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            refund(reserved, charged);
+            Thread.currentThread().interrupt();
+            throw new ServiceException("Interrupted while waiting to post");
+        } finally {
+            waiting.decrementAndGet();
+        }
+        delayed.increment();
+    }
+
+    /**
+     * Move the theoretical arrival time of the bucket by the increment, unless the request would have to wait longer
+     * than the maximum for it.
+     *
+     * @param tolerance how far the arrival time may run ahead of now before a request waits, the burst
+     * @return nanoseconds the request must wait, not positive when it can go at once, the bucket is left untouched
+     * when it is more than maxWait
+     */
+    private static long reserve(AtomicLong bucket, long now, long increment, long tolerance, long maxWait) {
+        while (true) {
+            long current = bucket.get();
+            long next = Math.max(current, now) + increment;
+            long wait = next - now - tolerance;
+            if (wait > maxWait || bucket.compareAndSet(current, next)) {
+                return wait;
+            }
+        }
+    }
+
+    /**
+     * Move the arrival times back by what the request was charged, but not behind now: a bucket reset by
+     * {@link #setLimits} or refilled in the meantime is already full and has nothing to give back.
+     */
+    private void refund(List<AtomicLong> reserved, List<Long> charged) {
+        long now = clock.getAsLong();
+        for (int i = 0; i < reserved.size(); i++) {
+            AtomicLong bucket = reserved.get(i);
+            while (true) {
+                long current = bucket.get();
+                if (current <= now || bucket.compareAndSet(current, Math.max(current - charged.get(i), now))) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private TooManyRequestsException reject(String message, long waitNanos) {
+        rejected.increment();
+        return new TooManyRequestsException(message, Math.max(1, (waitNanos + 999_999_999L) / 1_000_000_000L));
+    }
+
+    private static long interval(double rate) {
+        return Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+    }
+
+    private static void requests(MeterRegistry registry, LongAdder count, String result) {
+        FunctionCounter.builder("bank.admission.requests", count, LongAdder::sum)
+                .description("Write requests admitted at once, admitted after waiting for their turn, or rejected")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private static void rejections(MeterRegistry registry, LongAdder count, String limit) {
+        FunctionCounter.builder("bank.admission.rejections", count, LongAdder::sum)
+                .description("Rejected write requests by the limit they exceeded")
+                .tag("limit", limit)
+                .register(registry);
+    }
+}
@@ -1,25 +1,83 @@
 package net.contal.demo.exceptions;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 
+import java.util.concurrent.RejectedExecutionException;
+
 @ControllerAdvice
 public class GlobalErrorHandler {
 
+    private final MeterRegistry meterRegistry;
+
+    public GlobalErrorHandler(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
     @ExceptionHandler(ServiceException.class)
     public ResponseEntity<String> handleServiceException(ServiceException error) {
-        return new ResponseEntity<>(error.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        return respond(error, HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
     @ExceptionHandler(AccountNumberNotFoundException.class)
     public ResponseEntity<String> handleAccountNumberNotFoundException(AccountNumberNotFoundException error) {
-        return new ResponseEntity<>(error.getMessage(), HttpStatus.NOT_FOUND);
+        return respond(error, HttpStatus.NOT_FOUND);
     }
 
     @ExceptionHandler(InsufficientBalanceException.class)
     public ResponseEntity<String> handleInsufficientBalanceException(InsufficientBalanceException error) {
-        return new ResponseEntity<>(error.getMessage(), HttpStatus.BAD_REQUEST);
+        return respond(error, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<String> handleInvalidCursorException(InvalidCursorException error) {
+        return respond(error, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidAmountException.class)
+    public ResponseEntity<String> handleInvalidAmountException(InvalidAmountException error) {
+        return respond(error, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidTransferException.class)
+    public ResponseEntity<String> handleInvalidTransferException(InvalidTransferException error) {
+        return respond(error, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidIdempotencyKeyException.class)
+    public ResponseEntity<String> handleInvalidIdempotencyKeyException(InvalidIdempotencyKeyException error) {
+        return respond(error, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(IdempotencyKeyReusedException.class)
+    public ResponseEntity<String> handleIdempotencyKeyReusedException(IdempotencyKeyReusedException error) {
+        return respond(error, HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    @ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<String> handleTooManyRequestsException(TooManyRequestsException error) {
+        ResponseEntity<String> response = respond(error, HttpStatus.TOO_MANY_REQUESTS);
+        return ResponseEntity.status(response.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(error.getRetryAfterSeconds()))
+                .body(response.getBody());
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<String> handleRejectedExecutionException(RejectedExecutionException error) {
+        return respond(new RejectedExecutionException("Server busy, try again later"), HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    private ResponseEntity<String> respond(RuntimeException error, HttpStatus status) {
+        Counter.builder("bank.errors")
+                .description("Errors returned to clients by exception type")
+                .tags("exception", error.getClass().getSimpleName(), "status", String.valueOf(status.value()))
+                .register(meterRegistry)
+                .increment();
+        return new ResponseEntity<>(error.getMessage(), status);
     }
 }
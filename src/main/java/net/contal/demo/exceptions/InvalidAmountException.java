@@ -0,0 +1,7 @@
+package net.contal.demo.exceptions;
+
+public class InvalidAmountException extends RuntimeException {
+    public InvalidAmountException(String message) {
+        super(message);
+    }
+}
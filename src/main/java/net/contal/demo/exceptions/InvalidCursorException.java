@@ -0,0 +1,7 @@
+package net.contal.demo.exceptions;
+
+public class InvalidCursorException extends RuntimeException {
+    public InvalidCursorException(String message) {
+        super(message);
+    }
+}
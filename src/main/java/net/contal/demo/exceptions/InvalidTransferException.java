@@ -0,0 +1,7 @@
+package net.contal.demo.exceptions;
+
+public class InvalidTransferException extends RuntimeException {
+    public InvalidTransferException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,39 @@
+package net.contal.demo.metrics;
+
+/**
+ * Name of the service method running on the current thread, used to attribute database work to it.
+ */
+public final class DbOperation {
+
+    public static final String BACKGROUND = "background";
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private DbOperation() {
+    }
+
+    /**
+     * @return the running service method, {@value #BACKGROUND} outside of one
+     */
+    public static String current() {
+        String operation = CURRENT.get();
+        return operation == null ? BACKGROUND : operation;
+    }
+
+    /**
+     * @return the operation that was running before, to pass to {@link #exit(String)}
+     */
+    static String enter(String operation) {
+        String previous = CURRENT.get();
+        CURRENT.set(operation);
+        return previous;
+    }
+
+    static void exit(String previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
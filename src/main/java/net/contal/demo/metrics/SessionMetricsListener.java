@@ -0,0 +1,61 @@
+package net.contal.demo.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.hibernate.BaseSessionEventListener;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the JDBC statements of one Hibernate session as {@code bank.db.statements}, tagged with the service method
+ * that opened the session, and counts the session as closed when it ends.
+ */
+public class SessionMetricsListener extends BaseSessionEventListener {
+
+    private final MeterRegistry meterRegistry;
+    private final String operation;
+    private final Counter sessionsClosed;
+
+    private long statementStart;
+    private long batchStart;
+
+    public SessionMetricsListener(MeterRegistry meterRegistry, String operation, Counter sessionsClosed) {
+        this.meterRegistry = meterRegistry;
+        this.operation = operation;
+        this.sessionsClosed = sessionsClosed;
+    }
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        statementStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        record("statement", System.nanoTime() - statementStart);
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        batchStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        record("batch", System.nanoTime() - batchStart);
+    }
+
+    @Override
+    public void end() {
+        sessionsClosed.increment();
+    }
+
+    private void record(String type, long nanos) {
+        Timer.builder("bank.db.statements")
+                .description("JDBC statement executions by the service method that opened the session")
+                .tags("operation", operation, "type", type)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
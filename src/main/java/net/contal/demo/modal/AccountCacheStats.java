@@ -0,0 +1,47 @@
+package net.contal.demo.modal;
+
+/**
+ * Point in time statistics of the account cache.
+ */
+public class AccountCacheStats {
+
+    private final long size;
+    private final long hits;
+    private final long misses;
+    private final double hitRate;
+    private final long evictions;
+    private final double averageLoadNanos;
+
+    public AccountCacheStats(long size, long hits, long misses, double hitRate, long evictions, double averageLoadNanos) {
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+        this.hitRate = hitRate;
+        this.evictions = evictions;
+        this.averageLoadNanos = averageLoadNanos;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public double getHitRate() {
+        return hitRate;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public double getAverageLoadNanos() {
+        return averageLoadNanos;
+    }
+}
@@ -0,0 +1,61 @@
+package net.contal.demo.modal;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Account details as returned by /banks/account, read as a constructor projection so the response is never a
+ * managed entity. Immutable, so the account cache and every response can share one instance.
+ */
+@JsonPropertyOrder({"id", "firstName", "lastName", "accountNumber", "accountBalance"})
+public class AccountDetails {
+
+    private final long id;
+    private final int accountNumber;
+    private final String firstName;
+    private final String lastName;
+    @JsonProperty("accountBalance")
+    @JsonSerialize(using = MoneyJson.Serializer.class)
+    private final long accountBalanceCents;
+
+    public AccountDetails(long id, int accountNumber, String firstName, String lastName, long accountBalanceCents) {
+        this.id = id;
+        this.accountNumber = accountNumber;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.accountBalanceCents = accountBalanceCents;
+    }
+
+    public static AccountDetails of(CustomerAccount account) {
+        return new AccountDetails(account.getId(), account.getAccountNumber(), account.getFirstName(),
+                account.getLastName(), account.getAccountBalanceCents());
+    }
+
+    /**
+     * @return the same details with another balance
+     */
+    public AccountDetails withBalance(long balanceCents) {
+        return new AccountDetails(id, accountNumber, firstName, lastName, balanceCents);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getAccountNumber() {
+        return accountNumber;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public long getAccountBalanceCents() {
+        return accountBalanceCents;
+    }
+}
@@ -0,0 +1,43 @@
+package net.contal.demo.modal;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of one record of an account import: the new account number, or why the record was rejected.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AccountImportResult {
+
+    private final long line;
+    private final Integer accountNumber;
+    private final String error;
+
+    private AccountImportResult(long line, Integer accountNumber, String error) {
+        this.line = line;
+        this.accountNumber = accountNumber;
+        this.error = error;
+    }
+
+    public static AccountImportResult created(long line, int accountNumber) {
+        return new AccountImportResult(line, accountNumber, null);
+    }
+
+    public static AccountImportResult rejected(long line, String error) {
+        return new AccountImportResult(line, null, error);
+    }
+
+    /**
+     * @return line of the record in the uploaded file, starting at 1
+     */
+    public long getLine() {
+        return line;
+    }
+
+    public Integer getAccountNumber() {
+        return accountNumber;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,40 @@
+package net.contal.demo.modal;
+
+import javax.persistence.*;
+
+/**
+ * Next unreserved account number counter. Every node reserves blocks of counters from this row
+ * and allocates inside its block without touching the database.
+ */
+@Entity
+@Table
+public class AccountNumberBlock {
+
+    @Id
+    private String name;
+    private long nextCounter;
+
+    public AccountNumberBlock() {
+    }
+
+    public AccountNumberBlock(String name, long nextCounter) {
+        this.name = name;
+        this.nextCounter = nextCounter;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getNextCounter() {
+        return nextCounter;
+    }
+
+    public void setNextCounter(long nextCounter) {
+        this.nextCounter = nextCounter;
+    }
+}
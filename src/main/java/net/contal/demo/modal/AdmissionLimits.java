@@ -0,0 +1,72 @@
+package net.contal.demo.modal;
+
+/**
+ * Limits of the posting admission control, replaced as a whole when they are changed at runtime.
+ */
+public class AdmissionLimits {
+
+    private final boolean enabled;
+    private final double accountRate;
+    private final int accountBurst;
+    private final double globalRate;
+    private final int globalBurst;
+    private final long maxWaitMs;
+    private final int queueCapacity;
+
+    public AdmissionLimits(boolean enabled, double accountRate, int accountBurst, double globalRate, int globalBurst,
+                           long maxWaitMs, int queueCapacity) {
+        if (accountRate <= 0 || globalRate <= 0 || accountBurst < 1 || globalBurst < 1 || maxWaitMs < 0 || queueCapacity < 0) {
+            throw new IllegalArgumentException("rates must be positive, bursts at least 1, wait and queue capacity not negative");
+        }
+        this.enabled = enabled;
+        this.accountRate = accountRate;
+        this.accountBurst = accountBurst;
+        this.globalRate = globalRate;
+        this.globalBurst = globalBurst;
+        this.maxWaitMs = maxWaitMs;
+        this.queueCapacity = queueCapacity;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return postings per second sustained by one account
+     */
+    public double getAccountRate() {
+        return accountRate;
+    }
+
+    /**
+     * @return postings one idle account can make at once
+     */
+    public int getAccountBurst() {
+        return accountBurst;
+    }
+
+    /**
+     * @return postings per second sustained by the node
+     */
+    public double getGlobalRate() {
+        return globalRate;
+    }
+
+    public int getGlobalBurst() {
+        return globalBurst;
+    }
+
+    /**
+     * @return longest a request waits for its turn instead of being rejected
+     */
+    public long getMaxWaitMs() {
+        return maxWaitMs;
+    }
+
+    /**
+     * @return requests that can wait at the same time
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+}
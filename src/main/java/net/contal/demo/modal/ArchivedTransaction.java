@@ -0,0 +1,81 @@
+package net.contal.demo.modal;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Transaction moved out of {@link BankTransaction} once it is older than the archive horizon. Keeps its id and
+ * refers to its account by number, so the row carries no foreign key and only the account/time index.
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_archived_transaction_account_time",
+        columnList = "accountNumber, transactionTime, id"))
+public class ArchivedTransaction {
+
+    @Id
+    private long id;
+    @Column(nullable = false)
+    private int accountNumber;
+    /**
+     * Amount in cents
+     */
+    @Column(nullable = false)
+    private long transactionAmountCents;
+    @Column(nullable = false)
+    private LocalDate transactionDate;
+    @Column(nullable = false)
+    private LocalDateTime transactionTime;
+
+    public ArchivedTransaction() {
+    }
+
+    public ArchivedTransaction(long id, int accountNumber, long transactionAmountCents, LocalDate transactionDate,
+                               LocalDateTime transactionTime) {
+        this.id = id;
+        this.accountNumber = accountNumber;
+        this.transactionAmountCents = transactionAmountCents;
+        this.transactionDate = transactionDate;
+        this.transactionTime = transactionTime;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public int getAccountNumber() {
+        return accountNumber;
+    }
+
+    public void setAccountNumber(int accountNumber) {
+        this.accountNumber = accountNumber;
+    }
+
+    public long getTransactionAmountCents() {
+        return transactionAmountCents;
+    }
+
+    public void setTransactionAmountCents(long transactionAmountCents) {
+        this.transactionAmountCents = transactionAmountCents;
+    }
+
+    public LocalDate getTransactionDate() {
+        return transactionDate;
+    }
+
+    public void setTransactionDate(LocalDate transactionDate) {
+        this.transactionDate = transactionDate;
+    }
+
+    public LocalDateTime getTransactionTime() {
+        return transactionTime;
+    }
+
+    public void setTransactionTime(LocalDateTime transactionTime) {
+        this.transactionTime = transactionTime;
+    }
+}
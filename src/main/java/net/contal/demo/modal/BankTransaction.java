@@ -1,25 +1,46 @@
 package net.contal.demo.modal;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import org.hibernate.annotations.CreationTimestamp;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 import javax.persistence.*;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 
 @Entity
-@Table
+@Table(indexes = @Index(name = "idx_bank_transaction_account_time",
+        columnList = "customer_account_id, transactionTime, id"))
 public class BankTransaction {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "bank_transaction_seq")
+    @SequenceGenerator(name = "bank_transaction_seq", sequenceName = "bank_transaction_seq", allocationSize = 50)
     @JsonIgnore
     private long id;
     @ManyToOne
     @JsonIgnore
     private CustomerAccount customerAccount;
-    private double transactionAmount;
-    @CreationTimestamp
+    /**
+     * Amount in cents, a decimal amount in JSON
+     */
+    @Column(columnDefinition = "bigint default 0 not null")
+    @JsonProperty("transactionAmount")
+    @JsonSerialize(using = MoneyJson.Serializer.class)
+    private long transactionAmountCents;
     private LocalDate transactionDate;
+    private LocalDateTime transactionTime;
+
+    @PrePersist
+    void onCreate() {
+        // postings replayed from the journal keep their original date
+        if (transactionTime == null) {
+            transactionTime = LocalDateTime.now();
+        }
+        if (transactionDate == null) {
+            transactionDate = transactionTime.toLocalDate();
+        }
+    }
 
     public long getId() {
         return id;
@@ -37,12 +58,12 @@ public class BankTransaction {
         this.customerAccount = customerAccount;
     }
 
-    public Double getTransactionAmount() {
-        return transactionAmount;
+    public long getTransactionAmountCents() {
+        return transactionAmountCents;
     }
 
-    public void setTransactionAmount(Double transactionAmount) {
-        this.transactionAmount = transactionAmount;
+    public void setTransactionAmountCents(long transactionAmountCents) {
+        this.transactionAmountCents = transactionAmountCents;
     }
 
     public LocalDate getTransactionDate() {
@@ -52,4 +73,12 @@ public class BankTransaction {
     public void setTransactionDate(LocalDate transactionDate) {
         this.transactionDate = transactionDate;
     }
+
+    public LocalDateTime getTransactionTime() {
+        return transactionTime;
+    }
+
+    public void setTransactionTime(LocalDateTime transactionTime) {
+        this.transactionTime = transactionTime;
+    }
 }
@@ -2,10 +2,13 @@ package net.contal.demo.modal;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import net.contal.demo.AccountNumberUtil;
 
 import javax.persistence.*;
-import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotBlank;
 import java.util.List;
 
@@ -13,9 +16,10 @@ import java.util.List;
 @Table
 public class CustomerAccount {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "customer_account_seq")
+    @SequenceGenerator(name = "customer_account_seq", sequenceName = "customer_account_seq", allocationSize = 50)
     private long id;
-    @OneToMany
+    @OneToMany(mappedBy = "customerAccount")
     @JsonIgnore
     private List<BankTransaction> transactions;
     @NotBlank
@@ -24,15 +28,28 @@ public class CustomerAccount {
     private String lastName;
     @Column(unique = true)
     private int accountNumber;
-    @DecimalMin(value = "0.0")
-    private double accountBalance;
+    /**
+     * Balance in cents, a decimal amount in JSON
+     */
+    @Min(0)
+    @Column(columnDefinition = "bigint default 0 not null")
+    @JsonProperty("accountBalance")
+    @JsonSerialize(using = MoneyJson.Serializer.class)
+    @JsonDeserialize(using = MoneyJson.Deserializer.class)
+    private long accountBalanceCents;
+    /**
+     * Incremented by every posting to the account, orders the events of the read model
+     */
+    @Column(columnDefinition = "bigint default 0 not null")
+    @JsonIgnore
+    private long ledgerVersion;
 
     //Set getter and setters
     public long getId() {
         return id;
     }
 
-    public void setId(int id) {
+    public void setId(long id) {
         this.id = id;
     }
 
@@ -68,12 +85,20 @@ public class CustomerAccount {
         this.accountNumber = accountNumber;
     }
 
-    public double getAccountBalance() {
-        return accountBalance;
+    public long getAccountBalanceCents() {
+        return accountBalanceCents;
+    }
+
+    public void setAccountBalanceCents(long accountBalanceCents) {
+        this.accountBalanceCents = accountBalanceCents;
+    }
+
+    public long getLedgerVersion() {
+        return ledgerVersion;
     }
 
-    public void setAccountBalance(double accountBalance) {
-        this.accountBalance = accountBalance;
+    public void setLedgerVersion(long ledgerVersion) {
+        this.ledgerVersion = ledgerVersion;
     }
 
     @Override
@@ -0,0 +1,79 @@
+package net.contal.demo.modal;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+
+/**
+ * Per account, per day aggregate of posted transactions, maintained as transactions are posted.
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_daily_balance_account_date",
+        columnNames = {"accountNumber", "balanceDate"}))
+public class DailyBalance {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "daily_balance_seq")
+    @SequenceGenerator(name = "daily_balance_seq", sequenceName = "daily_balance_seq", allocationSize = 50)
+    private long id;
+    @Column(nullable = false)
+    private int accountNumber;
+    @Column(nullable = false)
+    private LocalDate balanceDate;
+    /**
+     * Amounts in cents
+     */
+    @Column(columnDefinition = "bigint default 0 not null")
+    private long netAmountCents;
+    @Column(columnDefinition = "bigint default 0 not null")
+    private long closingBalanceCents;
+
+    public DailyBalance() {
+    }
+
+    public DailyBalance(int accountNumber, LocalDate balanceDate, long netAmountCents, long closingBalanceCents) {
+        this.accountNumber = accountNumber;
+        this.balanceDate = balanceDate;
+        this.netAmountCents = netAmountCents;
+        this.closingBalanceCents = closingBalanceCents;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public int getAccountNumber() {
+        return accountNumber;
+    }
+
+    public void setAccountNumber(int accountNumber) {
+        this.accountNumber = accountNumber;
+    }
+
+    public LocalDate getBalanceDate() {
+        return balanceDate;
+    }
+
+    public void setBalanceDate(LocalDate balanceDate) {
+        this.balanceDate = balanceDate;
+    }
+
+    public long getNetAmountCents() {
+        return netAmountCents;
+    }
+
+    public void setNetAmountCents(long netAmountCents) {
+        this.netAmountCents = netAmountCents;
+    }
+
+    public long getClosingBalanceCents() {
+        return closingBalanceCents;
+    }
+
+    public void setClosingBalanceCents(long closingBalanceCents) {
+        this.closingBalanceCents = closingBalanceCents;
+    }
+}
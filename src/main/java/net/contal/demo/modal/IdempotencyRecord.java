@@ -0,0 +1,82 @@
+package net.contal.demo.modal;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Posting made with an idempotency key, inserted in the same transaction as the posting so a key can only ever
+ * apply one amount. Records older than {@code bank.idempotency.retention-hours} are deleted.
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_idempotency_record_created", columnList = "createdAt"))
+public class IdempotencyRecord {
+
+    public static final int MAX_KEY_LENGTH = 255;
+
+    @Id
+    @Column(length = MAX_KEY_LENGTH)
+    private String idempotencyKey;
+    @Column(nullable = false)
+    private int accountNumber;
+    /**
+     * Amount in cents
+     */
+    @Column(nullable = false)
+    private long amountCents;
+    @Column(nullable = false)
+    private long transactionId;
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    public IdempotencyRecord() {
+    }
+
+    public IdempotencyRecord(String idempotencyKey, int accountNumber, long amountCents, long transactionId,
+                             LocalDateTime createdAt) {
+        this.idempotencyKey = idempotencyKey;
+        this.accountNumber = accountNumber;
+        this.amountCents = amountCents;
+        this.transactionId = transactionId;
+        this.createdAt = createdAt;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public int getAccountNumber() {
+        return accountNumber;
+    }
+
+    public void setAccountNumber(int accountNumber) {
+        this.accountNumber = accountNumber;
+    }
+
+    public long getAmountCents() {
+        return amountCents;
+    }
+
+    public void setAmountCents(long amountCents) {
+        this.amountCents = amountCents;
+    }
+
+    public long getTransactionId() {
+        return transactionId;
+    }
+
+    public void setTransactionId(long transactionId) {
+        this.transactionId = transactionId;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
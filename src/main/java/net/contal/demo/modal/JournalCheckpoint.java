@@ -0,0 +1,40 @@
+package net.contal.demo.modal;
+
+import javax.persistence.*;
+
+/**
+ * Last journal sequence of a ledger shard that has been written to the database.
+ * Updated in the same transaction as the postings it covers.
+ */
+@Entity
+@Table
+public class JournalCheckpoint {
+
+    @Id
+    private int shard;
+    private long appliedSequence;
+
+    public JournalCheckpoint() {
+    }
+
+    public JournalCheckpoint(int shard, long appliedSequence) {
+        this.shard = shard;
+        this.appliedSequence = appliedSequence;
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    public void setShard(int shard) {
+        this.shard = shard;
+    }
+
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    public void setAppliedSequence(long appliedSequence) {
+        this.appliedSequence = appliedSequence;
+    }
+}
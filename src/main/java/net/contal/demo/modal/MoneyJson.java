@@ -0,0 +1,54 @@
+package net.contal.demo.modal;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+import net.contal.demo.MoneyUtil;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * JSON form of amounts held in cents: a decimal number of units, such as {@code 12.50} for 1250 cents.
+ */
+public abstract class MoneyJson {
+
+    public static class Serializer extends JsonSerializer<Long> {
+        @Override
+        public void serialize(Long cents, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeNumber(MoneyUtil.toDecimal(cents));
+        }
+    }
+
+    /**
+     * Reads a number or a numeric string, rejecting more than {@value MoneyUtil#SCALE} decimal places.
+     */
+    public static class Deserializer extends JsonDeserializer<Long> {
+        @Override
+        public Long deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            JsonToken token = parser.currentToken();
+            BigDecimal amount;
+            if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+                amount = parser.getDecimalValue();
+            } else if (token == JsonToken.VALUE_STRING) {
+                try {
+                    amount = new BigDecimal(parser.getText().trim());
+                } catch (NumberFormatException e) {
+                    throw InvalidFormatException.from(parser, "Not an amount", parser.getText(), Long.TYPE);
+                }
+            } else {
+                return (Long) context.handleUnexpectedToken(Long.TYPE, parser);
+            }
+            try {
+                return MoneyUtil.toCents(amount);
+            } catch (IllegalArgumentException e) {
+                throw InvalidFormatException.from(parser, e.getMessage(), amount, Long.TYPE);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package net.contal.demo.modal;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Snapshot of the archived part of an account's history: the account balance is this balance plus the transactions
+ * still in {@link BankTransaction}. Updated in the same transaction that archives the transactions it covers.
+ */
+@Entity
+@Table
+public class OpeningBalance {
+
+    @Id
+    private int accountNumber;
+    /**
+     * Sum of the archived transactions, in cents
+     */
+    @Column(columnDefinition = "bigint default 0 not null")
+    private long balanceCents;
+    @Column(columnDefinition = "bigint default 0 not null")
+    private long archivedTransactions;
+    /**
+     * Time of the newest archived transaction
+     */
+    private LocalDateTime archivedThrough;
+
+    public OpeningBalance() {
+    }
+
+    public OpeningBalance(int accountNumber) {
+        this.accountNumber = accountNumber;
+    }
+
+    public int getAccountNumber() {
+        return accountNumber;
+    }
+
+    public void setAccountNumber(int accountNumber) {
+        this.accountNumber = accountNumber;
+    }
+
+    public long getBalanceCents() {
+        return balanceCents;
+    }
+
+    public void setBalanceCents(long balanceCents) {
+        this.balanceCents = balanceCents;
+    }
+
+    public long getArchivedTransactions() {
+        return archivedTransactions;
+    }
+
+    public void setArchivedTransactions(long archivedTransactions) {
+        this.archivedTransactions = archivedTransactions;
+    }
+
+    public LocalDateTime getArchivedThrough() {
+        return archivedThrough;
+    }
+
+    public void setArchivedThrough(LocalDateTime archivedThrough) {
+        this.archivedThrough = archivedThrough;
+    }
+}
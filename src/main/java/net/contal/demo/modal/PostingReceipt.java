@@ -0,0 +1,47 @@
+package net.contal.demo.modal;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Transaction posted for an idempotency key, either by this request or by an earlier request with the same key.
+ */
+public class PostingReceipt {
+
+    private final long transactionId;
+    private final int accountNumber;
+    @JsonProperty("amount")
+    @JsonSerialize(using = MoneyJson.Serializer.class)
+    private final long amountCents;
+    private final boolean replayed;
+
+    public PostingReceipt(long transactionId, int accountNumber, long amountCents, boolean replayed) {
+        this.transactionId = transactionId;
+        this.accountNumber = accountNumber;
+        this.amountCents = amountCents;
+        this.replayed = replayed;
+    }
+
+    public static PostingReceipt of(IdempotencyRecord record, boolean replayed) {
+        return new PostingReceipt(record.getTransactionId(), record.getAccountNumber(), record.getAmountCents(), replayed);
+    }
+
+    public long getTransactionId() {
+        return transactionId;
+    }
+
+    public int getAccountNumber() {
+        return accountNumber;
+    }
+
+    public long getAmountCents() {
+        return amountCents;
+    }
+
+    /**
+     * @return true if an earlier request with the same key posted the transaction and nothing was applied now
+     */
+    public boolean isReplayed() {
+        return replayed;
+    }
+}
@@ -0,0 +1,47 @@
+package net.contal.demo.modal;
+
+/**
+ * Point in time statistics of one shard of the in-memory ledger engine.
+ */
+public class ShardStats {
+
+    private final int shard;
+    private final int queueDepth;
+    private final int accounts;
+    private final long processed;
+    private final long persisted;
+    private final long throughputPerSecond;
+
+    public ShardStats(int shard, int queueDepth, int accounts, long processed, long persisted, long throughputPerSecond) {
+        this.shard = shard;
+        this.queueDepth = queueDepth;
+        this.accounts = accounts;
+        this.processed = processed;
+        this.persisted = persisted;
+        this.throughputPerSecond = throughputPerSecond;
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getAccounts() {
+        return accounts;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    public long getPersisted() {
+        return persisted;
+    }
+
+    public long getThroughputPerSecond() {
+        return throughputPerSecond;
+    }
+}
@@ -0,0 +1,52 @@
+package net.contal.demo.modal;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * One transaction of a statement export, read as a projection so exported rows are never managed entities.
+ */
+@JsonPropertyOrder({"id", "accountNumber", "transactionDate", "transactionTime", "transactionAmount"})
+public class StatementLine {
+
+    private final long id;
+    private final int accountNumber;
+    private final LocalDate transactionDate;
+    private final LocalDateTime transactionTime;
+    @JsonProperty("transactionAmount")
+    @JsonSerialize(using = MoneyJson.Serializer.class)
+    private final long transactionAmountCents;
+
+    public StatementLine(long id, int accountNumber, LocalDate transactionDate, LocalDateTime transactionTime,
+                         long transactionAmountCents) {
+        this.id = id;
+        this.accountNumber = accountNumber;
+        this.transactionDate = transactionDate;
+        this.transactionTime = transactionTime;
+        this.transactionAmountCents = transactionAmountCents;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getAccountNumber() {
+        return accountNumber;
+    }
+
+    public LocalDate getTransactionDate() {
+        return transactionDate;
+    }
+
+    public LocalDateTime getTransactionTime() {
+        return transactionTime;
+    }
+
+    public long getTransactionAmountCents() {
+        return transactionAmountCents;
+    }
+}
@@ -0,0 +1,49 @@
+package net.contal.demo.modal;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * One transaction of the last ten and of a history page, read as a constructor projection so the account of the
+ * transaction is never loaded.
+ */
+@JsonPropertyOrder({"transactionAmount", "transactionDate", "transactionTime"})
+public class TransactionDetails {
+
+    @JsonIgnore
+    private final long id;
+    @JsonProperty("transactionAmount")
+    @JsonSerialize(using = MoneyJson.Serializer.class)
+    private final long transactionAmountCents;
+    private final LocalDate transactionDate;
+    private final LocalDateTime transactionTime;
+
+    public TransactionDetails(long id, long transactionAmountCents, LocalDate transactionDate,
+                              LocalDateTime transactionTime) {
+        this.id = id;
+        this.transactionAmountCents = transactionAmountCents;
+        this.transactionDate = transactionDate;
+        this.transactionTime = transactionTime;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getTransactionAmountCents() {
+        return transactionAmountCents;
+    }
+
+    public LocalDate getTransactionDate() {
+        return transactionDate;
+    }
+
+    public LocalDateTime getTransactionTime() {
+        return transactionTime;
+    }
+}
@@ -0,0 +1,28 @@
+package net.contal.demo.modal;
+
+import java.util.List;
+
+/**
+ * One page of the transaction history of an account, newest first.
+ */
+public class TransactionPage {
+
+    private final List<TransactionDetails> transactions;
+    private final String nextCursor;
+
+    public TransactionPage(List<TransactionDetails> transactions, String nextCursor) {
+        this.transactions = transactions;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<TransactionDetails> getTransactions() {
+        return transactions;
+    }
+
+    /**
+     * @return cursor of the following page, null on the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
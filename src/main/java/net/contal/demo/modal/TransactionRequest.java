@@ -0,0 +1,52 @@
+package net.contal.demo.modal;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Single entry of a batch posting request {accountNumber : "", amount : ""}
+ */
+public class TransactionRequest {
+
+    private int accountNumber;
+    /**
+     * Amount in cents, a decimal amount in JSON, 0 when missing
+     */
+    @JsonProperty("amount")
+    @JsonSerialize(using = MoneyJson.Serializer.class)
+    @JsonDeserialize(using = MoneyJson.Deserializer.class)
+    private long amountCents;
+
+    public TransactionRequest() {
+    }
+
+    public TransactionRequest(int accountNumber, long amountCents) {
+        this.accountNumber = accountNumber;
+        this.amountCents = amountCents;
+    }
+
+    public int getAccountNumber() {
+        return accountNumber;
+    }
+
+    public void setAccountNumber(int accountNumber) {
+        this.accountNumber = accountNumber;
+    }
+
+    public long getAmountCents() {
+        return amountCents;
+    }
+
+    public void setAmountCents(long amountCents) {
+        this.amountCents = amountCents;
+    }
+
+    @Override
+    public String toString() {
+        return "TransactionRequest{" +
+                "accountNumber=" + accountNumber +
+                ", amountCents=" + amountCents +
+                '}';
+    }
+}
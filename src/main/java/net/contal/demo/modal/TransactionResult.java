@@ -0,0 +1,56 @@
+package net.contal.demo.modal;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Outcome of a single entry of a batch posting request.
+ */
+public class TransactionResult {
+
+    public enum Status {
+        APPLIED,
+        INVALID_AMOUNT,
+        ACCOUNT_NOT_FOUND,
+        INSUFFICIENT_BALANCE,
+        FAILED
+    }
+
+    private final int accountNumber;
+    @JsonProperty("amount")
+    @JsonSerialize(using = MoneyJson.Serializer.class)
+    private final long amountCents;
+    private final Status status;
+    private final String message;
+
+    public TransactionResult(int accountNumber, long amountCents, Status status, String message) {
+        this.accountNumber = accountNumber;
+        this.amountCents = amountCents;
+        this.status = status;
+        this.message = message;
+    }
+
+    public static TransactionResult applied(TransactionRequest request) {
+        return new TransactionResult(request.getAccountNumber(), request.getAmountCents(), Status.APPLIED, null);
+    }
+
+    public static TransactionResult rejected(TransactionRequest request, Status status, String message) {
+        return new TransactionResult(request.getAccountNumber(), request.getAmountCents(), status, message);
+    }
+
+    public int getAccountNumber() {
+        return accountNumber;
+    }
+
+    public long getAmountCents() {
+        return amountCents;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
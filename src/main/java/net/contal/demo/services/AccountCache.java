@@ -0,0 +1,78 @@
+package net.contal.demo.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import net.contal.demo.modal.AccountCacheStats;
+import net.contal.demo.modal.AccountDetails;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * Bounded read-through cache of accounts by account number, evicting with Caffeine's W-TinyLFU policy.
+ * <p>
+ * Entries expire {@code bank.cache.ttl-seconds} after they were loaded, which bounds how stale a balance written by
+ * another node can be. Local writes invalidate the entry after their commit; an invalidation waits for a load of the
+ * same key that is in flight, so a load that read the balance before the commit cannot outlive it. Because of that
+ * wait, writers must close their session before touching the cache: a loader may be waiting for the connection
+ * they hold.
+ */
+@Component
+public class AccountCache implements MeterBinder {
+
+    private final Cache<Integer, AccountDetails> accounts;
+
+    public AccountCache(@Value("${bank.cache.maximum-size:10000}") long maximumSize,
+                        @Value("${bank.cache.ttl-seconds:30}") long ttlSeconds) {
+        this.accounts = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @param loader reads the account from the database, returns null if it does not exist
+     * @return cached or loaded account, null if it does not exist
+     */
+    AccountDetails get(int accountNumber, IntFunction<AccountDetails> loader) {
+        return accounts.get(accountNumber, key -> loader.apply(key));
+    }
+
+    /**
+     * @return cached account without loading it, null on a miss
+     */
+    AccountDetails getIfPresent(int accountNumber) {
+        return accounts.getIfPresent(accountNumber);
+    }
+
+    void put(AccountDetails account) {
+        accounts.put(account.getAccountNumber(), account);
+    }
+
+    void invalidate(int accountNumber) {
+        accounts.invalidate(accountNumber);
+    }
+
+    void invalidateAll(Collection<Integer> accountNumbers) {
+        accounts.invalidateAll(accountNumbers);
+    }
+
+    public AccountCacheStats getStats() {
+        CacheStats stats = accounts.stats();
+        return new AccountCacheStats(accounts.estimatedSize(), stats.hitCount(), stats.missCount(), stats.hitRate(),
+                stats.evictionCount(), stats.averageLoadPenalty());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new CaffeineCacheMetrics(accounts, "accounts", null).bindTo(registry);
+    }
+}
@@ -0,0 +1,194 @@
+package net.contal.demo.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.contal.demo.MoneyUtil;
+import net.contal.demo.modal.CustomerAccount;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads account import records one line at a time, so an upload is never held in memory as a whole.
+ * <p>
+ * CSV has the columns {@code firstName,lastName,accountBalance}, with an optional header line and double quoted
+ * fields. NDJSON has one {@link CustomerAccount} JSON object per line. Blank lines are skipped. A line that cannot be
+ * parsed becomes a record with an error instead of ending the import.
+ */
+public abstract class AccountImportReader implements Iterator<AccountImportReader.Record> {
+
+    public static final String CSV = "text/csv";
+    public static final String NDJSON = "application/x-ndjson";
+
+    private final BufferedReader reader;
+    private long lineNumber;
+    private Record next;
+
+    private AccountImportReader(Reader reader) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    }
+
+    /**
+     * @param mediaType {@value #CSV} or {@value #NDJSON}
+     * @throws IllegalArgumentException for any other media type
+     */
+    public static AccountImportReader of(String mediaType, Reader reader, ObjectMapper objectMapper) {
+        if (CSV.equalsIgnoreCase(mediaType)) {
+            return csv(reader);
+        }
+        if (NDJSON.equalsIgnoreCase(mediaType)) {
+            return ndjson(reader, objectMapper);
+        }
+        throw new IllegalArgumentException("Unsupported import format " + mediaType);
+    }
+
+    public static AccountImportReader csv(Reader reader) {
+        return new AccountImportReader(reader) {
+            @Override
+            CustomerAccount parse(String line, long lineNumber) {
+                List<String> fields = splitCsv(line);
+                if (lineNumber == 1 && "firstName".equalsIgnoreCase(fields.get(0).trim())) {
+                    return null;
+                }
+                if (fields.size() < 2 || fields.size() > 3) {
+                    throw new IllegalArgumentException("Expected firstName,lastName,accountBalance");
+                }
+                CustomerAccount account = new CustomerAccount();
+                account.setFirstName(fields.get(0).trim());
+                account.setLastName(fields.get(1).trim());
+                if (fields.size() == 3 && !fields.get(2).trim().isEmpty()) {
+                    try {
+                        account.setAccountBalanceCents(MoneyUtil.toCents(new BigDecimal(fields.get(2).trim())));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Not an amount: " + fields.get(2).trim());
+                    }
+                }
+                return account;
+            }
+        };
+    }
+
+    public static AccountImportReader ndjson(Reader reader, ObjectMapper objectMapper) {
+        return new AccountImportReader(reader) {
+            @Override
+            CustomerAccount parse(String line, long lineNumber) {
+                try {
+                    return objectMapper.readValue(line, CustomerAccount.class);
+                } catch (JsonProcessingException e) {
+                    throw new IllegalArgumentException("Invalid JSON: " + e.getOriginalMessage());
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the account of a line, null to skip the line
+     * @throws IllegalArgumentException if the line is malformed
+     */
+    abstract CustomerAccount parse(String line, long lineNumber);
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (next == null) {
+                String line = reader.readLine();
+                if (line == null) {
+                    return false;
+                }
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    CustomerAccount account = parse(line, lineNumber);
+                    if (account != null) {
+                        next = new Record(lineNumber, account, null);
+                    }
+                } catch (IllegalArgumentException e) {
+                    next = new Record(lineNumber, null, e.getMessage());
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Record next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Record record = next;
+        next = null;
+        return record;
+    }
+
+    /**
+     * Split one CSV line, a quote inside a quoted field is written twice.
+     */
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>(3);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * One line of an import: the account to create, or why the line was rejected.
+     */
+    public static final class Record {
+        private final long line;
+        private final CustomerAccount account;
+        private final String error;
+
+        Record(long line, CustomerAccount account, String error) {
+            this.line = line;
+            this.account = account;
+            this.error = error;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public CustomerAccount getAccount() {
+            return account;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
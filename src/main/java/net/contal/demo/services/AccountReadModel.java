@@ -0,0 +1,466 @@
+package net.contal.demo.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.contal.demo.modal.AccountDetails;
+import net.contal.demo.modal.BankTransaction;
+import net.contal.demo.modal.CustomerAccount;
+import net.contal.demo.modal.DailyBalance;
+import net.contal.demo.modal.TransactionDetails;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Read side of the ledger, enabled with {@code bank.read-model.enabled=true}: denormalised views of accounts that
+ * serve balance, details, last ten transactions and date balance reads without touching the tables postings write.
+ * <p>
+ * Every posting increments the ledger version of its account and, once committed, is published here as an event.
+ * A single projector thread applies events in publication order. A view applies the events of its account in version
+ * order: events it already contains are skipped, and an event that arrives ahead of a missing version waits for it.
+ * If the missing version does not arrive within {@code bank.read-model.gap-timeout-ms}, the view is dropped.
+ * <p>
+ * A view is loaded from the database on its first read, under the account row lock so it holds exactly the postings
+ * up to the version it read. It is loaded again {@code bank.read-model.ttl-seconds} after that, which bounds how
+ * stale it can be after writes this node did not publish.
+ * <p>
+ * Reads are eventually consistent. With read-your-writes a read first waits up to {@code bank.read-model.max-wait-ms}
+ * for the projector to apply every event published before it started. If the projector is still behind, or the view
+ * waits for a missing version, {@link #find} returns null and the caller reads the write side instead.
+ */
+@Component
+public class AccountReadModel implements MeterBinder {
+
+    /**
+     * Transactions kept per view, newest first
+     */
+    static final int RECENT_TRANSACTIONS = 10;
+
+    private final Logger logger = LoggerFactory.getLogger(AccountReadModel.class);
+
+    private final boolean enabled;
+    private final long gapTimeoutNanos;
+    private final long maxWaitNanos;
+    private final Cache<Integer, AccountView> views;
+    private final BlockingQueue<Posting> events;
+
+    private final Object publishLock = new Object();
+    private final Object appliedMonitor = new Object();
+    private volatile long publishedSequence;
+    private volatile long appliedSequence;
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private Thread projector;
+    private volatile boolean running;
+
+    public AccountReadModel(@Value("${bank.read-model.enabled:false}") boolean enabled,
+                            @Value("${bank.engine.mode:database}") String engineMode,
+                            @Value("${bank.read-model.maximum-size:10000}") long maximumSize,
+                            @Value("${bank.read-model.ttl-seconds:300}") long ttlSeconds,
+                            @Value("${bank.read-model.queue-capacity:100000}") int queueCapacity,
+                            @Value("${bank.read-model.gap-timeout-ms:1000}") long gapTimeoutMillis,
+                            @Value("${bank.read-model.max-wait-ms:1000}") long maxWaitMillis) {
+        // the sharded engine already serves balances from memory and does not version its postings
+        boolean sharded = ShardedLedgerEngine.MODE.equalsIgnoreCase(engineMode);
+        if (enabled && sharded) {
+            logger.warn("Read model is not available with the {} engine, reads use the write side", ShardedLedgerEngine.MODE);
+        }
+        this.enabled = enabled && !sharded;
+        this.gapTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(gapTimeoutMillis);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        long ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.views = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                // applying events replaces nothing, the view expires ttl after it was loaded
+                .expireAfter(new Expiry<Integer, AccountView>() {
+                    @Override
+                    public long expireAfterCreate(Integer accountNumber, AccountView view, long currentTime) {
+                        return ttlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Integer accountNumber, AccountView view, long currentTime,
+                                                  long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(Integer accountNumber, AccountView view, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+        this.events = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        projector = new Thread(this::project, "read-model-projector");
+        projector.setDaemon(true);
+        projector.start();
+        logger.info("Read model projection started");
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (projector != null) {
+            projector.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Publish a committed posting. Never blocks: when the projector is too far behind the event is dropped together
+     * with the view of its account, which is loaded again on its next read.
+     *
+     * @param accountNumber   account posted to
+     * @param version         ledger version of the account after the posting
+     * @param transaction     the persisted transaction
+     * @param closingBalance  account balance after the posting, in cents
+     */
+    void posted(int accountNumber, long version, BankTransaction transaction, long closingBalance) {
+        if (!enabled) {
+            return;
+        }
+        Posting posting = new Posting(accountNumber, version, transaction.getId(), transaction.getTransactionTime(),
+                transaction.getTransactionAmountCents(), closingBalance);
+        synchronized (publishLock) {
+            // sequences follow queue order, so applying sequence n means every earlier event was applied
+            posting.sequence = publishedSequence + 1;
+            posting.publishedNanos = System.nanoTime();
+            if (events.offer(posting)) {
+                publishedSequence = posting.sequence;
+                return;
+            }
+        }
+        dropped.incrementAndGet();
+        views.invalidate(accountNumber);
+    }
+
+    /**
+     * @param readYourWrites wait until every posting published before this call is applied
+     * @param loader         reads the view of an account from the database, returns null if it does not exist
+     * @return view of the account, null if the read model is disabled or cannot answer, or the account does not exist
+     */
+    AccountView find(int accountNumber, boolean readYourWrites, IntFunction<AccountView> loader) {
+        if (!enabled) {
+            return null;
+        }
+        if (readYourWrites && !awaitApplied(publishedSequence)) {
+            fallbacks.incrementAndGet();
+            return null;
+        }
+        AccountView view = views.getIfPresent(accountNumber);
+        if (view != null && view.isMissingVersionSince(System.nanoTime() - gapTimeoutNanos)) {
+            views.asMap().remove(accountNumber, view);
+            view = null;
+        }
+        if (view == null) {
+            view = views.get(accountNumber, key -> {
+                loads.incrementAndGet();
+                return loader.apply(key);
+            });
+        }
+        if (view != null && readYourWrites && view.isMissingVersion()) {
+            // a posting acknowledged to its client may be held back behind the missing version
+            fallbacks.incrementAndGet();
+            return null;
+        }
+        return view;
+    }
+
+    private boolean awaitApplied(long sequence) {
+        if (appliedSequence >= sequence) {
+            return true;
+        }
+        long deadline = System.nanoTime() + maxWaitNanos;
+        synchronized (appliedMonitor) {
+            while (appliedSequence < sequence) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(appliedMonitor, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void project() {
+        List<Posting> batch = new ArrayList<>();
+        while (running || !events.isEmpty()) {
+            try {
+                Posting first = events.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                events.drainTo(batch, 1000);
+                for (Posting posting : batch) {
+                    apply(posting);
+                }
+                appliedSequence = batch.get(batch.size() - 1).sequence;
+                batch.clear();
+                synchronized (appliedMonitor) {
+                    appliedMonitor.notifyAll();
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (Exception e) {
+                // a failed event drops the views it reached, they are loaded again on their next read
+                logger.error("Read model projection failed: {}", e.getMessage());
+                for (Posting posting : batch) {
+                    views.invalidate(posting.accountNumber);
+                }
+                appliedSequence = Math.max(appliedSequence, batch.get(batch.size() - 1).sequence);
+                batch.clear();
+            }
+        }
+    }
+
+    private void apply(Posting posting) {
+        long now = System.nanoTime();
+        // a view that is being loaded is waited for, and then includes or receives the posting
+        views.asMap().computeIfPresent(posting.accountNumber,
+                (accountNumber, view) -> view.apply(posting, now - gapTimeoutNanos) ? view : null);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("bank.readmodel.lag.events", this, model -> model.publishedSequence - model.appliedSequence)
+                .description("Published postings the read model has not applied yet")
+                .register(registry);
+        TimeGauge.builder("bank.readmodel.lag", events, TimeUnit.NANOSECONDS, queue -> {
+            Posting oldest = queue.peek();
+            return oldest == null ? 0 : System.nanoTime() - oldest.publishedNanos;
+        })
+                .description("Age of the oldest posting the read model has not applied yet")
+                .register(registry);
+        Gauge.builder("bank.readmodel.views", views, Cache::estimatedSize)
+                .description("Account views held by the read model")
+                .register(registry);
+        FunctionCounter.builder("bank.readmodel.loads", loads, AtomicLong::get)
+                .description("Account views loaded from the database")
+                .register(registry);
+        FunctionCounter.builder("bank.readmodel.fallbacks", fallbacks, AtomicLong::get)
+                .description("Read-your-writes reads served by the write side because the read model was behind")
+                .register(registry);
+        FunctionCounter.builder("bank.readmodel.dropped", dropped, AtomicLong::get)
+                .description("Postings dropped because the projector queue was full")
+                .register(registry);
+    }
+
+    /**
+     * A committed posting, the event the read model is built from.
+     */
+    static final class Posting {
+        final int accountNumber;
+        final long version;
+        final long transactionId;
+        final LocalDateTime time;
+        final long amount;
+        final long closingBalance;
+        long sequence;
+        long publishedNanos;
+
+        Posting(int accountNumber, long version, long transactionId, LocalDateTime time, long amount,
+                long closingBalance) {
+            this.accountNumber = accountNumber;
+            this.version = version;
+            this.transactionId = transactionId;
+            this.time = time;
+            this.amount = amount;
+            this.closingBalance = closingBalance;
+        }
+    }
+
+    /**
+     * Denormalised state of one account: details, balance, the most recent transactions in a ring buffer and the
+     * daily balances. Written by the projector thread and read by request threads, both under the view's lock.
+     */
+    static final class AccountView {
+        private final long id;
+        private final int accountNumber;
+        private final String firstName;
+        private final String lastName;
+        private long version;
+        private long balance;
+
+        private final long[] recentIds = new long[RECENT_TRANSACTIONS];
+        private final LocalDateTime[] recentTimes = new LocalDateTime[RECENT_TRANSACTIONS];
+        private final long[] recentAmounts = new long[RECENT_TRANSACTIONS];
+        // slot of the next transaction, and number of slots in use
+        private int recentNext;
+        private int recentCount;
+
+        // net amount and closing balance by day
+        private final TreeMap<LocalDate, long[]> days = new TreeMap<>();
+
+        // postings ahead of a missing version, by version
+        private TreeMap<Long, Posting> waiting;
+        private long waitingSince;
+
+        private AccountView(CustomerAccount account) {
+            this.id = account.getId();
+            this.accountNumber = account.getAccountNumber();
+            this.firstName = account.getFirstName();
+            this.lastName = account.getLastName();
+            this.balance = account.getAccountBalanceCents();
+            this.version = account.getLedgerVersion();
+        }
+
+        /**
+         * @param account       the account, read under its row lock
+         * @param recent        its most recent transactions, newest first
+         * @param dailyBalances its daily balances
+         */
+        static AccountView of(CustomerAccount account, List<TransactionDetails> recent,
+                              List<DailyBalance> dailyBalances) {
+            AccountView view = new AccountView(account);
+            for (int i = Math.min(recent.size(), RECENT_TRANSACTIONS) - 1; i >= 0; i--) {
+                TransactionDetails transaction = recent.get(i);
+                view.addRecent(transaction.getId(), transaction.getTransactionTime(), transaction.getTransactionAmountCents());
+            }
+            for (DailyBalance dailyBalance : dailyBalances) {
+                view.days.put(dailyBalance.getBalanceDate(),
+                        new long[]{dailyBalance.getNetAmountCents(), dailyBalance.getClosingBalanceCents()});
+            }
+            return view;
+        }
+
+        /**
+         * @param expiredBefore nanoTime before which a missing version is given up on
+         * @return false if the view waited too long for a missing version and must be dropped
+         */
+        synchronized boolean apply(Posting posting, long expiredBefore) {
+            if (posting.version <= version) {
+                return true;
+            }
+            if (posting.version > version + 1) {
+                if (waiting == null) {
+                    waiting = new TreeMap<>();
+                    waitingSince = posting.publishedNanos;
+                }
+                waiting.put(posting.version, posting);
+                return waitingSince - expiredBefore > 0;
+            }
+            post(posting);
+            while (waiting != null && waiting.firstKey() <= version + 1) {
+                Posting next = waiting.pollFirstEntry().getValue();
+                if (next.version == version + 1) {
+                    post(next);
+                }
+                if (waiting.isEmpty()) {
+                    waiting = null;
+                }
+            }
+            if (waiting != null) {
+                waitingSince = waiting.firstEntry().getValue().publishedNanos;
+            }
+            return true;
+        }
+
+        private void post(Posting posting) {
+            version = posting.version;
+            balance = posting.closingBalance;
+            addRecent(posting.transactionId, posting.time, posting.amount);
+            long[] day = days.computeIfAbsent(posting.time.toLocalDate(), date -> new long[2]);
+            day[0] += posting.amount;
+            day[1] = posting.closingBalance;
+        }
+
+        private void addRecent(long transactionId, LocalDateTime time, long amount) {
+            recentIds[recentNext] = transactionId;
+            recentTimes[recentNext] = time;
+            recentAmounts[recentNext] = amount;
+            recentNext = (recentNext + 1) % RECENT_TRANSACTIONS;
+            recentCount = Math.min(recentCount + 1, RECENT_TRANSACTIONS);
+        }
+
+        synchronized boolean isMissingVersion() {
+            return waiting != null;
+        }
+
+        synchronized boolean isMissingVersionSince(long nanoTime) {
+            return waiting != null && waitingSince - nanoTime < 0;
+        }
+
+        synchronized long getBalance() {
+            return balance;
+        }
+
+        synchronized AccountDetails toAccountDetails() {
+            return new AccountDetails(id, accountNumber, firstName, lastName, balance);
+        }
+
+        /**
+         * @return up to {@value #RECENT_TRANSACTIONS} transactions, newest first
+         */
+        synchronized List<TransactionDetails> getRecentTransactions() {
+            List<TransactionDetails> transactions = new ArrayList<>(recentCount);
+            for (int i = 1; i <= recentCount; i++) {
+                int slot = Math.floorMod(recentNext - i, RECENT_TRANSACTIONS);
+                transactions.add(new TransactionDetails(recentIds[slot], recentAmounts[slot],
+                        recentTimes[slot].toLocalDate(), recentTimes[slot]));
+            }
+            return transactions;
+        }
+
+        /**
+         * @param from first day to include, null for no lower bound
+         * @param to   last day to include, null for no upper bound
+         * @return closing balance in cents of every day with transactions, in date order
+         */
+        synchronized Map<LocalDate, Long> getDateBalance(LocalDate from, LocalDate to) {
+            NavigableMap<LocalDate, long[]> range = days;
+            if (from != null) {
+                range = range.tailMap(from, true);
+            }
+            if (to != null) {
+                range = range.headMap(to, true);
+            }
+            Map<LocalDate, Long> dateBalance = new LinkedHashMap<>();
+            range.forEach((date, day) -> dateBalance.put(date, day[1]));
+            return dateBalance;
+        }
+    }
+}
@@ -1,35 +1,73 @@
 package net.contal.demo.services;
 
-import net.contal.demo.AccountNumberUtil;
+import net.contal.demo.AccountNumberAllocator;
 import net.contal.demo.DbUtils;
 import net.contal.demo.exceptions.AccountNumberNotFoundException;
+import net.contal.demo.exceptions.IdempotencyKeyReusedException;
 import net.contal.demo.exceptions.InsufficientBalanceException;
+import net.contal.demo.exceptions.InvalidAmountException;
+import net.contal.demo.exceptions.InvalidIdempotencyKeyException;
+import net.contal.demo.exceptions.InvalidCursorException;
+import net.contal.demo.exceptions.InvalidTransferException;
 import net.contal.demo.exceptions.ServiceException;
+import net.contal.demo.modal.AccountCacheStats;
+import net.contal.demo.modal.AccountImportResult;
+import net.contal.demo.modal.AccountDetails;
 import net.contal.demo.modal.BankTransaction;
 import net.contal.demo.modal.CustomerAccount;
+import net.contal.demo.modal.DailyBalance;
+import net.contal.demo.modal.IdempotencyRecord;
+import net.contal.demo.modal.PostingReceipt;
+import net.contal.demo.modal.ShardStats;
+import net.contal.demo.modal.StatementLine;
+import net.contal.demo.modal.TransactionDetails;
+import net.contal.demo.modal.TransactionPage;
+import net.contal.demo.modal.TransactionRequest;
+import net.contal.demo.modal.TransactionResult;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.query.Query;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Service;
 
+import javax.persistence.LockModeType;
 import javax.persistence.NoResultException;
-import javax.transaction.Transactional;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * TODO complete this service class
  * TODO use BankServiceTest class
  */
 @Service
-@Transactional
+@DependsOn("schemaMigrations")
 public class BankService {
 
-    //USE this class to access database , you can call openASession to access database
+    //USE this class to access database , run work through inTransaction or readOnly
     private final DbUtils dbUtils;
 
     private final Logger logger = LoggerFactory.getLogger(BankService.class);
@@ -37,12 +75,157 @@ public class BankService {
     private final String CHECK_ACCOUNT_SQL = "select case when (count(ca) != 0) then true else false end from CustomerAccount ca " +
             "where ca.accountNumber = :accountNumber";
 
+    private final String ACCOUNT_ID_SQL = "select ca.id from CustomerAccount ca where ca.accountNumber = :accountNumber";
+
+    private final String POST_AMOUNT_SQL = "update CustomerAccount ca set ca.accountBalanceCents = ca.accountBalanceCents + :amount, " +
+            "ca.ledgerVersion = ca.ledgerVersion + 1 " +
+            "where ca.id = :accountId and ca.accountBalanceCents + :amount >= 0";
+
+    private final String ACCOUNT_BALANCE_VERSION_SQL = "select ca.accountBalanceCents, ca.ledgerVersion from CustomerAccount ca " +
+            "where ca.id = :accountId";
+
+    // one statement, so it sees transactions the archiver moves either in the table or in the opening balance
+    private final String LEDGER_BALANCE_SQL = "select coalesce(sum(bt.transactionAmountCents), 0) + " +
+            "coalesce((select ob.balanceCents from OpeningBalance ob where ob.accountNumber = :accountNumber), 0) " +
+            "from BankTransaction bt where bt.customerAccount.accountNumber = :accountNumber";
+
+    private final String ACCOUNT_SQL = "from CustomerAccount ca where ca.accountNumber = :accountNumber";
+
+    private final String ACCOUNT_DETAILS_SQL = "select new net.contal.demo.modal.AccountDetails(ca.id, ca.accountNumber, " +
+            "ca.firstName, ca.lastName, ca.accountBalanceCents) from CustomerAccount ca where ca.accountNumber = :accountNumber";
+
+    private final String HAS_DAILY_BALANCE_SQL = "select db.id from DailyBalance db where db.accountNumber = :accountNumber";
+
+    private final String HAS_TRANSACTION_SQL = "select bt.id from BankTransaction bt " +
+            "where bt.customerAccount.accountNumber = :accountNumber";
+
+    private final String HAS_ARCHIVED_TRANSACTION_SQL = "select at.id from ArchivedTransaction at " +
+            "where at.accountNumber = :accountNumber";
+
+    private final String TRANSACTION_DAYS_SQL = "select bt.transactionDate, sum(bt.transactionAmountCents) from BankTransaction bt " +
+            "where bt.customerAccount.accountNumber = :accountNumber group by bt.transactionDate order by bt.transactionDate";
+
+    private final String ARCHIVED_DAYS_SQL = "select at.transactionDate, sum(at.transactionAmountCents) " +
+            "from ArchivedTransaction at where at.accountNumber = :accountNumber group by at.transactionDate";
+
+    // responses are read as projections, so neither the transaction nor its account is hydrated as an entity
+    private final String LAST_TEN_SQL = "select new net.contal.demo.modal.TransactionDetails(bt.id, " +
+            "bt.transactionAmountCents, bt.transactionDate, bt.transactionTime) from BankTransaction bt " +
+            "where bt.customerAccount.accountNumber = :accountNumber order by bt.transactionTime desc, bt.id desc";
+
+    private final String HISTORY_SQL = "select new net.contal.demo.modal.TransactionDetails(bt.id, " +
+            "bt.transactionAmountCents, bt.transactionDate, bt.transactionTime) " +
+            "from BankTransaction bt where bt.customerAccount.id = :accountId " +
+            "order by bt.transactionTime desc, bt.id desc";
+
+    // keyset seeks repeat the bound on transactionTime outside the OR, so the database can range scan the index from it
+    private final String HISTORY_AFTER_SQL = "select new net.contal.demo.modal.TransactionDetails(bt.id, " +
+            "bt.transactionAmountCents, bt.transactionDate, bt.transactionTime) " +
+            "from BankTransaction bt where bt.customerAccount.id = :accountId " +
+            "and bt.transactionTime <= :time and (bt.transactionTime < :time or bt.id < :id) " +
+            "order by bt.transactionTime desc, bt.id desc";
+
+    private final String ARCHIVED_HISTORY_SQL = "select new net.contal.demo.modal.TransactionDetails(at.id, " +
+            "at.transactionAmountCents, at.transactionDate, at.transactionTime) " +
+            "from ArchivedTransaction at where at.accountNumber = :accountNumber " +
+            "order by at.transactionTime desc, at.id desc";
+
+    private final String ARCHIVED_HISTORY_AFTER_SQL = "select new net.contal.demo.modal.TransactionDetails(at.id, " +
+            "at.transactionAmountCents, at.transactionDate, at.transactionTime) " +
+            "from ArchivedTransaction at where at.accountNumber = :accountNumber " +
+            "and at.transactionTime <= :time and (at.transactionTime < :time or at.id < :id) " +
+            "order by at.transactionTime desc, at.id desc";
+
+    // ordered by every column of the account/time index, so the database reads a chunk in index order instead of sorting the account
+    private final String EXPORT_ACCOUNT_SQL = "select bt.id, bt.transactionDate, bt.transactionTime, bt.transactionAmountCents " +
+            "from BankTransaction bt where bt.customerAccount.id = :accountId " +
+            "order by bt.customerAccount.id, bt.transactionTime, bt.id";
+
+    private final String EXPORT_ACCOUNT_AFTER_SQL = "select bt.id, bt.transactionDate, bt.transactionTime, bt.transactionAmountCents " +
+            "from BankTransaction bt where bt.customerAccount.id = :accountId " +
+            "and bt.transactionTime >= :time and (bt.transactionTime > :time or bt.id > :id) " +
+            "order by bt.customerAccount.id, bt.transactionTime, bt.id";
+
+    private final String EXPORT_ALL_SQL = "select bt.id, bt.transactionDate, bt.transactionTime, bt.transactionAmountCents, " +
+            "ca.accountNumber from BankTransaction bt join bt.customerAccount ca where bt.id > :id order by bt.id";
+
+    private final String EXPORT_ARCHIVED_ACCOUNT_SQL = "select at.id, at.transactionDate, at.transactionTime, " +
+            "at.transactionAmountCents from ArchivedTransaction at where at.accountNumber = :accountNumber " +
+            "order by at.accountNumber, at.transactionTime, at.id";
+
+    private final String EXPORT_ARCHIVED_ACCOUNT_AFTER_SQL = "select at.id, at.transactionDate, at.transactionTime, " +
+            "at.transactionAmountCents from ArchivedTransaction at where at.accountNumber = :accountNumber " +
+            "and at.transactionTime >= :time and (at.transactionTime > :time or at.id > :id) " +
+            "order by at.accountNumber, at.transactionTime, at.id";
+
+    private final String EXPORT_ARCHIVED_ALL_SQL = "select at.id, at.transactionDate, at.transactionTime, " +
+            "at.transactionAmountCents, at.accountNumber from ArchivedTransaction at where at.id > :id order by at.id";
+
+    private final String BATCH_ACCOUNTS_SQL = "from CustomerAccount ca where ca.accountNumber in (:accountNumbers) " +
+            "order by ca.accountNumber";
+
+    /**
+     * Number of batch entries applied per database transaction
+     */
+    @Value("${bank.batch.chunk-size:500}")
+    private int batchChunkSize = 500;
+
+    /**
+     * Number of imported accounts created per database transaction
+     */
+    @Value("${bank.import.chunk-size:500}")
+    private int importChunkSize = 500;
+
+    /**
+     * Transactions per history page when the client does not ask for a size, and the largest size allowed
+     */
+    @Value("${bank.history.page-size:20}")
+    private int historyPageSize = 20;
+    @Value("${bank.history.max-page-size:100}")
+    private int historyMaxPageSize = 100;
+
+    /**
+     * Transactions read per session by a statement export, and fetched per JDBC round trip within it
+     */
+    @Value("${bank.export.chunk-size:10000}")
+    private int exportChunkSize = 10000;
+    @Value("${bank.export.fetch-size:500}")
+    private int exportFetchSize = 500;
+
+    private static final int CREATE_ACCOUNT_ATTEMPTS = 3;
+
+    private final AccountNumberAllocator accountNumberAllocator;
+
+    private final AccountCache accountCache;
+
+    //in-memory posting engine, only used when bank.engine.mode=sharded
+    private final ShardedLedgerEngine ledgerEngine;
+
+    //query side projection, only used when bank.read-model.enabled=true
+    private final AccountReadModel readModel;
+
+    private final IdempotencyIndex idempotencyIndex;
+
+    //moves old transactions to the archive, exports hold it off while they read
+    private final TransactionArchiver archiver;
+
+    //identical concurrent reads of an account share one query
+    private final ReadCoalescer readCoalescer;
+
     @Autowired
-    public BankService(DbUtils dbUtils) {
+    public BankService(DbUtils dbUtils, AccountNumberAllocator accountNumberAllocator, AccountCache accountCache,
+                       ShardedLedgerEngine ledgerEngine, AccountReadModel readModel, IdempotencyIndex idempotencyIndex,
+                       TransactionArchiver archiver, ReadCoalescer readCoalescer) {
         this.dbUtils = dbUtils;
+        this.accountNumberAllocator = accountNumberAllocator;
+        this.accountCache = accountCache;
+        this.ledgerEngine = ledgerEngine;
+        this.readModel = readModel;
+        this.idempotencyIndex = idempotencyIndex;
+        this.archiver = archiver;
+        this.readCoalescer = readCoalescer;
     }
 
-
     /**
      * Save customAccount to database
      * return AccountNumber
@@ -51,88 +234,525 @@ public class BankService {
      * @return accountNumber
      */
     public int createAnAccount(CustomerAccount customerAccount) {
-        int accountNumber = AccountNumberUtil.generateAccountNumber();
+        for (int attempt = 1; ; attempt++) {
+            int accountNumber = accountNumberAllocator.nextAccountNumber();
+            try {
+                saveAccount(customerAccount, accountNumber);
+                accountCache.put(AccountDetails.of(customerAccount));
+                return accountNumber;
+            } catch (ConstraintViolationException e) {
+                // only accounts numbered before the allocator existed can hold an allocated number
+                if (attempt == CREATE_ACCOUNT_ATTEMPTS) {
+                    logger.error(e.getMessage());
+                    throw new ServiceException(e.getMessage());
+                }
+                logger.warn("Account number {} is taken, allocating another one", accountNumber);
+            }
+        }
+    }
+
+    private void saveAccount(CustomerAccount customerAccount, int accountNumber) {
         customerAccount.setAccountNumber(accountNumber);
-        Session session = null;
         try {
-            session = dbUtils.openASession();
-            session.save(customerAccount);
-            session.getTransaction().commit();
+            dbUtils.inTransaction(session -> {
+                saveNewAccount(session, customerAccount, LocalDateTime.now());
+                return customerAccount;
+            });
             logger.info("Account created {}, {}", customerAccount.getFirstName(), accountNumber);
-            return accountNumber;
         } catch (Exception e) {
-            if (session != null && session.getTransaction().isActive()) {
-                session.getTransaction().rollback();
+            ConstraintViolationException violation = findConstraintViolation(e);
+            if (violation != null) {
+                throw violation;
             }
             logger.error(e.getMessage());
             throw new ServiceException(e.getMessage());
-        } finally {
-            if (session != null) {
-                session.close();
+        }
+    }
+
+
+    /**
+     * Insert an account that has its number, with its opening balance as the first transaction so the transaction
+     * history adds up to the account balance. Nothing else can have posted to the new account yet.
+     */
+    private static void saveNewAccount(Session session, CustomerAccount customerAccount, LocalDateTime now) {
+        session.save(customerAccount);
+        long openingBalance = customerAccount.getAccountBalanceCents();
+        if (openingBalance != 0) {
+            LocalDate today = now.toLocalDate();
+            BankTransaction openingTransaction = new BankTransaction();
+            openingTransaction.setCustomerAccount(customerAccount);
+            openingTransaction.setTransactionAmountCents(openingBalance);
+            openingTransaction.setTransactionDate(today);
+            openingTransaction.setTransactionTime(now);
+            session.save(openingTransaction);
+            session.save(new DailyBalance(customerAccount.getAccountNumber(), today, openingBalance, openingBalance));
+        }
+    }
+
+    /**
+     * Create accounts from an upload, one database transaction per {@code bank.import.chunk-size} records.
+     * Account numbers of a chunk are allocated at once and its inserts go to the database as JDBC batches.
+     * Records are consumed as they are read and every chunk starts a new session, so memory use does not grow
+     * with the size of the upload.
+     *
+     * @param records parsed import records
+     * @param results receives the result of every record of a chunk, in record order, once the chunk is committed
+     * @return number of accounts created
+     */
+    public long importAccounts(Iterator<AccountImportReader.Record> records, Consumer<List<AccountImportResult>> results) {
+        long created = 0;
+        List<AccountImportReader.Record> chunk = new ArrayList<>(importChunkSize);
+        while (records.hasNext()) {
+            chunk.add(records.next());
+            if (chunk.size() == importChunkSize || !records.hasNext()) {
+                List<AccountImportResult> chunkResults = importChunk(chunk);
+                for (AccountImportResult result : chunkResults) {
+                    if (result.getAccountNumber() != null) {
+                        created++;
+                    }
+                }
+                results.accept(chunkResults);
+                chunk.clear();
+            }
+        }
+        logger.info("Imported {} accounts", created);
+        return created;
+    }
+
+    private List<AccountImportResult> importChunk(List<AccountImportReader.Record> chunk) {
+        AccountImportResult[] results = new AccountImportResult[chunk.size()];
+        List<Integer> valid = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            AccountImportReader.Record record = chunk.get(i);
+            String error = record.getError() != null ? record.getError() : validateImport(record.getAccount());
+            if (error != null) {
+                results[i] = AccountImportResult.rejected(record.getLine(), error);
+            } else {
+                valid.add(i);
+            }
+        }
+
+        for (int attempt = 1; !valid.isEmpty(); attempt++) {
+            int[] accountNumbers = accountNumberAllocator.nextAccountNumbers(valid.size());
+            try {
+                dbUtils.inTransaction(session -> {
+                    LocalDateTime now = LocalDateTime.now();
+                    for (int i = 0; i < accountNumbers.length; i++) {
+                        CustomerAccount imported = chunk.get(valid.get(i)).getAccount();
+                        CustomerAccount customerAccount = new CustomerAccount();
+                        customerAccount.setFirstName(imported.getFirstName().trim());
+                        customerAccount.setLastName(imported.getLastName().trim());
+                        customerAccount.setAccountBalanceCents(imported.getAccountBalanceCents());
+                        customerAccount.setAccountNumber(accountNumbers[i]);
+                        saveNewAccount(session, customerAccount, now);
+                    }
+                    return null;
+                });
+                for (int i = 0; i < accountNumbers.length; i++) {
+                    int index = valid.get(i);
+                    results[index] = AccountImportResult.created(chunk.get(index).getLine(), accountNumbers[i]);
+                }
+                break;
+            } catch (Exception e) {
+                // only accounts numbered before the allocator existed can hold an allocated number
+                if (findConstraintViolation(e) != null && attempt < CREATE_ACCOUNT_ATTEMPTS) {
+                    logger.warn("Allocated account number is taken, retrying chunk of {} accounts", valid.size());
+                    continue;
+                }
+                logger.error(e.getMessage());
+                for (int index : valid) {
+                    results[index] = AccountImportResult.rejected(chunk.get(index).getLine(), e.getMessage());
+                }
+                break;
             }
         }
+        return Arrays.asList(results);
+    }
+
+    private static String validateImport(CustomerAccount account) {
+        if (account.getFirstName() == null || account.getFirstName().trim().isEmpty()
+                || account.getLastName() == null || account.getLastName().trim().isEmpty()) {
+            return "firstName and lastName are required";
+        }
+        if (account.getAccountBalanceCents() < 0) {
+            return "accountBalance must not be negative";
+        }
+        return null;
+    }
+
+    private static ConstraintViolationException findConstraintViolation(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException) {
+                return (ConstraintViolationException) cause;
+            }
+        }
+        return null;
     }
 
 
     /**
-     * Add transaction
+     * Add transaction.
+     * The balance check and update run as one conditional UPDATE, so concurrent postings to the same
+     * account are serialised by the database row lock and can neither overwrite each other
+     * nor overdraw the account.
      *
      * @param accountNumber target account number
-     * @param amount        amount to register as transaction
+     * @param amount        amount to register as transaction, in cents
      * @return boolean , if added as transaction
      */
-    public boolean addTransactions(int accountNumber, Double amount) {
+    public boolean addTransactions(int accountNumber, long amount) {
 
-        if (amount == null || amount == 0.0) {
+        if (amount == 0) {
             return false;
         }
-        Session session = null;
-
-        String hql = "FROM CustomerAccount ca WHERE ca.accountNumber = :accountNumber";
+        if (isLedgerEngineEnabled()) {
+            return ledgerEngine.post(accountNumber, amount);
+        }
+        PostedTransaction posted = postAmount(accountNumber, amount, null);
+        if (posted == null) {
+            return false;
+        }
+        accountChanged(accountNumber);
+        publish(Collections.singletonList(posted));
+        return true;
+    }
 
+    /**
+     * Add transaction at most once per idempotency key, so a client can retry a posting whose response it did not
+     * receive. The key is recorded in the same database transaction as the posting. A retry returns the transaction
+     * of the first posting without applying the amount again; a posting that was rejected recorded nothing and is
+     * evaluated again. Keys are kept for {@code bank.idempotency.retention-seconds}.
+     *
+     * @param accountNumber  target account number
+     * @param amount         amount to register as transaction, in cents
+     * @param idempotencyKey client chosen key, at most {@value IdempotencyRecord#MAX_KEY_LENGTH} characters
+     * @return the posted transaction, null if the amount is zero or the account does not exist
+     */
+    public PostingReceipt addTransactions(int accountNumber, long amount, String idempotencyKey) {
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > IdempotencyRecord.MAX_KEY_LENGTH) {
+            throw new InvalidIdempotencyKeyException("Idempotency key must have 1 to " +
+                    IdempotencyRecord.MAX_KEY_LENGTH + " characters");
+        }
+        if (amount == 0) {
+            return null;
+        }
+        if (isLedgerEngineEnabled()) {
+            // the engine acknowledges before its postings reach the database, where the key would be recorded
+            throw new ServiceException("Idempotency keys are not supported by the " + ShardedLedgerEngine.MODE + " engine");
+        }
+        IdempotencyRecord earlier = idempotencyIndex.find(idempotencyKey);
+        if (earlier != null) {
+            return replay(earlier, accountNumber, amount);
+        }
+        PostedTransaction posted;
         try {
-            session = dbUtils.openASession();
-            CustomerAccount customerAccount = session.createQuery(hql, CustomerAccount.class)
-                    .setParameter("accountNumber", accountNumber)
-                    .getSingleResult();
-
-            if (amount + customerAccount.getAccountBalance() < 0) {
-                throw new InsufficientBalanceException("Insufficient balance to do th transaction");
+            posted = postAmount(accountNumber, amount, idempotencyKey);
+        } catch (ConstraintViolationException e) {
+            // a concurrent request, or a request to another node, recorded the key first
+            earlier = idempotencyIndex.findStored(idempotencyKey);
+            if (earlier == null) {
+                logger.error(e.getMessage());
+                throw new ServiceException(e.getMessage());
             }
+            return replay(earlier, accountNumber, amount);
+        }
+        if (posted == null) {
+            return null;
+        }
+        accountChanged(accountNumber);
+        idempotencyIndex.recorded(posted.idempotencyRecord);
+        publish(Collections.singletonList(posted));
+        return PostingReceipt.of(posted.idempotencyRecord, false);
+    }
+
+    private PostingReceipt replay(IdempotencyRecord earlier, int accountNumber, long amount) {
+        if (earlier.getAccountNumber() != accountNumber || earlier.getAmountCents() != amount) {
+            throw new IdempotencyKeyReusedException("Idempotency key was already used for a different transaction");
+        }
+        logger.info("Replaying transaction {} of idempotency key {}", earlier.getTransactionId(),
+                earlier.getIdempotencyKey());
+        return PostingReceipt.of(earlier, true);
+    }
 
-            customerAccount.setAccountBalance(customerAccount.getAccountBalance() + amount);
+    /**
+     * @param idempotencyKey key to record with the posting, null for none
+     * @return the posting, null if the account does not exist
+     * @throws ConstraintViolationException if the idempotency key is already recorded
+     */
+    private PostedTransaction postAmount(int accountNumber, long amount, String idempotencyKey) {
+        try {
+            return dbUtils.inTransaction(session -> {
+                long accountId = findAccountId(session, accountNumber);
 
-            BankTransaction bankTransaction = new BankTransaction();
-            bankTransaction.setCustomerAccount(customerAccount);
-            bankTransaction.setTransactionAmount(amount);
+                int updated = session.createQuery(POST_AMOUNT_SQL)
+                        .setParameter("amount", amount)
+                        .setParameter("accountId", accountId)
+                        .executeUpdate();
+                if (updated == 0) {
+                    throw new InsufficientBalanceException("Insufficient balance to do th transaction");
+                }
 
-            session.update(customerAccount);
-            session.save(bankTransaction);
-            session.getTransaction().commit();
-            return true;
+                LocalDateTime now = LocalDateTime.now();
+                LocalDate today = now.toLocalDate();
+                BankTransaction bankTransaction = new BankTransaction();
+                bankTransaction.setCustomerAccount(session.load(CustomerAccount.class, accountId));
+                bankTransaction.setTransactionAmountCents(amount);
+                bankTransaction.setTransactionDate(today);
+                bankTransaction.setTransactionTime(now);
+                session.save(bankTransaction);
 
+                Object[] state = session.createQuery(ACCOUNT_BALANCE_VERSION_SQL, Object[].class)
+                        .setParameter("accountId", accountId)
+                        .getSingleResult();
+                long closingBalance = (Long) state[0];
+                DailyBalances.record(session, accountNumber, today, amount, closingBalance);
+                PostedTransaction posted = new PostedTransaction(accountNumber, (Long) state[1], bankTransaction,
+                        closingBalance);
+                if (idempotencyKey != null) {
+                    posted.idempotencyRecord = new IdempotencyRecord(idempotencyKey, accountNumber, amount,
+                            bankTransaction.getId(), now);
+                    session.save(posted.idempotencyRecord);
+                }
+                return posted;
+            });
         } catch (NoResultException e) {
-            if (session != null && session.getTransaction().isActive()) {
-                session.getTransaction().rollback();
-            }
             logger.error(e.getMessage());
-            return false;
+            return null;
         } catch (InsufficientBalanceException e) {
-            if (session != null && session.getTransaction().isActive()) {
-                session.getTransaction().rollback();
-            }
             logger.error(e.getMessage());
             throw e;
         } catch (Exception e) {
-            if (session != null && session.getTransaction().isActive()) {
-                session.getTransaction().rollback();
+            ConstraintViolationException violation = findConstraintViolation(e);
+            if (violation != null && idempotencyKey != null) {
+                throw violation;
             }
             logger.error(e.getMessage());
             throw new ServiceException(e.getMessage());
-        } finally {
-            if (session != null) {
-                session.close();
+        }
+    }
+
+
+    /**
+     * Move an amount between two accounts.
+     * The debit and the credit commit together in one database transaction, with one transaction row per account.
+     * Both account rows are locked in account number order, so transfers in opposite directions between the same
+     * accounts wait for each other instead of deadlocking.
+     *
+     * @param fromAccountNumber account to debit
+     * @param toAccountNumber   account to credit
+     * @param amount            positive amount to move, in cents
+     */
+    public void transfer(int fromAccountNumber, int toAccountNumber, long amount) {
+        if (amount <= 0) {
+            throw new InvalidTransferException("Transfer amount must be positive");
+        }
+        if (fromAccountNumber == toAccountNumber) {
+            throw new InvalidTransferException("Cannot transfer to the same account");
+        }
+        if (isLedgerEngineEnabled()) {
+            // the two accounts can live on different shards, which cannot commit together
+            throw new ServiceException("Transfers are not supported by the " + ShardedLedgerEngine.MODE + " engine");
+        }
+        List<PostedTransaction> posted;
+        try {
+            posted = dbUtils.inTransaction(session -> {
+                int first = Math.min(fromAccountNumber, toAccountNumber);
+                int second = Math.max(fromAccountNumber, toAccountNumber);
+                CustomerAccount firstAccount = lockAccount(session, first);
+                CustomerAccount secondAccount = lockAccount(session, second);
+                CustomerAccount from = first == fromAccountNumber ? firstAccount : secondAccount;
+                CustomerAccount to = first == fromAccountNumber ? secondAccount : firstAccount;
+                if (from.getAccountBalanceCents() - amount < 0) {
+                    throw new InsufficientBalanceException("Insufficient balance to do th transaction");
+                }
+
+                LocalDateTime now = LocalDateTime.now();
+                LocalDate today = now.toLocalDate();
+                return Arrays.asList(post(session, from, -amount, today, now), post(session, to, amount, today, now));
+            });
+        } catch (AccountNumberNotFoundException | InsufficientBalanceException e) {
+            logger.error(e.getMessage());
+            throw e;
+        } catch (Exception e) {
+            logger.error(e.getMessage());
+            throw new ServiceException(e.getMessage());
+        }
+        accountChanged(fromAccountNumber);
+        accountChanged(toAccountNumber);
+        publish(posted);
+        logger.info("Transferred {} from {} to {}", amount, fromAccountNumber, toAccountNumber);
+    }
+
+    private CustomerAccount lockAccount(Session session, int accountNumber) {
+        CustomerAccount account = session.createQuery(ACCOUNT_SQL, CustomerAccount.class)
+                .setParameter("accountNumber", accountNumber)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .uniqueResult();
+        if (account == null) {
+            throw new AccountNumberNotFoundException("Account Number Not Found");
+        }
+        return account;
+    }
+
+    /**
+     * Apply an amount to a locked, managed account and record it.
+     */
+    private static PostedTransaction post(Session session, CustomerAccount account, long amount, LocalDate today,
+                                          LocalDateTime now) {
+        account.setAccountBalanceCents(account.getAccountBalanceCents() + amount);
+        account.setLedgerVersion(account.getLedgerVersion() + 1);
+
+        BankTransaction bankTransaction = new BankTransaction();
+        bankTransaction.setCustomerAccount(account);
+        bankTransaction.setTransactionAmountCents(amount);
+        bankTransaction.setTransactionDate(today);
+        bankTransaction.setTransactionTime(now);
+        session.save(bankTransaction);
+        DailyBalances.record(session, account.getAccountNumber(), today, amount, account.getAccountBalanceCents());
+        return new PostedTransaction(account.getAccountNumber(), account.getLedgerVersion(), bankTransaction,
+                account.getAccountBalanceCents());
+    }
+
+
+    /**
+     * Add transactions in bulk.
+     * Entries are applied in order, in chunks of {@code bank.batch.chunk-size} per database transaction,
+     * so the inserts and balance updates of a chunk go to the database as JDBC batches.
+     * A rejected entry does not affect the other entries of its chunk.
+     *
+     * @param transactions entries to apply
+     * @return one result per entry, in request order
+     * @throws InvalidAmountException when the batch or one of its entries is missing, nothing is applied
+     */
+    public List<TransactionResult> addTransactionsBatch(List<TransactionRequest> transactions) {
+        if (transactions == null || transactions.contains(null)) {
+            throw new InvalidAmountException("Batch entries must not be empty");
+        }
+        List<TransactionResult> results = new ArrayList<>(transactions.size());
+        if (isLedgerEngineEnabled()) {
+            for (TransactionRequest transaction : transactions) {
+                results.add(postToLedgerEngine(transaction));
             }
+            return results;
+        }
+        for (int from = 0; from < transactions.size(); from += batchChunkSize) {
+            int to = Math.min(from + batchChunkSize, transactions.size());
+            List<TransactionResult> chunkResults = applyChunk(transactions.subList(from, to));
+            Set<Integer> postedAccounts = new HashSet<>();
+            for (TransactionResult result : chunkResults) {
+                if (result.getStatus() == TransactionResult.Status.APPLIED) {
+                    postedAccounts.add(result.getAccountNumber());
+                }
+            }
+            accountCache.invalidateAll(postedAccounts);
+            for (Integer accountNumber : postedAccounts) {
+                forgetReads(accountNumber);
+            }
+            results.addAll(chunkResults);
+        }
+        logger.info("Applied batch of {} transactions", transactions.size());
+        return results;
+    }
+
+    private TransactionResult postToLedgerEngine(TransactionRequest transaction) {
+        long amount = transaction.getAmountCents();
+        if (amount == 0) {
+            return TransactionResult.rejected(transaction, TransactionResult.Status.INVALID_AMOUNT,
+                    "Amount must not be empty or zero");
+        }
+        try {
+            if (ledgerEngine.post(transaction.getAccountNumber(), amount)) {
+                return TransactionResult.applied(transaction);
+            }
+            return TransactionResult.rejected(transaction, TransactionResult.Status.ACCOUNT_NOT_FOUND,
+                    "Account Number Not Found");
+        } catch (InsufficientBalanceException e) {
+            return TransactionResult.rejected(transaction, TransactionResult.Status.INSUFFICIENT_BALANCE, e.getMessage());
+        } catch (ServiceException e) {
+            return TransactionResult.rejected(transaction, TransactionResult.Status.FAILED, e.getMessage());
+        }
+    }
+
+    private List<TransactionResult> applyChunk(List<TransactionRequest> chunk) {
+        Set<Integer> accountNumbers = new HashSet<>();
+        for (TransactionRequest transaction : chunk) {
+            accountNumbers.add(transaction.getAccountNumber());
+        }
+
+        List<TransactionResult> results = new ArrayList<>(chunk.size());
+        List<PostedTransaction> posted = new ArrayList<>(chunk.size());
+        try {
+            List<TransactionResult> applied = dbUtils.inTransaction(session -> {
+                Map<Integer, CustomerAccount> accounts = new HashMap<>();
+                Map<Integer, Long> openingBalances = new HashMap<>();
+                // rows are locked in account number order so concurrent chunks cannot deadlock
+                for (CustomerAccount account : session.createQuery(BATCH_ACCOUNTS_SQL, CustomerAccount.class)
+                        .setParameterList("accountNumbers", accountNumbers)
+                        .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                        .getResultList()) {
+                    accounts.put(account.getAccountNumber(), account);
+                    openingBalances.put(account.getAccountNumber(), account.getAccountBalanceCents());
+                }
+
+                LocalDateTime now = LocalDateTime.now();
+                LocalDate today = now.toLocalDate();
+                Set<Integer> postedAccounts = new LinkedHashSet<>();
+                for (TransactionRequest transaction : chunk) {
+                    long amount = transaction.getAmountCents();
+                    if (amount == 0) {
+                        results.add(TransactionResult.rejected(transaction, TransactionResult.Status.INVALID_AMOUNT,
+                                "Amount must not be empty or zero"));
+                        continue;
+                    }
+                    CustomerAccount customerAccount = accounts.get(transaction.getAccountNumber());
+                    if (customerAccount == null) {
+                        results.add(TransactionResult.rejected(transaction, TransactionResult.Status.ACCOUNT_NOT_FOUND,
+                                "Account Number Not Found"));
+                        continue;
+                    }
+                    if (amount + customerAccount.getAccountBalanceCents() < 0) {
+                        results.add(TransactionResult.rejected(transaction, TransactionResult.Status.INSUFFICIENT_BALANCE,
+                                "Insufficient balance to do th transaction"));
+                        continue;
+                    }
+
+                    // managed entity, the balance update is flushed with the chunk
+                    customerAccount.setAccountBalanceCents(customerAccount.getAccountBalanceCents() + amount);
+                    customerAccount.setLedgerVersion(customerAccount.getLedgerVersion() + 1);
+
+                    BankTransaction bankTransaction = new BankTransaction();
+                    bankTransaction.setCustomerAccount(customerAccount);
+                    bankTransaction.setTransactionAmountCents(amount);
+                    bankTransaction.setTransactionDate(today);
+                    bankTransaction.setTransactionTime(now);
+                    session.save(bankTransaction);
+                    posted.add(new PostedTransaction(customerAccount.getAccountNumber(), customerAccount.getLedgerVersion(),
+                            bankTransaction, customerAccount.getAccountBalanceCents()));
+                    postedAccounts.add(customerAccount.getAccountNumber());
+                    results.add(TransactionResult.applied(transaction));
+                }
+                for (Integer accountNumber : postedAccounts) {
+                    long closingBalance = accounts.get(accountNumber).getAccountBalanceCents();
+                    DailyBalances.record(session, accountNumber, today,
+                            closingBalance - openingBalances.get(accountNumber), closingBalance);
+                }
+
+                return results;
+            });
+            publish(posted);
+            return applied;
+        } catch (Exception e) {
+            logger.error(e.getMessage());
+            List<TransactionResult> failed = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                TransactionResult result = i < results.size() ? results.get(i) : null;
+                if (result != null && result.getStatus() != TransactionResult.Status.APPLIED) {
+                    failed.add(result);
+                } else {
+                    failed.add(TransactionResult.rejected(chunk.get(i), TransactionResult.Status.FAILED, e.getMessage()));
+                }
+            }
+            return failed;
         }
     }
 
@@ -141,24 +761,71 @@ public class BankService {
      * Get bank balance
      *
      * @param accountNumber target account
-     * @return account balance
+     * @return account balance in cents
      */
-    public double getBalance(int accountNumber) {
+    public long getBalance(int accountNumber) {
+        return getBalance(accountNumber, false);
+    }
 
-        String hql = "select sum(bt.transactionAmount) from BankTransaction bt where " +
-                "bt.customerAccount.accountNumber = :accountNumber";
+    /**
+     * Get bank balance.
+     * Reads the balance maintained on the account, so the cost does not grow with the transaction history.
+     * In verify mode the balance is recomputed from every transaction of the account instead,
+     * and a mismatch with the account balance is logged.
+     *
+     * @param accountNumber target account
+     * @param verify        recompute the balance from the transaction history
+     * @return account balance in cents
+     */
+    public long getBalance(int accountNumber, boolean verify) {
+        return getBalance(accountNumber, verify, false);
+    }
 
-        try (Session session = dbUtils.openASession()) {
-            Double balance = session.createQuery(hql, Double.class)
-                    .setParameter("accountNumber", accountNumber)
-                    .getSingleResult();
-            if (balance != null) {
-                return balance;
+    /**
+     * Get bank balance, from the read model when it is enabled.
+     *
+     * @param accountNumber  target account
+     * @param verify         recompute the balance from the transaction history
+     * @param readYourWrites include every posting acknowledged before the call
+     * @return account balance in cents
+     */
+    public long getBalance(int accountNumber, boolean verify, boolean readYourWrites) {
+        if (!verify && isLedgerEngineEnabled()) {
+            return ledgerEngine.getBalance(accountNumber);
+        }
+        if (!verify) {
+            AccountReadModel.AccountView view = findAccountView(accountNumber, readYourWrites);
+            if (view != null) {
+                return view.getBalance();
             }
-            throw new AccountNumberNotFoundException("Account Number Not Found");
+            return findAccount(accountNumber).getAccountBalanceCents();
+        }
+        return coalesced(ReadCoalescer.Read.BALANCE, accountNumber, null, () -> readVerifiedBalance(accountNumber));
+    }
+
+    private long readVerifiedBalance(int accountNumber) {
+        String hql = "select ca.accountBalanceCents from CustomerAccount ca where ca.accountNumber = :accountNumber";
+
+        try {
+            long[] balances = dbUtils.readOnly(session -> {
+                long accountBalance = session.createQuery(hql, Long.class)
+                        .setParameter("accountNumber", accountNumber)
+                        .getSingleResult();
+                long ledgerBalance = session.createQuery(LEDGER_BALANCE_SQL, Long.class)
+                        .setParameter("accountNumber", accountNumber)
+                        .getSingleResult();
+                return new long[]{accountBalance, ledgerBalance};
+            });
+            long balance = balances[0];
+            long verifiedBalance = balances[1];
+            if (verifiedBalance != balance) {
+                logger.warn("Balance mismatch {}, account balance {}, transactions total {}",
+                        accountNumber, balance, verifiedBalance);
+            }
+            return verifiedBalance;
         } catch (NoResultException e) {
             logger.error("Account Number Not Found {}", accountNumber);
-            throw e;
+            throw new AccountNumberNotFoundException("Account Number Not Found");
         } catch (Exception e) {
             logger.error(e.getMessage());
             throw new ServiceException(e.getMessage());
@@ -171,80 +838,614 @@ public class BankService {
      * ADVANCE TASK
      *
      * @param accountNumber accountNumber
-     * @return HashMap [key: date , value: double]
+     * @return HashMap [key: date , value: closing balance in cents]
      */
-    public Map<LocalDate, Double> getDateBalance(int accountNumber) {
-
-        String hcl = "select bt from BankTransaction bt where bt.customerAccount.accountNumber = :accountNumber " +
-                "order by bt.transactionDate";
-        try (Session session = dbUtils.openASession()) {
+    public Map<LocalDate, Long> getDateBalance(int accountNumber) {
+        return getDateBalance(accountNumber, null, null);
+    }
 
+    /**
+     * Get closing balance of every day with transactions, read from the daily aggregate
+     * so a date range only reads the days in that range.
+     *
+     * @param accountNumber accountNumber
+     * @param from          first day to include, null for no lower bound
+     * @param to            last day to include, null for no upper bound
+     * @return HashMap [key: date , value: closing balance in cents] in date order
+     */
+    public Map<LocalDate, Long> getDateBalance(int accountNumber, LocalDate from, LocalDate to) {
+        return getDateBalance(accountNumber, from, to, false);
+    }
 
-            List<BankTransaction> transactions = session.createQuery(hcl, BankTransaction.class)
-                    .setParameter("accountNumber", accountNumber)
-                    .getResultList();
+    /**
+     * Get closing balance of every day with transactions, from the read model when it is enabled.
+     *
+     * @param accountNumber  accountNumber
+     * @param from           first day to include, null for no lower bound
+     * @param to             last day to include, null for no upper bound
+     * @param readYourWrites include every posting acknowledged before the call
+     * @return HashMap [key: date , value: closing balance in cents] in date order
+     */
+    public Map<LocalDate, Long> getDateBalance(int accountNumber, LocalDate from, LocalDate to, boolean readYourWrites) {
+        AccountReadModel.AccountView view = findAccountView(accountNumber, readYourWrites);
+        if (view != null) {
+            return view.getDateBalance(from, to);
+        }
+        return coalesced(ReadCoalescer.Read.DATE_BALANCE, accountNumber, Arrays.asList(from, to),
+                () -> readDateBalance(accountNumber, from, to));
+    }
 
-            Map<LocalDate, Double> dateBalance = new LinkedHashMap<>();
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    private Map<LocalDate, Long> readDateBalance(int accountNumber, LocalDate from, LocalDate to) {
+        try {
+            List<DailyBalance> dailyBalances = dbUtils.readOnly(session -> {
+                List<DailyBalance> found = findDailyBalances(session, accountNumber, from, to);
+                return found.isEmpty() && needsDailyBalances(session, accountNumber) ? null : found;
+            });
+            if (dailyBalances == null) {
+                // only an account whose transactions predate the aggregate takes the lock to build it
+                dailyBalances = dbUtils.inTransaction(session -> {
+                    rebuildDailyBalances(session, accountNumber);
+                    return findDailyBalances(session, accountNumber, from, to);
+                });
+            }
 
-            double sum = 0.0d;
-            for (BankTransaction transaction : transactions) {
-                LocalDate date = LocalDate.parse(transaction.getTransactionDate().format(formatter), formatter);
-                sum += transaction.getTransactionAmount();
-                dateBalance.put(date, sum);
+            Map<LocalDate, Long> dateBalance = new LinkedHashMap<>();
+            for (DailyBalance dailyBalance : dailyBalances) {
+                dateBalance.put(dailyBalance.getBalanceDate(), dailyBalance.getClosingBalanceCents());
             }
             logger.info("Retrieved balance {}", accountNumber);
-            return dateBalance;
+            return Collections.unmodifiableMap(dateBalance);
         } catch (Exception e) {
             logger.error(e.getMessage());
             throw new ServiceException(e.getMessage());
         }
     }
 
+    private List<DailyBalance> findDailyBalances(Session session, int accountNumber, LocalDate from, LocalDate to) {
+        StringBuilder hql = new StringBuilder("from DailyBalance db where db.accountNumber = :accountNumber");
+        if (from != null) {
+            hql.append(" and db.balanceDate >= :from");
+        }
+        if (to != null) {
+            hql.append(" and db.balanceDate <= :to");
+        }
+        hql.append(" order by db.balanceDate");
+
+        org.hibernate.query.Query<DailyBalance> query = session.createQuery(hql.toString(), DailyBalance.class)
+                .setParameter("accountNumber", accountNumber);
+        if (from != null) {
+            query.setParameter("from", from);
+        }
+        if (to != null) {
+            query.setParameter("to", to);
+        }
+        return query.getResultList();
+    }
+
+    /**
+     * @return true if the account has transactions, in the table or the archive, but no daily aggregate yet
+     */
+    private boolean needsDailyBalances(Session session, int accountNumber) {
+        return !exists(session, HAS_DAILY_BALANCE_SQL, accountNumber)
+                && (exists(session, HAS_TRANSACTION_SQL, accountNumber)
+                || exists(session, HAS_ARCHIVED_TRANSACTION_SQL, accountNumber));
+    }
+
+    private static boolean exists(Session session, String idSql, int accountNumber) {
+        return !session.createQuery(idSql, Long.class)
+                .setParameter("accountNumber", accountNumber)
+                .setMaxResults(1)
+                .getResultList().isEmpty();
+    }
+
+    /**
+     * Build the daily aggregate of an account whose transactions predate it.
+     *
+     * @return true if rows were created
+     */
+    private boolean rebuildDailyBalances(Session session, int accountNumber) {
+        // lock the account so postings cannot add days while the aggregate is built
+        List<CustomerAccount> accounts = session.createQuery(ACCOUNT_SQL, CustomerAccount.class)
+                .setParameter("accountNumber", accountNumber)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultList();
+        // checked again under the lock, a concurrent read may have built it
+        if (accounts.isEmpty() || !needsDailyBalances(session, accountNumber)) {
+            return false;
+        }
+
+        // the archiver holds the same lock, so no day is counted both in the archive and in the table
+        Map<LocalDate, Long> days = new TreeMap<>();
+        for (String daysSql : new String[]{ARCHIVED_DAYS_SQL, TRANSACTION_DAYS_SQL}) {
+            for (Object[] day : session.createQuery(daysSql, Object[].class)
+                    .setParameter("accountNumber", accountNumber)
+                    .getResultList()) {
+                days.merge((LocalDate) day[0], (Long) day[1], Long::sum);
+            }
+        }
+        long closingBalance = 0L;
+        for (Map.Entry<LocalDate, Long> day : days.entrySet()) {
+            long netAmount = day.getValue();
+            closingBalance += netAmount;
+            session.save(new DailyBalance(accountNumber, day.getKey(), netAmount, closingBalance));
+        }
+        logger.info("Built {} daily balances of {}", days.size(), accountNumber);
+        return !days.isEmpty();
+    }
+
     /**
      * Get account details
      *
      * @param accountNumber accountNumber
      * @return account details
      */
-    public CustomerAccount getAccountDetails(int accountNumber) {
-        String hql = "from CustomerAccount where accountNumber = :accountNumber";
+    public AccountDetails getAccountDetails(int accountNumber) {
+        return getAccountDetails(accountNumber, false);
+    }
 
-        try (Session session = dbUtils.openASession()) {
-            logger.info("Retrieved account details {}", accountNumber);
-            return session.createQuery(hql, CustomerAccount.class)
-                    .setParameter("accountNumber", accountNumber)
-                    .getSingleResult();
-        } catch (NoResultException e) {
+    /**
+     * Get account details, from the read model when it is enabled.
+     *
+     * @param accountNumber  accountNumber
+     * @param readYourWrites include every posting acknowledged before the call
+     * @return account details
+     */
+    public AccountDetails getAccountDetails(int accountNumber, boolean readYourWrites) {
+        AccountReadModel.AccountView view = findAccountView(accountNumber, readYourWrites);
+        if (view != null) {
+            return view.toAccountDetails();
+        }
+        AccountDetails accountDetails = findAccount(accountNumber);
+        logger.info("Retrieved account details {}", accountNumber);
+        if (isLedgerEngineEnabled()) {
+            // the persisted balance lags behind the engine
+            return accountDetails.withBalance(ledgerEngine.getBalance(accountNumber));
+        }
+        return accountDetails;
+    }
+
+    /**
+     * Get account cache statistics
+     *
+     * @return size, hits, misses and evictions of the account cache
+     */
+    public AccountCacheStats getAccountCacheStats() {
+        return accountCache.getStats();
+    }
+
+    /**
+     * @return the account from the cache, loaded from the database on a miss
+     */
+    private AccountDetails findAccount(int accountNumber) {
+        AccountDetails account = accountCache.get(accountNumber, this::loadAccount);
+        if (account == null) {
             logger.error("Account Number Not Found {}", accountNumber);
             throw new AccountNumberNotFoundException("Account Number Not Found");
+        }
+        return account;
+    }
+
+    private AccountDetails loadAccount(int accountNumber) {
+        try {
+            return dbUtils.readOnly(session -> session.createQuery(ACCOUNT_DETAILS_SQL, AccountDetails.class)
+                    .setParameter("accountNumber", accountNumber)
+                    .uniqueResult());
+        } catch (Exception e) {
+            logger.error(e.getMessage());
+            throw new ServiceException(e.getMessage());
+        }
+    }
+
+    /**
+     * @return view of the account in the read model, null when the read model is disabled or cannot answer the read
+     */
+    private AccountReadModel.AccountView findAccountView(int accountNumber, boolean readYourWrites) {
+        if (!isReadModelEnabled()) {
+            return null;
+        }
+        return readModel.find(accountNumber, readYourWrites, this::loadAccountView);
+    }
+
+    private AccountReadModel.AccountView loadAccountView(int accountNumber) {
+        try {
+            return dbUtils.inTransaction(session -> {
+                // postings hold the same row lock, so the view contains exactly the postings up to its version
+                CustomerAccount account = session.createQuery(ACCOUNT_SQL, CustomerAccount.class)
+                        .setParameter("accountNumber", accountNumber)
+                        .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                        .uniqueResult();
+                if (account == null) {
+                    return null;
+                }
+                List<TransactionDetails> recent = readHistory(session, account.getId(), accountNumber, null,
+                        AccountReadModel.RECENT_TRANSACTIONS);
+                List<DailyBalance> dailyBalances = findDailyBalances(session, accountNumber, null, null);
+                // the account is locked already, but only an account with transactions and no aggregate builds it
+                if (dailyBalances.isEmpty() && needsDailyBalances(session, accountNumber)
+                        && rebuildDailyBalances(session, accountNumber)) {
+                    dailyBalances = findDailyBalances(session, accountNumber, null, null);
+                }
+                return AccountReadModel.AccountView.of(account, recent, dailyBalances);
+            });
         } catch (Exception e) {
             logger.error(e.getMessage());
             throw new ServiceException(e.getMessage());
         }
     }
 
+    /**
+     * Hand committed postings to the read model, after the session is closed.
+     */
+    private void publish(List<PostedTransaction> postings) {
+        if (!isReadModelEnabled()) {
+            return;
+        }
+        for (PostedTransaction posting : postings) {
+            readModel.posted(posting.accountNumber, posting.version, posting.transaction, posting.closingBalance);
+        }
+    }
+
+    private boolean isReadModelEnabled() {
+        return readModel != null && readModel.isEnabled();
+    }
+
+    /**
+     * Run a read, or share the result of the identical read already in flight.
+     */
+    private <T> T coalesced(ReadCoalescer.Read read, int accountNumber, Object argument, Supplier<T> loader) {
+        return readCoalescer == null ? loader.get() : readCoalescer.read(read, accountNumber, argument, loader);
+    }
+
+    /**
+     * Drop the cached account and the reads in flight, after a write to the account committed.
+     */
+    private void accountChanged(int accountNumber) {
+        accountCache.invalidate(accountNumber);
+        forgetReads(accountNumber);
+    }
+
+    private void forgetReads(int accountNumber) {
+        if (readCoalescer != null) {
+            readCoalescer.forget(accountNumber);
+        }
+    }
+
+    /**
+     * @return id of the account, from the cache when it holds the account
+     * @throws NoResultException if the account does not exist
+     */
+    private long findAccountId(Session session, int accountNumber) {
+        AccountDetails account = accountCache.getIfPresent(accountNumber);
+        if (account != null) {
+            return account.getId();
+        }
+        return session.createQuery(ACCOUNT_ID_SQL, Long.class)
+                .setParameter("accountNumber", accountNumber)
+                .getSingleResult();
+    }
+
     /**
      * Get last 10 transactions
      *
      * @param accountNumber accountNumber
      * @return List of last 10 bank transactions
      */
-    public List<BankTransaction> getLastTenTransactions(int accountNumber) {
-
+    public List<TransactionDetails> getLastTenTransactions(int accountNumber) {
+        return getLastTenTransactions(accountNumber, false);
+    }
 
-        String hql = "select bt from BankTransaction bt where bt.customerAccount.accountNumber = :accountNumber" +
-                " order by bt.transactionDate desc";
+    /**
+     * Get last 10 transactions, from the read model when it is enabled.
+     *
+     * @param accountNumber  accountNumber
+     * @param readYourWrites include every posting acknowledged before the call
+     * @return List of last 10 bank transactions
+     */
+    public List<TransactionDetails> getLastTenTransactions(int accountNumber, boolean readYourWrites) {
+        AccountReadModel.AccountView view = findAccountView(accountNumber, readYourWrites);
+        if (view != null) {
+            return view.getRecentTransactions();
+        }
+        return coalesced(ReadCoalescer.Read.LAST_TEN, accountNumber, null, () -> readLastTen(accountNumber));
+    }
 
-        try (Session session = dbUtils.openASession()) {
+    private List<TransactionDetails> readLastTen(int accountNumber) {
+        try {
             logger.info("Retrieved last 10 transactions {}", accountNumber);
-            return session.createQuery(hql, BankTransaction.class)
-                    .setParameter("accountNumber", accountNumber)
-                    .setMaxResults(10)
-                    .getResultList();
+            return Collections.unmodifiableList(dbUtils.readOnly(session -> {
+                List<TransactionDetails> transactions = session.createQuery(LAST_TEN_SQL, TransactionDetails.class)
+                        .setParameter("accountNumber", accountNumber)
+                        .setMaxResults(10)
+                        .getResultList();
+                return appendArchived(session, accountNumber, transactions, null, 10);
+            }));
+        } catch (Exception e) {
+            logger.error(e.getMessage());
+            throw new ServiceException(e.getMessage());
+        }
+    }
+
+    /**
+     * Get one page of the transaction history, newest first.
+     * Pages seek on (transactionTime, id) through the account/time index instead of skipping rows,
+     * so every page costs the same however deep the client has paged.
+     *
+     * @param accountNumber accountNumber
+     * @param cursor        nextCursor of the previous page, null for the first page
+     * @param limit         page size, null for the configured default
+     * @return transactions of the page and the cursor of the next one
+     */
+    public TransactionPage getTransactionHistory(int accountNumber, String cursor, Integer limit) {
+        int pageSize = limit == null ? historyPageSize : Math.max(1, Math.min(limit, historyMaxPageSize));
+        HistoryCursor after = cursor == null || cursor.isEmpty() ? null : HistoryCursor.decode(cursor);
+
+        try {
+            // one extra row tells whether there is a next page
+            List<TransactionDetails> transactions = dbUtils.readOnly(session ->
+                    readHistory(session, findAccountId(session, accountNumber), accountNumber, after, pageSize + 1));
+
+            String nextCursor = null;
+            if (transactions.size() > pageSize) {
+                transactions = new ArrayList<>(transactions.subList(0, pageSize));
+                TransactionDetails last = transactions.get(pageSize - 1);
+                nextCursor = new HistoryCursor(last.getTransactionTime(), last.getId()).encode();
+            }
+            return new TransactionPage(transactions, nextCursor);
+        } catch (NoResultException e) {
+            logger.error("Account Number Not Found {}", accountNumber);
+            throw new AccountNumberNotFoundException("Account Number Not Found");
+        } catch (Exception e) {
+            logger.error(e.getMessage());
+            throw new ServiceException(e.getMessage());
+        }
+    }
+
+    /**
+     * Read transactions of an account newest first, from the table and then from the archive.
+     *
+     * @param after transaction to continue after, null to start with the newest
+     */
+    private List<TransactionDetails> readHistory(Session session, long accountId, int accountNumber,
+                                                 HistoryCursor after, int limit) {
+        Query<TransactionDetails> query;
+        if (after == null) {
+            query = session.createQuery(HISTORY_SQL, TransactionDetails.class);
+        } else {
+            query = session.createQuery(HISTORY_AFTER_SQL, TransactionDetails.class)
+                    .setParameter("time", after.time)
+                    .setParameter("id", after.id);
+        }
+        List<TransactionDetails> transactions = query.setParameter("accountId", accountId)
+                .setMaxResults(limit)
+                .getResultList();
+        return appendArchived(session, accountNumber, transactions, after, limit);
+    }
+
+    /**
+     * Fill a page that the table could not fill with archived transactions. The archived transactions of an account
+     * are older than the ones in the table, so they continue after the last transaction of the page. The table is
+     * read first: a transaction archived in between is found in the archive instead of being missed.
+     *
+     * @param transactions transactions read from the table, newest first
+     * @param after        where the table was read from, null for the newest transaction
+     * @return the page, newest first
+     */
+    private List<TransactionDetails> appendArchived(Session session, int accountNumber,
+                                                    List<TransactionDetails> transactions, HistoryCursor after,
+                                                    int limit) {
+        if (transactions.size() >= limit) {
+            return transactions;
+        }
+        if (!transactions.isEmpty()) {
+            TransactionDetails last = transactions.get(transactions.size() - 1);
+            after = new HistoryCursor(last.getTransactionTime(), last.getId());
+        }
+        Query<TransactionDetails> query;
+        if (after == null) {
+            query = session.createQuery(ARCHIVED_HISTORY_SQL, TransactionDetails.class);
+        } else {
+            query = session.createQuery(ARCHIVED_HISTORY_AFTER_SQL, TransactionDetails.class)
+                    .setParameter("time", after.time)
+                    .setParameter("id", after.id);
+        }
+        List<TransactionDetails> archived = query.setParameter("accountNumber", accountNumber)
+                .setMaxResults(limit - transactions.size())
+                .getResultList();
+        if (archived.isEmpty()) {
+            return transactions;
+        }
+        List<TransactionDetails> page = new ArrayList<>(transactions);
+        page.addAll(archived);
+        return page;
+    }
+
+    /**
+     * Export transactions, of one account in time order or of all accounts in id order, archived transactions
+     * before the ones still in the table. Archiving on this node waits until the export is done.
+     * Rows are read as a forward-only scroll over a projection and written as they arrive. Every
+     * {@code bank.export.chunk-size} rows the session is closed and the next chunk seeks on the last row written,
+     * so neither the session, the pooled connection nor the heap holds more than one chunk however long the export.
+     * Chunks are separate reads, transactions posted while an export runs may or may not be included.
+     *
+     * @param accountNumber account to export, null for all accounts
+     * @param writer        receives every transaction, flushed after each chunk
+     * @return number of transactions exported
+     */
+    public long exportTransactions(Integer accountNumber, StatementWriter writer) {
+        Long accountId;
+        try {
+            accountId = accountNumber == null ? null : dbUtils.readOnly(session -> findAccountId(session, accountNumber));
+        } catch (NoResultException e) {
+            logger.error("Account Number Not Found {}", accountNumber);
+            throw new AccountNumberNotFoundException("Account Number Not Found");
         } catch (Exception e) {
             logger.error(e.getMessage());
             throw new ServiceException(e.getMessage());
         }
+
+        writer.begin();
+        ExportPosition position = new ExportPosition();
+        if (archiver != null) {
+            archiver.exportStarted();
+        }
+        try {
+            boolean more = true;
+            while (more) {
+                int rows;
+                try {
+                    rows = dbUtils.readOnly(session -> exportChunk(session, accountId, accountNumber, position, writer));
+                } catch (UncheckedIOException e) {
+                    // the client went away, there is nobody left to report to
+                    throw e;
+                } catch (Exception e) {
+                    logger.error(e.getMessage());
+                    throw new ServiceException(e.getMessage());
+                }
+                writer.flush();
+                more = rows == exportChunkSize;
+                if (!more && position.archived) {
+                    // one account continues after its newest archived transaction, all accounts start over by id
+                    position.archived = false;
+                    if (accountId == null) {
+                        position.id = 0;
+                    }
+                    more = true;
+                }
+            }
+        } finally {
+            if (archiver != null) {
+                archiver.exportFinished();
+            }
+        }
+        logger.info("Exported {} transactions", position.exported);
+        return position.exported;
+    }
+
+    private int exportChunk(Session session, Long accountId, Integer accountNumber, ExportPosition position,
+                            StatementWriter writer) {
+        Query<Object[]> query;
+        if (position.archived) {
+            query = exportArchivedQuery(session, accountNumber, position);
+        } else if (accountId == null) {
+            query = session.createQuery(EXPORT_ALL_SQL, Object[].class)
+                    .setParameter("id", position.id);
+        } else if (position.time == null) {
+            query = session.createQuery(EXPORT_ACCOUNT_SQL, Object[].class)
+                    .setParameter("accountId", accountId);
+        } else {
+            query = session.createQuery(EXPORT_ACCOUNT_AFTER_SQL, Object[].class)
+                    .setParameter("accountId", accountId)
+                    .setParameter("time", position.time)
+                    .setParameter("id", position.id);
+        }
+        int rows = 0;
+        try (ScrollableResults results = query.setMaxResults(exportChunkSize)
+                .setFetchSize(exportFetchSize)
+                .setReadOnly(true)
+                .scroll(ScrollMode.FORWARD_ONLY)) {
+            while (results.next()) {
+                Object[] row = results.get();
+                long id = (Long) row[0];
+                LocalDateTime time = (LocalDateTime) row[2];
+                int number = accountId == null ? (Integer) row[4] : accountNumber;
+                writer.write(new StatementLine(id, number, (LocalDate) row[1], time, (Long) row[3]));
+                position.id = id;
+                position.time = time;
+                position.exported++;
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    private Query<Object[]> exportArchivedQuery(Session session, Integer accountNumber, ExportPosition position) {
+        if (accountNumber == null) {
+            return session.createQuery(EXPORT_ARCHIVED_ALL_SQL, Object[].class)
+                    .setParameter("id", position.id);
+        }
+        if (position.time == null) {
+            return session.createQuery(EXPORT_ARCHIVED_ACCOUNT_SQL, Object[].class)
+                    .setParameter("accountNumber", accountNumber);
+        }
+        return session.createQuery(EXPORT_ARCHIVED_ACCOUNT_AFTER_SQL, Object[].class)
+                .setParameter("accountNumber", accountNumber)
+                .setParameter("time", position.time)
+                .setParameter("id", position.id);
+    }
+
+    /**
+     * Get in-memory ledger engine statistics
+     *
+     * @return queue depth and throughput of every shard, empty when the engine is not enabled
+     */
+    public List<ShardStats> getEngineStats() {
+        if (!isLedgerEngineEnabled()) {
+            return Collections.emptyList();
+        }
+        return ledgerEngine.getStats();
+    }
+
+    private boolean isLedgerEngineEnabled() {
+        return ledgerEngine != null && ledgerEngine.isEnabled();
+    }
+
+    /**
+     * A posting and the account state it produced, published to the read model once its transaction commits.
+     */
+    private static final class PostedTransaction {
+        private final int accountNumber;
+        private final long version;
+        private final BankTransaction transaction;
+        private final long closingBalance;
+        // recorded with the posting when it was made with an idempotency key
+        private IdempotencyRecord idempotencyRecord;
+
+        PostedTransaction(int accountNumber, long version, BankTransaction transaction, long closingBalance) {
+            this.accountNumber = accountNumber;
+            this.version = version;
+            this.transaction = transaction;
+            this.closingBalance = closingBalance;
+        }
+    }
+
+    /**
+     * Last transaction written by an export, where its next chunk starts
+     */
+    private static final class ExportPosition {
+        // reading the archive, before the table
+        private boolean archived = true;
+        private long id;
+        private LocalDateTime time;
+        private long exported;
+    }
+
+    /**
+     * Position in the history, exchanged with clients as an opaque url-safe string.
+     */
+    private static final class HistoryCursor {
+        private final LocalDateTime time;
+        private final long id;
+
+        HistoryCursor(LocalDateTime time, long id) {
+            this.time = time;
+            this.id = id;
+        }
+
+        String encode() {
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString((time + "/" + id).getBytes(StandardCharsets.UTF_8));
+        }
+
+        static HistoryCursor decode(String cursor) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("/");
+                if (parts.length != 2) {
+                    throw new InvalidCursorException("Invalid cursor");
+                }
+                return new HistoryCursor(LocalDateTime.parse(parts[0]), Long.parseLong(parts[1]));
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                throw new InvalidCursorException("Invalid cursor");
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,37 @@
+package net.contal.demo.services;
+
+import net.contal.demo.modal.DailyBalance;
+import org.hibernate.Session;
+
+import java.time.LocalDate;
+
+/**
+ * Maintains {@link DailyBalance} rows inside the transaction that posts the amounts.
+ * Callers must hold the lock of the account row, which serialises writers of the same account and day.
+ */
+abstract class DailyBalances {
+
+    private static final String ADD_SQL = "update DailyBalance db set db.netAmountCents = db.netAmountCents + :amount, " +
+            "db.closingBalanceCents = :closingBalance where db.accountNumber = :accountNumber and db.balanceDate = :balanceDate";
+
+    /**
+     * Add a posted amount to the day of an account.
+     *
+     * @param session        session of the posting transaction
+     * @param accountNumber  account number
+     * @param balanceDate    day of the posting
+     * @param amount         net amount posted, in cents
+     * @param closingBalance account balance after the posting, in cents
+     */
+    static void record(Session session, int accountNumber, LocalDate balanceDate, long amount, long closingBalance) {
+        int updated = session.createQuery(ADD_SQL)
+                .setParameter("amount", amount)
+                .setParameter("closingBalance", closingBalance)
+                .setParameter("accountNumber", accountNumber)
+                .setParameter("balanceDate", balanceDate)
+                .executeUpdate();
+        if (updated == 0) {
+            session.save(new DailyBalance(accountNumber, balanceDate, amount, closingBalance));
+        }
+    }
+}
@@ -2,15 +2,12 @@ package net.contal.demo.services;
 
 import net.contal.demo.DbUtils;
 import net.contal.demo.modal.Billioner;
-import org.hibernate.Session;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import javax.transaction.Transactional;
 import java.util.List;
 
 @Service
-@Transactional
 public class DemoService {
 
 
@@ -21,13 +18,12 @@ public class DemoService {
     }
 
     public   List<Billioner> test(){
-        Session session = this.dbUtils.openASession();
-       return session.createQuery("select bs from Billioner bs ", Billioner.class)
-                .getResultList();
+        return this.dbUtils.readOnly(session -> session.createQuery("select bs from Billioner bs ", Billioner.class)
+                .getResultList());
     }
 
     public void saveBillioner(Billioner billioner){
-        this.dbUtils.openASession().save(billioner);
+        this.dbUtils.inTransaction(session -> session.save(billioner));
 
     }
 
@@ -0,0 +1,319 @@
+package net.contal.demo.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.contal.demo.DbUtils;
+import net.contal.demo.modal.IdempotencyRecord;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Finds the earlier posting of an idempotency key without reading the database for keys that were never used.
+ * <p>
+ * Records of recent keys are held in time buckets of {@code retention / bank.idempotency.buckets} each. The oldest
+ * bucket is dropped as a whole once it is older than the retention, and when more than
+ * {@code bank.idempotency.maximum-size} records are held, the oldest records are evicted first.
+ * <p>
+ * Every key recorded within the retention is also added to a Bloom filter, so a key that is neither held in memory
+ * nor in the filter was certainly not used on this node and needs no database read. The filter cannot remove keys,
+ * so there are two generations of it, each started one retention apart: a key stays in the filter for at least the
+ * retention. On startup the filter is filled with the keys of the stored records.
+ * <p>
+ * The {@link IdempotencyRecord} table stays the authority: a key used on another node is not in this node's filter,
+ * but its record rejects the second posting when it commits.
+ */
+@Component
+@DependsOn("schemaMigrations")
+public class IdempotencyIndex {
+
+    private static final String RECENT_KEYS_SQL = "select r.idempotencyKey from IdempotencyRecord r " +
+            "where r.createdAt >= :since";
+
+    private static final String PURGE_SQL = "delete from IdempotencyRecord r where r.createdAt < :before";
+
+    private final Logger logger = LoggerFactory.getLogger(IdempotencyIndex.class);
+
+    private final DbUtils dbUtils;
+    private final long retentionSeconds;
+    private final int bucketCount;
+    private final long maximumSize;
+    private final long expectedKeys;
+    private final double falsePositiveRate;
+
+    // newest bucket first, each in insertion order
+    private final Deque<Map<String, IdempotencyRecord>> buckets = new ArrayDeque<>();
+    private long size;
+    private long rotations;
+
+    private volatile BloomFilter currentKeys;
+    private volatile BloomFilter previousKeys;
+
+    private final AtomicLong cached = new AtomicLong();
+    private final AtomicLong filtered = new AtomicLong();
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong absent = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+
+    public IdempotencyIndex(DbUtils dbUtils, MeterRegistry meterRegistry,
+                            @Value("${bank.idempotency.retention-seconds:86400}") long retentionSeconds,
+                            @Value("${bank.idempotency.buckets:24}") int bucketCount,
+                            @Value("${bank.idempotency.maximum-size:100000}") long maximumSize,
+                            @Value("${bank.idempotency.expected-keys:1000000}") long expectedKeys,
+                            @Value("${bank.idempotency.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.dbUtils = dbUtils;
+        this.retentionSeconds = retentionSeconds;
+        this.bucketCount = Math.max(1, bucketCount);
+        this.maximumSize = maximumSize;
+        this.expectedKeys = expectedKeys;
+        this.falsePositiveRate = falsePositiveRate;
+        this.currentKeys = new BloomFilter(expectedKeys, falsePositiveRate);
+        this.previousKeys = new BloomFilter(expectedKeys, falsePositiveRate);
+        this.buckets.addFirst(new LinkedHashMap<>());
+        registerMeters(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        long loaded = dbUtils.readOnly(session -> {
+            long keys = 0;
+            try (ScrollableResults results = session.createQuery(RECENT_KEYS_SQL)
+                    .setParameter("since", LocalDateTime.now().minusSeconds(retentionSeconds))
+                    .setFetchSize(1000)
+                    .scroll(ScrollMode.FORWARD_ONLY)) {
+                while (results.next()) {
+                    currentKeys.add((String) results.get(0));
+                    keys++;
+                }
+            }
+            return keys;
+        });
+        logger.info("Loaded {} idempotency keys", loaded);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "idempotency-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, TimeUnit.SECONDS.toMillis(retentionSeconds) / bucketCount);
+        scheduler.scheduleAtFixedRate(this::expire, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the record of the key, null if the key was not used within the retention
+     */
+    IdempotencyRecord find(String key) {
+        IdempotencyRecord record = getCached(key);
+        if (record != null) {
+            cached.incrementAndGet();
+            return record;
+        }
+        if (!currentKeys.mightContain(key) && !previousKeys.mightContain(key)) {
+            filtered.incrementAndGet();
+            return null;
+        }
+        return findStored(key);
+    }
+
+    /**
+     * Read the record of the key from the database, for a key the filter cannot rule out or a key whose posting
+     * was rejected by its stored record.
+     *
+     * @return the record of the key, null if it is not stored
+     */
+    IdempotencyRecord findStored(String key) {
+        IdempotencyRecord record = dbUtils.readOnly(session -> session.get(IdempotencyRecord.class, key));
+        if (record == null) {
+            absent.incrementAndGet();
+            return null;
+        }
+        stored.incrementAndGet();
+        recorded(record);
+        return record;
+    }
+
+    /**
+     * Remember a committed record.
+     */
+    void recorded(IdempotencyRecord record) {
+        currentKeys.add(record.getIdempotencyKey());
+        synchronized (buckets) {
+            if (buckets.getFirst().put(record.getIdempotencyKey(), record) == null) {
+                size++;
+            }
+            while (size > maximumSize) {
+                evictOldest();
+            }
+        }
+    }
+
+    private IdempotencyRecord getCached(String key) {
+        synchronized (buckets) {
+            for (Map<String, IdempotencyRecord> bucket : buckets) {
+                IdempotencyRecord record = bucket.get(key);
+                if (record != null) {
+                    return record;
+                }
+            }
+            return null;
+        }
+    }
+
+    private void evictOldest() {
+        Iterator<Map<String, IdempotencyRecord>> oldestFirst = buckets.descendingIterator();
+        while (oldestFirst.hasNext()) {
+            Map<String, IdempotencyRecord> bucket = oldestFirst.next();
+            if (!bucket.isEmpty()) {
+                Iterator<String> keys = bucket.keySet().iterator();
+                keys.next();
+                keys.remove();
+                size--;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Start a new bucket, drop the bucket that is older than the retention and delete the records it held.
+     */
+    private void expire() {
+        try {
+            synchronized (buckets) {
+                buckets.addFirst(new LinkedHashMap<>());
+                if (buckets.size() > bucketCount) {
+                    size -= buckets.removeLast().size();
+                }
+                rotations++;
+                if (rotations % bucketCount == 0) {
+                    previousKeys = currentKeys;
+                    currentKeys = new BloomFilter(expectedKeys, falsePositiveRate);
+                }
+            }
+            int purged = dbUtils.inTransaction(session -> session.createQuery(PURGE_SQL)
+                    .setParameter("before", LocalDateTime.now().minusSeconds(retentionSeconds))
+                    .executeUpdate());
+            if (purged > 0) {
+                logger.info("Deleted {} expired idempotency records", purged);
+            }
+        } catch (Exception e) {
+            // the next run deletes what this one could not
+            logger.error("Expiring idempotency keys failed: {}", e.getMessage());
+        }
+    }
+
+    private void registerMeters(MeterRegistry registry) {
+        lookups(registry, cached, "cached");
+        lookups(registry, filtered, "filtered");
+        lookups(registry, stored, "stored");
+        lookups(registry, absent, "absent");
+        Gauge.builder("bank.idempotency.keys", this, index -> {
+            synchronized (index.buckets) {
+                return index.size;
+            }
+        })
+                .description("Idempotency records held in memory")
+                .register(registry);
+    }
+
+    private static void lookups(MeterRegistry registry, AtomicLong count, String result) {
+        FunctionCounter.builder("bank.idempotency.lookups", count, AtomicLong::get)
+                .description("Idempotency key lookups by where they were answered: cached in memory, ruled out by the " +
+                        "Bloom filter, or read from the database and stored or absent")
+                .tags("result", result)
+                .register(registry);
+    }
+
+    /**
+     * Bloom filter over strings, safe for concurrent use. Bits are set with compare and set, so a key added by
+     * one thread is seen by every later lookup.
+     */
+    static final class BloomFilter {
+        private final AtomicLongArray words;
+        private final long bits;
+        private final int hashes;
+
+        BloomFilter(long expectedKeys, double falsePositiveRate) {
+            long n = Math.max(1, expectedKeys);
+            long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.words = new AtomicLongArray((int) Math.min(Integer.MAX_VALUE, (m + 63) / 64));
+            this.bits = (long) words.length() * 64;
+            this.hashes = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+        }
+
+        void add(String key) {
+            long hash = hash(key);
+            long first = mix(hash);
+            long second = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(first + i * second, bits);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long value;
+                do {
+                    value = words.get(word);
+                } while ((value & mask) == 0 && !words.compareAndSet(word, value, value | mask));
+            }
+        }
+
+        boolean mightContain(String key) {
+            long hash = hash(key);
+            long first = mix(hash);
+            long second = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(first + i * second, bits);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // 64 bit FNV-1a over the UTF-8 bytes
+        private static long hash(String key) {
+            long hash = 0xcbf29ce484222325L;
+            for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b & 0xff;
+                hash *= 0x100000001b3L;
+            }
+            return hash;
+        }
+
+        // MurmurHash3 finaliser, spreads the FNV hash over all bits
+        private static long mix(long hash) {
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9fe1a85ec53L;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package net.contal.demo.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.contal.demo.exceptions.ServiceException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight execution of identical account reads. The first request for a read of an account runs the query on
+ * its own thread; requests for the same read that arrive while it runs wait for it and share its result, or its
+ * exception, instead of opening a session each. Results are shared between threads, so they must be immutable.
+ * <p>
+ * A local write to the account calls {@link #forget(int)} after its commit: requests arriving after that start a new
+ * query instead of joining one that may have read the account before the write, so a client still reads its own
+ * writes. Requests that joined before the commit keep the older result, as they would without coalescing.
+ * Disabled with {@code bank.coalescing.enabled=false}.
+ */
+@Component
+public class ReadCoalescer {
+
+    /**
+     * Reads that can be coalesced, the tag of their metrics
+     */
+    public enum Read {
+        BALANCE("balance"),
+        LAST_TEN("lastTen"),
+        DATE_BALANCE("dateBalance");
+
+        private final String tag;
+
+        Read(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private final boolean enabled;
+
+    private final Map<Key, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+
+    private final Map<Read, AtomicLong> executed = new EnumMap<>(Read.class);
+    private final Map<Read, AtomicLong> collapsed = new EnumMap<>(Read.class);
+
+    public ReadCoalescer(MeterRegistry meterRegistry,
+                         @Value("${bank.coalescing.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+        for (Read read : Read.values()) {
+            executed.put(read, new AtomicLong());
+            collapsed.put(read, new AtomicLong());
+            requests(meterRegistry, read, executed.get(read), "executed");
+            requests(meterRegistry, read, collapsed.get(read), "collapsed");
+        }
+    }
+
+    /**
+     * @param read          the kind of read
+     * @param accountNumber the account read
+     * @param argument      anything else the result depends on, null if nothing
+     * @param loader        runs the query, on the calling thread when no identical read is in flight
+     * @return the result of the query run by this request or by the one it joined
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T read(Read read, int accountNumber, Object argument, Supplier<T> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        Key key = new Key(read, accountNumber, argument);
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> running = flights.putIfAbsent(key, flight);
+        if (running != null) {
+            collapsed.get(read).incrementAndGet();
+            try {
+                return (T) running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new ServiceException(String.valueOf(e.getCause()));
+            }
+        }
+        executed.get(read).incrementAndGet();
+        try {
+            T result = loader.get();
+            flights.remove(key, flight);
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flights.remove(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Let later reads of the account run a new query, called after a write to it committed.
+     */
+    public void forget(int accountNumber) {
+        if (enabled && !flights.isEmpty()) {
+            flights.keySet().removeIf(key -> key.accountNumber == accountNumber);
+        }
+    }
+
+    private static void requests(MeterRegistry registry, Read read, AtomicLong count, String result) {
+        FunctionCounter.builder("bank.coalescing.requests", count, AtomicLong::get)
+                .description("Account reads that ran their query, or were collapsed into an identical read in flight")
+                .tags("read", read.tag, "result", result)
+                .register(registry);
+    }
+
+    private static final class Key {
+        private final Read read;
+        private final int accountNumber;
+        private final Object argument;
+
+        Key(Read read, int accountNumber, Object argument) {
+            this.read = read;
+            this.accountNumber = accountNumber;
+            this.argument = argument;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return accountNumber == key.accountNumber && read == key.read && Objects.equals(argument, key.argument);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(read, accountNumber, argument);
+        }
+    }
+}
@@ -0,0 +1,693 @@
+package net.contal.demo.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.contal.demo.DbUtils;
+import net.contal.demo.exceptions.AccountNumberNotFoundException;
+import net.contal.demo.exceptions.InsufficientBalanceException;
+import net.contal.demo.exceptions.ServiceException;
+import net.contal.demo.modal.BankTransaction;
+import net.contal.demo.modal.CustomerAccount;
+import net.contal.demo.modal.JournalCheckpoint;
+import net.contal.demo.modal.ShardStats;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory ledger for the highest volume tier, enabled with {@code bank.engine.mode=sharded}.
+ * <p>
+ * Accounts are partitioned by account number across single threaded shards. Each shard owns the balances
+ * of its accounts, so balance checks and updates need no lock and no database round trip once an account
+ * is loaded. Postings are acknowledged when applied in memory; every shard persists its
+ * {@link BankTransaction} rows and balances asynchronously, in batches of up to {@code bank.engine.flush-size}.
+ * <p>
+ * With {@code bank.journal.enabled=true} every shard first appends its postings to its own {@link TransactionJournal}
+ * and acknowledges them after the group commit fsync; a posting whose fsync fails is taken back off the balance and
+ * never persisted. Journal records above the {@link JournalCheckpoint} written with every persisted batch did not
+ * reach the database and are replayed on startup. The engine is created eagerly even with lazy initialisation, so
+ * the replay does not wait for the first request.
+ * <p>
+ * A caller waits at most {@code bank.engine.timeout-ms} for its command. A command the caller gave up on is dropped
+ * by its shard, and one the shard has started on is always seen through, so a timeout never hides a posting.
+ */
+@Component
+@Lazy(false)
+@DependsOn("schemaMigrations")
+public class ShardedLedgerEngine {
+
+    public static final String MODE = "sharded";
+
+    private static final String ACCOUNT_SQL = "select ca.id, ca.accountBalanceCents from CustomerAccount ca " +
+            "where ca.accountNumber = :accountNumber";
+
+    private static final String SET_BALANCE_SQL = "update CustomerAccount ca set ca.accountBalanceCents = :balance " +
+            "where ca.id = :accountId";
+
+    private static final String ADD_BALANCE_SQL = "update CustomerAccount ca set ca.accountBalanceCents = ca.accountBalanceCents + :amount " +
+            "where ca.id = :accountId";
+
+    private static final String BALANCE_SQL = "select ca.accountBalanceCents from CustomerAccount ca where ca.id = :accountId";
+
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(ShardedLedgerEngine.class);
+
+    private final DbUtils dbUtils;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${bank.engine.mode:database}")
+    private String mode = "database";
+
+    @Value("${bank.engine.shards:4}")
+    private int shardCount = 4;
+
+    @Value("${bank.engine.queue-capacity:10000}")
+    private int queueCapacity = 10000;
+
+    @Value("${bank.engine.flush-size:500}")
+    private int flushSize = 500;
+
+    @Value("${bank.engine.timeout-ms:5000}")
+    private long timeoutMillis = 5000;
+
+    @Value("${bank.journal.enabled:false}")
+    private boolean journalEnabled = false;
+
+    @Value("${bank.journal.directory:${user.home}/data/journal}")
+    private String journalDirectory = System.getProperty("user.home") + "/data/journal";
+
+    @Value("${bank.journal.capacity:1048576}")
+    private int journalCapacity = 1 << 20;
+
+    private Shard[] shards = new Shard[0];
+
+    @Autowired
+    public ShardedLedgerEngine(DbUtils dbUtils, MeterRegistry meterRegistry) {
+        this.dbUtils = dbUtils;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            if (journalEnabled) {
+                replayJournals();
+            }
+            shards = new Shard[shardCount];
+            for (int i = 0; i < shardCount; i++) {
+                shards[i] = new Shard(i, journalEnabled ? TransactionJournal.open(journalPath(i), journalCapacity) : null);
+                shards[i].start();
+                bindMetrics(shards[i]);
+            }
+        } catch (IOException e) {
+            throw new ServiceException("Unable to open transaction journal: " + e.getMessage());
+        }
+        logger.info("Sharded ledger engine started with {} shards, journal {}", shardCount, journalEnabled);
+    }
+
+    @PreDestroy
+    public void stop() {
+        for (Shard shard : shards) {
+            shard.stop();
+        }
+    }
+
+    public boolean isEnabled() {
+        return MODE.equalsIgnoreCase(mode);
+    }
+
+    /**
+     * Apply a transaction on the owning shard.
+     *
+     * @param accountNumber target account number
+     * @param amount        amount in cents to register as transaction
+     * @return false if the account does not exist
+     */
+    public boolean post(int accountNumber, long amount) {
+        try {
+            submit(accountNumber, true, amount);
+            return true;
+        } catch (AccountNumberNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Read the in-memory balance, which includes postings that are not persisted yet.
+     *
+     * @param accountNumber target account number
+     * @return account balance in cents
+     */
+    public long getBalance(int accountNumber) {
+        return submit(accountNumber, false, 0);
+    }
+
+    public List<ShardStats> getStats() {
+        List<ShardStats> stats = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            stats.add(new ShardStats(shard.index, shard.queue.size(), shard.accountCount,
+                    shard.processed.get(), shard.persisted.get(), shard.throughput));
+        }
+        return stats;
+    }
+
+    private void bindMetrics(Shard shard) {
+        String index = String.valueOf(shard.index);
+        Gauge.builder("bank.engine.queue.depth", shard.queue, BlockingQueue::size)
+                .description("Commands waiting for the shard thread")
+                .tag("shard", index)
+                .register(meterRegistry);
+        Gauge.builder("bank.engine.accounts", shard, s -> s.accountCount)
+                .description("Accounts loaded into the shard")
+                .tag("shard", index)
+                .register(meterRegistry);
+        FunctionCounter.builder("bank.engine.postings.processed", shard, s -> s.processed.get())
+                .tag("shard", index)
+                .register(meterRegistry);
+        FunctionCounter.builder("bank.engine.postings.persisted", shard, s -> s.persisted.get())
+                .tag("shard", index)
+                .register(meterRegistry);
+    }
+
+    private Path journalPath(int shard) {
+        return Paths.get(journalDirectory, "shard-" + shard + ".wal");
+    }
+
+    /**
+     * Write journal records above the database checkpoint of their shard, including shards that no longer exist.
+     */
+    private void replayJournals() throws IOException {
+        Path directory = Paths.get(journalDirectory);
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "shard-*.wal")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int shard = Integer.parseInt(name.substring("shard-".length(), name.length() - ".wal".length()));
+                try (TransactionJournal journal = TransactionJournal.open(file, journalCapacity)) {
+                    long checkpoint = readCheckpoint(shard);
+                    List<TransactionJournal.JournalRecord> records = journal.recordsAfter(checkpoint);
+                    for (int from = 0; from < records.size(); from += flushSize) {
+                        replay(shard, records.subList(from, Math.min(from + flushSize, records.size())));
+                    }
+                    if (!records.isEmpty()) {
+                        logger.info("Replayed {} journal records of shard {}", records.size(), shard);
+                        checkpoint = records.get(records.size() - 1).getSequence();
+                    }
+                    journal.markApplied(checkpoint);
+                }
+            }
+        }
+    }
+
+    private long readCheckpoint(int shard) {
+        JournalCheckpoint checkpoint = dbUtils.readOnly(session -> session.get(JournalCheckpoint.class, shard));
+        return checkpoint == null ? 0L : checkpoint.getAppliedSequence();
+    }
+
+    private void replay(int shard, List<TransactionJournal.JournalRecord> records) {
+        Session session = null;
+        try {
+            session = dbUtils.openASession();
+            Map<Integer, Long> accountIds = new HashMap<>();
+            for (TransactionJournal.JournalRecord record : records) {
+                Long accountId = accountIds.get(record.getAccountNumber());
+                if (accountId == null) {
+                    Object[] row = session.createQuery(ACCOUNT_SQL, Object[].class)
+                            .setParameter("accountNumber", record.getAccountNumber())
+                            .uniqueResult();
+                    if (row == null) {
+                        logger.error("Skipping journal record {} of unknown account {}", record.getSequence(), record.getAccountNumber());
+                        continue;
+                    }
+                    accountId = (Long) row[0];
+                    accountIds.put(record.getAccountNumber(), accountId);
+                }
+                LocalDateTime time = toDateTime(record.getTimestamp());
+                LocalDate date = time.toLocalDate();
+                BankTransaction bankTransaction = new BankTransaction();
+                bankTransaction.setCustomerAccount(session.load(CustomerAccount.class, accountId));
+                bankTransaction.setTransactionAmountCents(record.getAmountCents());
+                bankTransaction.setTransactionDate(date);
+                bankTransaction.setTransactionTime(time);
+                session.save(bankTransaction);
+                session.createQuery(ADD_BALANCE_SQL)
+                        .setParameter("amount", record.getAmountCents())
+                        .setParameter("accountId", accountId)
+                        .executeUpdate();
+                long closingBalance = session.createQuery(BALANCE_SQL, Long.class)
+                        .setParameter("accountId", accountId)
+                        .getSingleResult();
+                DailyBalances.record(session, record.getAccountNumber(), date, record.getAmountCents(), closingBalance);
+            }
+            session.merge(new JournalCheckpoint(shard, records.get(records.size() - 1).getSequence()));
+            session.getTransaction().commit();
+        } catch (Exception e) {
+            if (session != null && session.getTransaction().isActive()) {
+                session.getTransaction().rollback();
+            }
+            throw new ServiceException("Unable to replay transaction journal of shard " + shard + ": " + e.getMessage());
+        } finally {
+            if (session != null) {
+                session.close();
+            }
+        }
+    }
+
+    private static LocalDateTime toDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
+    private long submit(int accountNumber, boolean posting, long amount) {
+        Command command = new Command(accountNumber, posting, amount,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+        Shard shard = shards[Math.floorMod(accountNumber, shards.length)];
+        try {
+            if (!shard.queue.offer(command, timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new ServiceException("Ledger shard " + shard.index + " is overloaded");
+            }
+            try {
+                return command.result.get(command.deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                if (command.take()) {
+                    throw new ServiceException("Timed out waiting for ledger shard " + shard.index);
+                }
+                // the shard started on it just now, the outcome follows within an fsync
+                return command.result.get();
+            }
+        } catch (InterruptedException e) {
+            // a command the shard has not started on is dropped, one it has is applied
+            command.take();
+            Thread.currentThread().interrupt();
+            throw new ServiceException("Interrupted waiting for ledger shard " + shard.index);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ServiceException(e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Posting of {@code amount} cents or balance read, completed with the resulting balance.
+     */
+    private static final class Command {
+        final int accountNumber;
+        final boolean posting;
+        final long amount;
+        final long deadline;
+        final CompletableFuture<Long> result = new CompletableFuture<>();
+        private final AtomicBoolean taken = new AtomicBoolean();
+
+        Command(int accountNumber, boolean posting, long amount, long deadline) {
+            this.accountNumber = accountNumber;
+            this.posting = posting;
+            this.amount = amount;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Claimed once, by the shard that executes the command or by the caller that gives up on it.
+         *
+         * @return true for the one that claimed it
+         */
+        boolean take() {
+            return taken.compareAndSet(false, true);
+        }
+    }
+
+    private static final class Account {
+        final long id;
+        long balance;
+
+        Account(long id, long balance) {
+            this.id = id;
+            this.balance = balance;
+        }
+    }
+
+    private static final class Posting {
+        final long accountId;
+        final int accountNumber;
+        final long amount;
+        final long balance;
+        final long sequence;
+        final long timestamp;
+
+        Posting(long accountId, int accountNumber, long amount, long balance, long sequence, long timestamp) {
+            this.accountId = accountId;
+            this.accountNumber = accountNumber;
+            this.amount = amount;
+            this.balance = balance;
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * Net amount and closing balance of one account and day within a persisted batch.
+     */
+    private static final class DayTotal {
+        final int accountNumber;
+        final LocalDate date;
+        long netAmount;
+        long closingBalance;
+
+        DayTotal(int accountNumber, LocalDate date) {
+            this.accountNumber = accountNumber;
+            this.date = date;
+        }
+    }
+
+    private final class Shard implements Runnable {
+        final int index;
+        final TransactionJournal journal;
+        final BlockingQueue<Command> queue = new ArrayBlockingQueue<>(queueCapacity);
+        final AtomicLong processed = new AtomicLong();
+        final AtomicLong persisted = new AtomicLong();
+        volatile int accountCount;
+        volatile long throughput;
+        volatile boolean running = true;
+
+        // postings whose journal record failed to reach the disk, taken back off the balance by the shard thread
+        private final Queue<Posting> failed = new ConcurrentLinkedQueue<>();
+
+        // owned by the shard thread
+        private final Map<Integer, Account> accounts = new HashMap<>();
+        private List<Posting> pending = new ArrayList<>();
+        private long windowStart = System.nanoTime();
+        private long windowProcessed;
+
+        private final ThreadPoolExecutor persister;
+        private final Thread thread;
+
+        Shard(int index, TransactionJournal journal) {
+            this.index = index;
+            this.journal = journal;
+            this.thread = new Thread(this, "ledger-shard-" + index);
+            // one persister per shard keeps batches in order, a full queue blocks the shard until the persister catches up;
+            // persisting inline would race the persister and could write an older balance last
+            this.persister = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(8),
+                    r -> new Thread(r, "ledger-persister-" + index), (task, executor) -> {
+                        if (executor.isShutdown()) {
+                            throw new RejectedExecutionException("Persister of shard " + index + " is stopped");
+                        }
+                        try {
+                            executor.getQueue().put(task);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new RejectedExecutionException("Interrupted while queueing a batch of shard " + index);
+                        }
+                    });
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        void stop() {
+            running = false;
+            try {
+                thread.join(timeoutMillis);
+                persister.shutdown();
+                if (!persister.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    logger.error("Shard {} did not persist all transactions before shutdown", index);
+                }
+                if (journal != null) {
+                    journal.close();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                logger.error("Shard {} failed to close its journal: {}", index, e.getMessage());
+            }
+        }
+
+        @Override
+        public void run() {
+            while (running || !queue.isEmpty()) {
+                try {
+                    Command command = queue.poll(100, TimeUnit.MILLISECONDS);
+                    while (command != null) {
+                        execute(command);
+                        if (pending.size() >= flushSize) {
+                            break;
+                        }
+                        command = queue.poll();
+                    }
+                } catch (InterruptedException e) {
+                    running = false;
+                }
+                if (!pending.isEmpty()) {
+                    flush();
+                }
+                sampleThroughput();
+            }
+        }
+
+        private void execute(Command command) {
+            if (!command.take()) {
+                // the caller timed out and gave up on it
+                return;
+            }
+            try {
+                takeBackFailed();
+                if (System.nanoTime() - command.deadline >= 0) {
+                    command.result.completeExceptionally(new ServiceException("Timed out waiting for ledger shard " + index));
+                    return;
+                }
+                Account account = accounts.get(command.accountNumber);
+                if (account == null) {
+                    account = load(command.accountNumber);
+                    if (account == null) {
+                        command.result.completeExceptionally(new AccountNumberNotFoundException("Account Number Not Found"));
+                        return;
+                    }
+                    accounts.put(command.accountNumber, account);
+                    accountCount = accounts.size();
+                }
+                if (command.posting) {
+                    if (command.amount + account.balance < 0) {
+                        command.result.completeExceptionally(
+                                new InsufficientBalanceException("Insufficient balance to do th transaction"));
+                        return;
+                    }
+                    long timestamp = System.currentTimeMillis();
+                    long sequence = 0;
+                    if (journal != null) {
+                        if (!journal.hasSpace()) {
+                            flush();
+                            long remaining = TimeUnit.NANOSECONDS.toMillis(command.deadline - System.nanoTime());
+                            if (!journal.awaitSpace(remaining)) {
+                                command.result.completeExceptionally(new ServiceException("Transaction journal is full"));
+                                return;
+                            }
+                        }
+                        sequence = journal.append(command.accountNumber, command.amount, timestamp);
+                    }
+                    account.balance += command.amount;
+                    Posting posting = new Posting(account.id, command.accountNumber, command.amount, account.balance,
+                            sequence, timestamp);
+                    pending.add(posting);
+                    processed.incrementAndGet();
+                    if (journal != null) {
+                        // acknowledged once the group commit covering this record is on disk
+                        long balance = account.balance;
+                        journal.whenDurable(sequence).whenComplete((ignored, error) -> {
+                            if (error != null) {
+                                // queued before the caller hears of it, so its retry sees the balance without it
+                                failed.add(posting);
+                                command.result.completeExceptionally(error);
+                            } else {
+                                command.result.complete(balance);
+                            }
+                        });
+                        return;
+                    }
+                }
+                command.result.complete(account.balance);
+            } catch (Exception e) {
+                logger.error(e.getMessage());
+                command.result.completeExceptionally(new ServiceException(e.getMessage()));
+            }
+        }
+
+        /**
+         * Take the postings whose journal record failed back off the balance. A journal that fails stays failed, so
+         * the failed postings are the latest ones and no later posting was persisted on top of them.
+         */
+        private void takeBackFailed() {
+            Posting posting;
+            while ((posting = failed.poll()) != null) {
+                accounts.get(posting.accountNumber).balance -= posting.amount;
+            }
+        }
+
+        private Account load(int accountNumber) {
+            Object[] row = dbUtils.readOnly(session -> session.createQuery(ACCOUNT_SQL, Object[].class)
+                    .setParameter("accountNumber", accountNumber)
+                    .uniqueResult());
+            return row == null ? null : new Account((Long) row[0], (Long) row[1]);
+        }
+
+        private void flush() {
+            List<Posting> batch = pending;
+            pending = new ArrayList<>();
+            persister.execute(() -> persist(batch));
+        }
+
+        private void persist(List<Posting> postings) {
+            List<Posting> batch;
+            try {
+                batch = durable(postings);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Shard {} dropped {} unpersisted transactions", index, postings.size());
+                return;
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            // the balance after the last posting of each account, later postings keep changing the live ones
+            Map<Long, Long> balances = new LinkedHashMap<>();
+            for (Posting posting : batch) {
+                balances.put(posting.accountId, posting.balance);
+            }
+            while (true) {
+                Session session = null;
+                try {
+                    session = dbUtils.openASession();
+                    Map<String, DayTotal> dayTotals = new LinkedHashMap<>();
+                    for (Posting posting : batch) {
+                        LocalDateTime time = toDateTime(posting.timestamp);
+                        LocalDate date = time.toLocalDate();
+                        BankTransaction bankTransaction = new BankTransaction();
+                        bankTransaction.setCustomerAccount(session.load(CustomerAccount.class, posting.accountId));
+                        bankTransaction.setTransactionAmountCents(posting.amount);
+                        bankTransaction.setTransactionDate(date);
+                        bankTransaction.setTransactionTime(time);
+                        session.save(bankTransaction);
+
+                        DayTotal dayTotal = dayTotals.computeIfAbsent(posting.accountNumber + "/" + date,
+                                key -> new DayTotal(posting.accountNumber, date));
+                        dayTotal.netAmount += posting.amount;
+                        dayTotal.closingBalance = posting.balance;
+                    }
+                    for (DayTotal dayTotal : dayTotals.values()) {
+                        DailyBalances.record(session, dayTotal.accountNumber, dayTotal.date, dayTotal.netAmount,
+                                dayTotal.closingBalance);
+                    }
+                    for (Map.Entry<Long, Long> balance : balances.entrySet()) {
+                        session.createQuery(SET_BALANCE_SQL)
+                                .setParameter("balance", balance.getValue())
+                                .setParameter("accountId", balance.getKey())
+                                .executeUpdate();
+                    }
+                    long lastSequence = batch.get(batch.size() - 1).sequence;
+                    if (journal != null) {
+                        session.merge(new JournalCheckpoint(index, lastSequence));
+                    }
+                    session.getTransaction().commit();
+                    if (journal != null) {
+                        journal.markApplied(lastSequence);
+                    }
+                    persisted.addAndGet(batch.size());
+                    return;
+                } catch (Exception e) {
+                    if (session != null && session.getTransaction().isActive()) {
+                        session.getTransaction().rollback();
+                    }
+                    logger.error("Shard {} failed to persist {} transactions, retrying: {}", index, batch.size(), e.getMessage());
+                } finally {
+                    if (session != null) {
+                        session.close();
+                    }
+                }
+                try {
+                    Thread.sleep(RETRY_DELAY_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    logger.error("Shard {} dropped {} unpersisted transactions", index, batch.size());
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Wait for the journal records of the postings to reach the disk.
+         *
+         * @return the postings that did, the others are taken back off the balance and must not be persisted
+         */
+        private List<Posting> durable(List<Posting> postings) throws InterruptedException {
+            if (journal == null) {
+                return postings;
+            }
+            try {
+                journal.whenDurable(postings.get(postings.size() - 1).sequence).get();
+                return postings;
+            } catch (ExecutionException e) {
+                long durableSequence = journal.getDurableSequence();
+                List<Posting> durable = new ArrayList<>();
+                for (Posting posting : postings) {
+                    if (posting.sequence <= durableSequence) {
+                        durable.add(posting);
+                    }
+                }
+                logger.error("Shard {} skips {} transactions that are not in its journal", index,
+                        postings.size() - durable.size());
+                return durable;
+            }
+        }
+
+        private void sampleThroughput() {
+            long now = System.nanoTime();
+            long elapsed = now - windowStart;
+            if (elapsed >= TimeUnit.SECONDS.toNanos(1)) {
+                long total = processed.get();
+                throughput = (total - windowProcessed) * TimeUnit.SECONDS.toNanos(1) / elapsed;
+                windowStart = now;
+                windowProcessed = total;
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package net.contal.demo.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import net.contal.demo.MoneyUtil;
+import net.contal.demo.modal.StatementLine;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes statement export lines to a stream as they are read, so an export is never held in memory as a whole.
+ * <p>
+ * CSV has a header line and the columns {@code id,accountNumber,transactionDate,transactionTime,transactionAmount}.
+ * NDJSON has one {@link StatementLine} JSON object per line.
+ */
+public abstract class StatementWriter {
+
+    public static final String CSV = AccountImportReader.CSV;
+    public static final String NDJSON = AccountImportReader.NDJSON;
+
+    /**
+     * @param format {@code csv} or {@code ndjson}
+     * @return null for any other format
+     */
+    public static StatementWriter of(String format, OutputStream out, ObjectMapper objectMapper) {
+        if ("csv".equalsIgnoreCase(format)) {
+            return csv(out);
+        }
+        if ("ndjson".equalsIgnoreCase(format)) {
+            return ndjson(out, objectMapper);
+        }
+        return null;
+    }
+
+    public static StatementWriter csv(OutputStream out) {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        return new StatementWriter(CSV) {
+            @Override
+            void writeHeader() throws IOException {
+                writer.write("id,accountNumber,transactionDate,transactionTime,transactionAmount\n");
+            }
+
+            @Override
+            void writeLine(StatementLine line) throws IOException {
+                writer.write(Long.toString(line.getId()));
+                writer.write(',');
+                writer.write(Integer.toString(line.getAccountNumber()));
+                writer.write(',');
+                writer.write(String.valueOf(line.getTransactionDate()));
+                writer.write(',');
+                writer.write(String.valueOf(line.getTransactionTime()));
+                writer.write(',');
+                writer.write(MoneyUtil.toDecimal(line.getTransactionAmountCents()).toPlainString());
+                writer.write('\n');
+            }
+
+            @Override
+            void flushLines() throws IOException {
+                writer.flush();
+            }
+        };
+    }
+
+    public static StatementWriter ndjson(OutputStream out, ObjectMapper objectMapper) {
+        ObjectWriter writer = objectMapper.writerFor(StatementLine.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        JsonGenerator generator;
+        try {
+            generator = objectMapper.getFactory().createGenerator(out)
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                    .setRootValueSeparator(null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new StatementWriter(NDJSON) {
+            @Override
+            void writeHeader() {
+            }
+
+            @Override
+            void writeLine(StatementLine line) throws IOException {
+                writer.writeValue(generator, line);
+                generator.writeRaw('\n');
+            }
+
+            @Override
+            void flushLines() throws IOException {
+                generator.flush();
+            }
+        };
+    }
+
+    private final String mediaType;
+
+    private StatementWriter(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * @return {@value #CSV} or {@value #NDJSON}
+     */
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    abstract void writeHeader() throws IOException;
+
+    abstract void writeLine(StatementLine line) throws IOException;
+
+    abstract void flushLines() throws IOException;
+
+    /**
+     * Start the export, called once before the first line.
+     */
+    public void begin() {
+        try {
+            writeHeader();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void write(StatementLine line) {
+        try {
+            writeLine(line);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Send the lines written so far to the client.
+     */
+    public void flush() {
+        try {
+            flushLines();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package net.contal.demo.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.contal.demo.DbUtils;
+import net.contal.demo.modal.ArchivedTransaction;
+import net.contal.demo.modal.OpeningBalance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.LockModeType;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Moves transactions older than {@code bank.archive.horizon-days} from {@code bank_transaction} to
+ * {@link ArchivedTransaction}, enabled with {@code bank.archive.enabled=true} and run every
+ * {@code bank.archive.interval-minutes}.
+ * <p>
+ * An account is archived oldest first, {@code bank.archive.chunk-size} transactions per database transaction, under
+ * the account row lock. Each chunk adds its transactions to the {@link OpeningBalance} of the account in the same
+ * transaction. So at every commit, the archived transactions of an account are older than the ones left in the
+ * table, and the opening balance plus the table adds up to the account balance. Postings to the account wait for
+ * the chunk.
+ * <p>
+ * Exports read the archive before the table and cannot tell rows that moved while they ran, so archiving waits while
+ * an export on this node runs. Enable it on one node only.
+ * <p>
+ * Created at startup with lazy initialisation too, archiving runs whether or not requests arrive.
+ */
+@Component
+@Lazy(false)
+@DependsOn("schemaMigrations")
+public class TransactionArchiver {
+
+    private static final int ACCOUNT_PAGE_SIZE = 1000;
+
+    private static final String ACCOUNTS_TO_ARCHIVE_SQL = "select ca.id, ca.accountNumber from CustomerAccount ca " +
+            "where ca.id > :id and exists (select bt.id from BankTransaction bt " +
+            "where bt.customerAccount = ca and bt.transactionTime < :horizon) order by ca.id";
+
+    private static final String LOCK_ACCOUNT_SQL = "select ca from CustomerAccount ca where ca.id = :accountId";
+
+    private static final String OLDEST_TRANSACTIONS_SQL = "select bt.id, bt.transactionDate, bt.transactionTime, " +
+            "bt.transactionAmountCents from BankTransaction bt where bt.customerAccount.id = :accountId " +
+            "and bt.transactionTime < :horizon order by bt.customerAccount.id, bt.transactionTime, bt.id";
+
+    private static final String DELETE_TRANSACTIONS_SQL = "delete from BankTransaction bt where bt.id in (:ids)";
+
+    private final Logger logger = LoggerFactory.getLogger(TransactionArchiver.class);
+
+    private final DbUtils dbUtils;
+
+    @Value("${bank.archive.enabled:false}")
+    private boolean enabled = false;
+
+    @Value("${bank.archive.horizon-days:365}")
+    private int horizonDays = 365;
+
+    @Value("${bank.archive.interval-minutes:60}")
+    private long intervalMinutes = 60;
+
+    @Value("${bank.archive.chunk-size:1000}")
+    private int chunkSize = 1000;
+
+    // exports hold the read lock, each archive chunk takes the write lock
+    private final ReadWriteLock exports = new ReentrantReadWriteLock();
+
+    private final AtomicLong archived = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+    private volatile boolean stopping;
+
+    public TransactionArchiver(DbUtils dbUtils, MeterRegistry meterRegistry) {
+        this.dbUtils = dbUtils;
+        FunctionCounter.builder("bank.archive.transactions", archived, AtomicLong::get)
+                .description("Transactions moved to the archive")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "transaction-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::archiveScheduled, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+        logger.info("Archiving transactions older than {} days every {} minutes", horizonDays, intervalMinutes);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        stopping = true;
+        if (scheduler != null) {
+            // not interrupted, H2 closes a connection whose thread is interrupted; the run stops after its chunk
+            scheduler.shutdown();
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Hold off archiving until {@link #exportFinished()} is called by the same thread.
+     */
+    void exportStarted() {
+        exports.readLock().lock();
+    }
+
+    void exportFinished() {
+        exports.readLock().unlock();
+    }
+
+    private void archiveScheduled() {
+        try {
+            archive(LocalDate.now().minusDays(horizonDays).atStartOfDay());
+        } catch (Exception e) {
+            // the next run continues where this one stopped
+            logger.error("Archiving transactions failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Archive every transaction older than the horizon.
+     *
+     * @return number of transactions archived
+     */
+    public long archive(LocalDateTime horizon) {
+        long total = 0;
+        long accounts = 0;
+        long lastAccountId = 0;
+        List<Object[]> page;
+        do {
+            long after = lastAccountId;
+            page = dbUtils.readOnly(session -> session.createQuery(ACCOUNTS_TO_ARCHIVE_SQL, Object[].class)
+                    .setParameter("id", after)
+                    .setParameter("horizon", horizon)
+                    .setMaxResults(ACCOUNT_PAGE_SIZE)
+                    .getResultList());
+            for (Object[] account : page) {
+                if (stopping) {
+                    return total;
+                }
+                lastAccountId = (Long) account[0];
+                int moved;
+                do {
+                    moved = archiveChunk(lastAccountId, (Integer) account[1], horizon);
+                    total += moved;
+                } while (moved == chunkSize && !stopping);
+                accounts++;
+            }
+        } while (page.size() == ACCOUNT_PAGE_SIZE);
+        if (total > 0) {
+            logger.info("Archived {} transactions of {} accounts older than {}", total, accounts, horizon);
+        }
+        return total;
+    }
+
+    private int archiveChunk(long accountId, int accountNumber, LocalDateTime horizon) {
+        Lock lock = exports.writeLock();
+        // waiting on lock() would also queue exports that start later behind the running one
+        while (!lock.tryLock()) {
+            if (stopping) {
+                return 0;
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 0;
+            }
+        }
+        try {
+            int moved = dbUtils.inTransaction(session -> {
+                session.createQuery(LOCK_ACCOUNT_SQL)
+                        .setParameter("accountId", accountId)
+                        .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                        .getResultList();
+                List<Object[]> oldest = session.createQuery(OLDEST_TRANSACTIONS_SQL, Object[].class)
+                        .setParameter("accountId", accountId)
+                        .setParameter("horizon", horizon)
+                        .setMaxResults(chunkSize)
+                        .getResultList();
+                if (oldest.isEmpty()) {
+                    return 0;
+                }
+                List<Long> ids = new ArrayList<>(oldest.size());
+                long amount = 0;
+                LocalDateTime newest = null;
+                for (Object[] row : oldest) {
+                    long id = (Long) row[0];
+                    LocalDateTime time = (LocalDateTime) row[2];
+                    long transactionAmount = (Long) row[3];
+                    session.save(new ArchivedTransaction(id, accountNumber, transactionAmount, (LocalDate) row[1], time));
+                    ids.add(id);
+                    amount += transactionAmount;
+                    newest = time;
+                }
+                session.createQuery(DELETE_TRANSACTIONS_SQL)
+                        .setParameterList("ids", ids)
+                        .executeUpdate();
+
+                OpeningBalance openingBalance = session.get(OpeningBalance.class, accountNumber);
+                if (openingBalance == null) {
+                    openingBalance = new OpeningBalance(accountNumber);
+                    session.save(openingBalance);
+                }
+                openingBalance.setBalanceCents(openingBalance.getBalanceCents() + amount);
+                openingBalance.setArchivedTransactions(openingBalance.getArchivedTransactions() + oldest.size());
+                openingBalance.setArchivedThrough(newest);
+                return oldest.size();
+            });
+            archived.addAndGet(moved);
+            return moved;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package net.contal.demo.services;
+
+import net.contal.demo.MoneyUtil;
+import net.contal.demo.exceptions.ServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Append-only write-ahead journal of postings, backed by a memory-mapped file of fixed-size binary records.
+ * <p>
+ * One thread appends, a committer thread forces the mapping to disk and completes every waiter covered by
+ * that fsync, so concurrent postings share one fsync (group commit). The file is a ring: a slot is reused
+ * once its record has been marked applied to the database.
+ * <p>
+ * A failed fsync fails the journal for good: the records it did not cover are erased, so a restart does not replay
+ * postings their callers were told had failed, and nothing is appended after it.
+ * <p>
+ * Layout: a {@value #HEADER_SIZE} byte header (magic, version, applied sequence, capacity) followed by records of
+ * {@value #RECORD_SIZE} bytes (sequence, timestamp, amount in cents, account number, checksum). Sequence 0 marks an
+ * empty slot. Version 1 journals held the amount as a double, they are converted in place when opened. A journal
+ * only opens with the capacity it was created with.
+ */
+final class TransactionJournal implements Closeable {
+
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 32;
+
+    static final int MAGIC = 0x424b4a31;
+    private static final int VERSION = 2;
+    private static final int DOUBLE_AMOUNT_VERSION = 1;
+    private static final int APPLIED_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 16;
+
+    private final Logger logger = LoggerFactory.getLogger(TransactionJournal.class);
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final ConcurrentLinkedQueue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+    private final Object spaceMonitor = new Object();
+    // held to append, and to fail the journal, so no record is written once the journal has failed
+    private final Object appendLock = new Object();
+    private final Consumer<MappedByteBuffer> force;
+    private final Thread committer;
+
+    // owned by the appending thread
+    private long nextSequence;
+    private int nextSlot;
+
+    private volatile long writtenSequence;
+    private volatile long durableSequence;
+    private volatile long appliedSequence;
+    private volatile boolean running = true;
+    private volatile IOException failure;
+
+    private TransactionJournal(Path path, int capacity, Consumer<MappedByteBuffer> force) throws IOException {
+        this.path = path;
+        this.capacity = capacity;
+        this.force = force;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        this.committer = new Thread(this::commitLoop, "journal-committer-" + path.getFileName());
+        this.committer.setDaemon(true);
+    }
+
+    /**
+     * Open or create a journal and position it after its last valid record.
+     *
+     * @param path     journal file
+     * @param capacity number of record slots, must match the capacity the file was created with
+     * @return started journal
+     * @throws IOException when the file was created with another capacity
+     */
+    static TransactionJournal open(Path path, int capacity) throws IOException {
+        return open(path, capacity, MappedByteBuffer::force);
+    }
+
+    /**
+     * @param force forces the mapping to disk for a group commit
+     */
+    static TransactionJournal open(Path path, int capacity, Consumer<MappedByteBuffer> force) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        int existing = readCapacity(path);
+        if (existing > 0 && existing != capacity) {
+            // a different mapping size would move records out of their slots, or out of the mapping
+            throw new IOException("Transaction journal " + path + " has " + existing + " slots, not " + capacity +
+                    ", set bank.journal.capacity to " + existing);
+        }
+        TransactionJournal journal = new TransactionJournal(path, capacity, force);
+        journal.recover();
+        journal.committer.start();
+        return journal;
+    }
+
+    /**
+     * @return number of record slots of an existing journal, 0 if there is none yet; journals written before the
+     * header held it have as many as fit in the file
+     */
+    private static int readCapacity(Path path) throws IOException {
+        if (!Files.exists(path) || Files.size(path) < HEADER_SIZE) {
+            return 0;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.read(header, 0);
+        }
+        if (header.getInt(0) != MAGIC) {
+            return 0;
+        }
+        int capacity = header.getInt(CAPACITY_OFFSET);
+        return capacity > 0 ? capacity : (int) ((Files.size(path) - HEADER_SIZE) / RECORD_SIZE);
+    }
+
+    private void recover() {
+        if (buffer.getInt(0) != MAGIC) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(APPLIED_OFFSET, 0L);
+            buffer.putInt(CAPACITY_OFFSET, capacity);
+            buffer.force();
+        } else {
+            if (buffer.getInt(4) == DOUBLE_AMOUNT_VERSION) {
+                convertDoubleAmounts();
+            }
+            if (buffer.getInt(CAPACITY_OFFSET) == 0) {
+                buffer.putInt(CAPACITY_OFFSET, capacity);
+                buffer.force();
+            }
+        }
+        appliedSequence = buffer.getLong(APPLIED_OFFSET);
+        long last = appliedSequence;
+        for (int slot = 0; slot < capacity; slot++) {
+            last = Math.max(last, readSequence(slot));
+        }
+        // sequence n always lives in slot (n - 1) % capacity
+        nextSequence = last + 1;
+        nextSlot = (int) (last % capacity);
+        writtenSequence = last;
+        durableSequence = last;
+    }
+
+    /**
+     * Rewrite version 1 records with the amount in cents. A record that no longer passes the version 1 checksum was
+     * either torn or already converted by an interrupted earlier run, so it is left alone.
+     */
+    private void convertDoubleAmounts() {
+        int converted = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = HEADER_SIZE + slot * RECORD_SIZE;
+            long sequence = buffer.getLong(offset);
+            long timestamp = buffer.getLong(offset + 8);
+            long amountBits = buffer.getLong(offset + 16);
+            int accountNumber = buffer.getInt(offset + 24);
+            if (sequence == 0 || buffer.getInt(offset + 28) != checksum(sequence, timestamp, amountBits, accountNumber)) {
+                continue;
+            }
+            long amount = MoneyUtil.toCents(Double.longBitsToDouble(amountBits));
+            buffer.putLong(offset + 16, amount);
+            buffer.putInt(offset + 28, checksum(sequence, timestamp, amount, accountNumber));
+            converted++;
+        }
+        buffer.force();
+        buffer.putInt(4, VERSION);
+        buffer.force();
+        logger.info("Converted {} records of transaction journal {} to amounts in cents", converted, path);
+    }
+
+    /**
+     * Append a posting. Only one thread may append.
+     *
+     * @param amount amount in cents
+     * @return sequence of the record
+     */
+    long append(int accountNumber, long amount, long timestamp) {
+        if (!hasSpace()) {
+            throw new ServiceException("Transaction journal " + path + " is full");
+        }
+        long sequence;
+        synchronized (appendLock) {
+            if (failure != null) {
+                throw new ServiceException("Transaction journal failed: " + failure.getMessage());
+            }
+            sequence = nextSequence++;
+            int offset = HEADER_SIZE + nextSlot * RECORD_SIZE;
+            buffer.putLong(offset + 8, timestamp);
+            buffer.putLong(offset + 16, amount);
+            buffer.putInt(offset + 24, accountNumber);
+            buffer.putInt(offset + 28, checksum(sequence, timestamp, amount, accountNumber));
+            // the sequence makes the record visible to recovery, so it goes last
+            buffer.putLong(offset, sequence);
+            nextSlot = (nextSlot + 1) % capacity;
+            writtenSequence = sequence;
+        }
+        LockSupport.unpark(committer);
+        return sequence;
+    }
+
+    /**
+     * @return future completed once the record with the given sequence has been forced to disk
+     */
+    CompletableFuture<Void> whenDurable(long sequence) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (failure != null) {
+            future.completeExceptionally(new ServiceException("Transaction journal failed: " + failure.getMessage()));
+            return future;
+        }
+        if (durableSequence >= sequence) {
+            future.complete(null);
+            return future;
+        }
+        waiters.add(new Waiter(sequence, future));
+        // the committer may have drained the waiters before this one was added
+        if (durableSequence >= sequence) {
+            completeWaiters();
+        } else if (failure != null) {
+            failWaiters();
+        }
+        return future;
+    }
+
+    /**
+     * @return true if the next slot holds no record that still has to be applied
+     */
+    boolean hasSpace() {
+        long sequence = readSequence(nextSlot);
+        return sequence == 0 || sequence <= appliedSequence;
+    }
+
+    /**
+     * Wait until the next slot can be reused.
+     *
+     * @return false if the journal is still full after the timeout
+     */
+    boolean awaitSpace(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (spaceMonitor) {
+            while (!hasSpace()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(spaceMonitor, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Record that every record up to the given sequence is in the database, so its slot can be reused.
+     */
+    void markApplied(long sequence) {
+        synchronized (spaceMonitor) {
+            if (sequence > appliedSequence) {
+                appliedSequence = sequence;
+                buffer.putLong(APPLIED_OFFSET, sequence);
+            }
+            spaceMonitor.notifyAll();
+        }
+    }
+
+    long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    long getDurableSequence() {
+        return durableSequence;
+    }
+
+    /**
+     * @return valid records with a sequence above the given one, in sequence order
+     */
+    List<JournalRecord> recordsAfter(long sequence) {
+        List<JournalRecord> records = new ArrayList<>();
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = HEADER_SIZE + slot * RECORD_SIZE;
+            long recordSequence = buffer.getLong(offset);
+            if (recordSequence <= sequence) {
+                continue;
+            }
+            long timestamp = buffer.getLong(offset + 8);
+            long amount = buffer.getLong(offset + 16);
+            int accountNumber = buffer.getInt(offset + 24);
+            if (buffer.getInt(offset + 28) != checksum(recordSequence, timestamp, amount, accountNumber)) {
+                logger.error("Skipping torn journal record {} in {}", recordSequence, path);
+                continue;
+            }
+            records.add(new JournalRecord(recordSequence, accountNumber, amount, timestamp));
+        }
+        records.sort(Comparator.comparingLong(JournalRecord::getSequence));
+        return records;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(committer);
+        try {
+            committer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            force.accept(buffer);
+        } catch (RuntimeException e) {
+            logger.error("Failed to force transaction journal {} on close", path, e);
+        }
+        channel.close();
+    }
+
+    private void commitLoop() {
+        while (running || durableSequence < writtenSequence) {
+            long target = writtenSequence;
+            if (target > durableSequence) {
+                try {
+                    force.accept(buffer);
+                    durableSequence = target;
+                } catch (RuntimeException e) {
+                    fail(e);
+                    return;
+                }
+                completeWaiters();
+            } else {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(10));
+            }
+        }
+    }
+
+    /**
+     * Stop appending and erase every record the failed fsync may not have covered, its posting was never acknowledged.
+     * The erased slots reach the file with the rest of the mapping, like any other write.
+     */
+    private void fail(RuntimeException error) {
+        logger.error("Failed to force transaction journal {}", path, error);
+        synchronized (appendLock) {
+            failure = new IOException(error.getMessage(), error);
+            for (long sequence = durableSequence + 1; sequence <= writtenSequence; sequence++) {
+                buffer.putLong(HEADER_SIZE + (int) ((sequence - 1) % capacity) * RECORD_SIZE, 0L);
+            }
+        }
+        failWaiters();
+    }
+
+    private synchronized void completeWaiters() {
+        Waiter waiter;
+        while ((waiter = waiters.peek()) != null && waiter.sequence <= durableSequence) {
+            waiters.poll();
+            waiter.future.complete(null);
+        }
+    }
+
+    private synchronized void failWaiters() {
+        Waiter waiter;
+        while ((waiter = waiters.poll()) != null) {
+            waiter.future.completeExceptionally(new ServiceException("Transaction journal failed: " + failure.getMessage()));
+        }
+    }
+
+    private long readSequence(int slot) {
+        return buffer.getLong(HEADER_SIZE + slot * RECORD_SIZE);
+    }
+
+    /**
+     * The amount is hashed as raw bits, so the same function checks version 1 records given their double's bits.
+     */
+    static int checksum(long sequence, long timestamp, long amount, int accountNumber) {
+        long hash = sequence * 0x9E3779B97F4A7C15L ^ timestamp;
+        hash = hash * 0x9E3779B97F4A7C15L ^ amount;
+        hash = hash * 0x9E3779B97F4A7C15L ^ accountNumber;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private static final class Waiter {
+        final long sequence;
+        final CompletableFuture<Void> future;
+
+        Waiter(long sequence, CompletableFuture<Void> future) {
+            this.sequence = sequence;
+            this.future = future;
+        }
+    }
+
+    static final class JournalRecord {
+        private final long sequence;
+        private final int accountNumber;
+        private final long amountCents;
+        private final long timestamp;
+
+        JournalRecord(long sequence, int accountNumber, long amountCents, long timestamp) {
+            this.sequence = sequence;
+            this.accountNumber = accountNumber;
+            this.amountCents = amountCents;
+            this.timestamp = timestamp;
+        }
+
+        long getSequence() {
+            return sequence;
+        }
+
+        int getAccountNumber() {
+            return accountNumber;
+        }
+
+        long getAmountCents() {
+            return amountCents;
+        }
+
+        long getTimestamp() {
+            return timestamp;
+        }
+    }
+}
@@ -10,4 +10,10 @@ CREATE TABLE billionaires (
 INSERT INTO billionaires (first_name, last_name, career) VALUES
 ('Aliko', 'Dangote', 'Billionaire Industrialist'),
 ('Bill', 'Gates', 'Billionaire Tech Entrepreneur'),
-('Folrunsho', 'Alakija', 'Billionaire Oil Magnate');
\ No newline at end of file
+('Folrunsho', 'Alakija', 'Billionaire Oil Magnate');
+
+-- the rows take ids 1 to 3, Billioner ids come from hibernate_sequence
+ALTER SEQUENCE IF EXISTS hibernate_sequence RESTART WITH 4;
+
+-- pooled connections do not auto-commit, see spring.datasource.hikari.auto-commit
+COMMIT;
@@ -0,0 +1,7 @@
+-- Rows of the billionaires table for the prod profile, written again only where they are missing
+MERGE INTO billionaires (id, first_name, last_name, career) KEY (id) VALUES
+(1, 'Aliko', 'Dangote', 'Billionaire Industrialist'),
+(2, 'Bill', 'Gates', 'Billionaire Tech Entrepreneur'),
+(3, 'Folrunsho', 'Alakija', 'Billionaire Oil Magnate');
+-- pooled connections do not auto-commit, see spring.datasource.hikari.auto-commit
+COMMIT;
@@ -0,0 +1,23 @@
+-- Schema of the prod profile, created by the application on start where it is missing, checked against the
+-- entity mappings by spring.jpa.hibernate.ddl-auto=validate. Keep it in step with the entities: a mapping change
+-- fails the start of the prod profile until the statement here is changed too.
+create sequence if not exists bank_transaction_seq start with 1 increment by 50;
+create sequence if not exists customer_account_seq start with 1 increment by 50;
+create sequence if not exists daily_balance_seq start with 1 increment by 50;
+-- billionaires ids, the rows of db/billionaires.sql take 1 to 3
+create sequence if not exists hibernate_sequence start with 4 increment by 1;
+create table if not exists account_number_block (name varchar(255) not null, next_counter bigint not null, primary key (name));
+create table if not exists archived_transaction (id bigint not null, account_number integer not null, transaction_amount_cents bigint not null, transaction_date date not null, transaction_time timestamp not null, primary key (id));
+create table if not exists bank_transaction (id bigint not null, transaction_amount_cents bigint default 0 not null, transaction_date date, transaction_time timestamp, customer_account_id bigint, primary key (id));
+create table if not exists billionaires (id integer not null, career varchar(255), first_name varchar(255), last_name varchar(255), primary key (id));
+create table if not exists customer_account (id bigint not null, account_balance_cents bigint default 0 not null check (account_balance_cents>=0), account_number integer, first_name varchar(255), last_name varchar(255), ledger_version bigint default 0 not null, primary key (id));
+create table if not exists daily_balance (id bigint not null, account_number integer not null, balance_date date not null, closing_balance_cents bigint default 0 not null, net_amount_cents bigint default 0 not null, primary key (id));
+create table if not exists idempotency_record (idempotency_key varchar(255) not null, account_number integer not null, amount_cents bigint not null, created_at timestamp not null, transaction_id bigint not null, primary key (idempotency_key));
+create table if not exists journal_checkpoint (shard integer not null, applied_sequence bigint not null, primary key (shard));
+create table if not exists opening_balance (account_number integer not null, archived_through timestamp, archived_transactions bigint default 0 not null, balance_cents bigint default 0 not null, primary key (account_number));
+create index if not exists idx_archived_transaction_account_time on archived_transaction (account_number, transaction_time, id);
+create index if not exists idx_bank_transaction_account_time on bank_transaction (customer_account_id, transaction_time, id);
+alter table customer_account add constraint if not exists UK_g12c0xuwhwixshw9x6dbuscss unique (account_number);
+alter table daily_balance add constraint if not exists uk_daily_balance_account_date unique (account_number, balance_date);
+create index if not exists idx_idempotency_record_created on idempotency_record (created_at);
+alter table bank_transaction add constraint if not exists FKql9ovx9docgrxae7bm3qr4i62 foreign key (customer_account_id) references customer_account;
@@ -0,0 +1,92 @@
+package net.contal.demo;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that allocated account numbers never repeat, also when threads allocate concurrently across blocks.
+ * Allocation throughput is measured by AccountNumberAllocatorBenchmark.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:bank-account-numbers;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "bank.account-number.block-size=1000"
+})
+public class AccountNumberAllocatorTest {
+
+    private static final int ALLOCATIONS = 100_000;
+
+    @Autowired
+    AccountNumberAllocator allocator;
+
+    @Test
+    public void testPermutationIsUniqueAndInRange() {
+        BitSet seen = new BitSet(AccountNumberUtil.ACCOUNT_NUMBERS);
+        for (long counter = 0; counter < 5_000_000; counter++) {
+            int accountNumber = AccountNumberUtil.toAccountNumber(counter, 42L);
+            assertTrue(accountNumber >= 10000000 && accountNumber <= 99999999);
+            int offset = accountNumber - AccountNumberUtil.FIRST_ACCOUNT_NUMBER;
+            assertFalse(seen.get(offset), "duplicate account number " + accountNumber);
+            seen.set(offset);
+        }
+        assertNotEquals(AccountNumberUtil.toAccountNumber(0, 42L) + 1, AccountNumberUtil.toAccountNumber(1, 42L));
+        assertNotEquals(AccountNumberUtil.toAccountNumber(7, 42L), AccountNumberUtil.toAccountNumber(7, 43L));
+    }
+
+    @Test
+    public void testConcurrentAllocationsAreUnique() throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<int[]>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    int[] numbers = new int[ALLOCATIONS / threads];
+                    for (int j = 0; j < numbers.length; j++) {
+                        numbers[j] = allocator.nextAccountNumber();
+                    }
+                    return numbers;
+                }));
+            }
+            BitSet seen = new BitSet(AccountNumberUtil.ACCOUNT_NUMBERS);
+            for (Future<int[]> future : futures) {
+                for (int accountNumber : future.get(60, TimeUnit.SECONDS)) {
+                    int offset = accountNumber - AccountNumberUtil.FIRST_ACCOUNT_NUMBER;
+                    assertFalse(seen.get(offset), "duplicate account number " + accountNumber);
+                    seen.set(offset);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBulkAllocationSpansBlocks() {
+        BitSet seen = new BitSet(AccountNumberUtil.ACCOUNT_NUMBERS);
+        List<Integer> allocated = new ArrayList<>();
+        allocated.add(allocator.nextAccountNumber());
+        for (int accountNumber : allocator.nextAccountNumbers(2500)) {
+            allocated.add(accountNumber);
+        }
+        allocated.add(allocator.nextAccountNumber());
+        assertEquals(2502, allocated.size());
+        for (int accountNumber : allocated) {
+            int offset = accountNumber - AccountNumberUtil.FIRST_ACCOUNT_NUMBER;
+            assertFalse(seen.get(offset), "duplicate account number " + accountNumber);
+            seen.set(offset);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package net.contal.demo;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.contal.demo.modal.Billioner;
+import net.contal.demo.services.DemoService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the unit-of-work templates commit, roll back and always close their session.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:bank-db-utils;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false"
+})
+public class DbUtilsTest {
+
+    @Autowired
+    DbUtils dbUtils;
+
+    @Autowired
+    DemoService demoService;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    public void testSessionsAreClosed() {
+        // more round trips than the pool has connections, a leaked session would exhaust it
+        for (int i = 0; i < 50; i++) {
+            demoService.saveBillioner(billioner("Closed" + i));
+            assertFalse(demoService.test().isEmpty());
+        }
+        assertEquals(0.0, meterRegistry.get("bank.db.sessions.open").gauge().value());
+    }
+
+    @Test
+    public void testInTransactionRollsBackOnError() {
+        long before = countBillioners();
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> dbUtils.inTransaction(session -> {
+            session.save(billioner("RolledBack"));
+            session.flush();
+            throw new IllegalStateException("failed after the insert");
+        }));
+        assertEquals("failed after the insert", error.getMessage());
+        assertEquals(before, countBillioners());
+        assertEquals(0.0, meterRegistry.get("bank.db.sessions.open").gauge().value());
+    }
+
+    @Test
+    public void testReadOnlyDoesNotFlushChanges() {
+        int id = dbUtils.inTransaction(session -> (Integer) session.save(billioner("ReadOnly")));
+
+        dbUtils.readOnly(session -> {
+            Billioner loaded = session.get(Billioner.class, id);
+            assertTrue(session.isReadOnly(loaded));
+            loaded.setFirstName("Changed");
+            return loaded;
+        });
+
+        Billioner reloaded = dbUtils.readOnly(session -> session.get(Billioner.class, id));
+        assertEquals("ReadOnly", reloaded.getFirstName());
+    }
+
+    private long countBillioners() {
+        return dbUtils.readOnly(session -> session.createQuery("select count(bs) from Billioner bs", Long.class)
+                .getSingleResult());
+    }
+
+    private static Billioner billioner(String firstName) {
+        Billioner billioner = new Billioner();
+        billioner.setFirstName(firstName);
+        billioner.setLastName("Test");
+        billioner.setCareer("Testing");
+        return billioner;
+    }
+}
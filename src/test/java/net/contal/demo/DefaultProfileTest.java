@@ -0,0 +1,33 @@
+package net.contal.demo;
+
+import net.contal.demo.modal.Billioner;
+import net.contal.demo.services.DemoService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Starts the default profile on an empty database: the rows of data.sql must survive the pool's manual commits.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:bank-default;DB_CLOSE_DELAY=-1",
+        "spring.jpa.show-sql=false"
+})
+public class DefaultProfileTest {
+
+    @Autowired
+    DemoService demoService;
+
+    @Test
+    public void testSeedRowsAreCommitted() {
+        List<String> lastNames = demoService.test().stream()
+                .map(Billioner::getLastName)
+                .collect(Collectors.toList());
+        assertTrue(lastNames.containsAll(List.of("Dangote", "Gates", "Alakija")), lastNames.toString());
+    }
+}
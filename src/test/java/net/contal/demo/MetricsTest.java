@@ -0,0 +1,59 @@
+package net.contal.demo;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Drives a few requests through the API and checks their metrics reach the Prometheus scrape.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:bank-metrics;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false"
+})
+@AutoConfigureMockMvc
+public class MetricsTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Test
+    public void testPrometheusScrape() throws Exception {
+        String accountNumber = mockMvc.perform(post("/banks/create")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"firstName\":\"Metrics\",\"lastName\":\"Test\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        mockMvc.perform(post("/banks/transaction")
+                .param("accountNumber", accountNumber)
+                .param("amount", "25.0"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/banks/account").param("accountNumber", "1"))
+                .andExpect(status().isNotFound());
+
+        String scrape = mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertTrue(scrape.contains("bank_service_seconds_bucket{exception=\"none\",method=\"addTransactions\""));
+        assertTrue(scrape.contains("bank_service_seconds_count{exception=\"AccountNumberNotFoundException\",method=\"getAccountDetails\""));
+        assertTrue(scrape.contains("bank_db_statements_seconds_count{operation=\"addTransactions\""));
+        assertTrue(scrape.contains("bank_errors_total{exception=\"AccountNumberNotFoundException\",status=\"404\""));
+        assertTrue(scrape.contains("bank_db_sessions_opened_total"));
+        assertTrue(scrape.contains("bank_db_sessions_closed_total"));
+        assertTrue(scrape.contains("bank_db_sessions_open"));
+        assertTrue(scrape.contains("http_server_requests_seconds_bucket"));
+        assertTrue(scrape.contains("hikaricp_connections_active"));
+        assertTrue(scrape.contains("hibernate_statements_total"));
+        assertTrue(scrape.contains("cache_gets_total{cache=\"accounts\""));
+    }
+}
@@ -0,0 +1,38 @@
+package net.contal.demo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+import net.contal.demo.modal.TransactionRequest;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MoneyUtilTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testDecimalAmountsAreExactCents() {
+        assertEquals(1010L, MoneyUtil.toCents(new BigDecimal("10.1")));
+        assertEquals(-29L, MoneyUtil.toCents(new BigDecimal("-0.29")));
+        assertEquals(500L, MoneyUtil.toCents(new BigDecimal("5")));
+        assertEquals(new BigDecimal("0.30"), MoneyUtil.toDecimal(MoneyUtil.toCents(0.1) + MoneyUtil.toCents(0.2)));
+        assertThrows(IllegalArgumentException.class, () -> MoneyUtil.toCents(new BigDecimal("1.005")));
+        assertThrows(IllegalArgumentException.class, () -> MoneyUtil.toCents(new BigDecimal("1e30")));
+    }
+
+    @Test
+    public void testJsonAmountsConvertAtTheEdge() throws Exception {
+        TransactionRequest request = objectMapper.readValue("{\"accountNumber\":12345678,\"amount\":12.5}", TransactionRequest.class);
+        assertEquals(1250L, request.getAmountCents());
+        assertEquals(1250L, objectMapper.readValue("{\"amount\":\"12.50\"}", TransactionRequest.class).getAmountCents());
+        assertEquals("{\"accountNumber\":12345678,\"amount\":12.50}", objectMapper.writeValueAsString(request));
+
+        assertThrows(InvalidFormatException.class,
+                () -> objectMapper.readValue("{\"amount\":0.001}", TransactionRequest.class));
+        assertThrows(InvalidFormatException.class,
+                () -> objectMapper.readValue("{\"amount\":\"ten\"}", TransactionRequest.class));
+    }
+}
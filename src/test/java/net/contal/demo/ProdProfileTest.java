@@ -0,0 +1,44 @@
+package net.contal.demo;
+
+import net.contal.demo.modal.Billioner;
+import net.contal.demo.modal.CustomerAccount;
+import net.contal.demo.services.BankService;
+import net.contal.demo.services.DemoService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Starts the prod profile on an empty database: db/schema.sql must pass validation against the entities.
+ */
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:bank-prod;DB_CLOSE_DELAY=-1")
+@ActiveProfiles("prod")
+public class ProdProfileTest {
+
+    @Autowired
+    BankService bankService;
+
+    @Autowired
+    DemoService demoService;
+
+    @Test
+    public void testSchemaMatchesTheEntities() {
+        CustomerAccount account = new CustomerAccount();
+        account.setFirstName("Prod");
+        account.setLastName("Profile");
+        account.setAccountBalanceCents(500L);
+        int accountNumber = bankService.createAnAccount(account);
+        bankService.addTransactions(accountNumber, 250L);
+        assertEquals(750L, bankService.getBalance(accountNumber, true));
+
+        assertEquals(3, demoService.test().size());
+        Billioner billioner = new Billioner();
+        billioner.setFirstName("New");
+        billioner.setLastName("Billionaire");
+        demoService.saveBillioner(billioner);
+        assertEquals(4, demoService.test().size());
+    }
+}
@@ -0,0 +1,50 @@
+package net.contal.demo;
+
+import net.contal.demo.modal.CustomerAccount;
+import net.contal.demo.services.BankService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Upgrades a database whose ids came from identity columns, ahead of the sequences that replaced them.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:bank-migrations;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false"
+})
+public class SchemaMigrationsTest {
+
+    @Autowired
+    SchemaMigrations schemaMigrations;
+
+    @Autowired
+    BankService bankService;
+
+    @Autowired
+    DbUtils dbUtils;
+
+    @Test
+    public void testSequencesAreRestartedPastExistingIds() {
+        dbUtils.inTransaction(session -> {
+            session.createNativeQuery("insert into customer_account (id, account_number, first_name, last_name) " +
+                    "values (1000, 1, 'Identity', 'Row')").executeUpdate();
+            return session.createNativeQuery("alter sequence customer_account_seq restart with 1").executeUpdate();
+        });
+
+        schemaMigrations.migrate();
+        // a second run finds the sequence ahead and leaves it
+        schemaMigrations.migrate();
+
+        CustomerAccount account = new CustomerAccount();
+        account.setFirstName("After");
+        account.setLastName("Upgrade");
+        bankService.createAnAccount(account);
+        Number maxId = dbUtils.readOnly(session -> (Number) session
+                .createNativeQuery("select max(id) from customer_account").getSingleResult());
+        assertEquals(1001L, maxId.longValue());
+    }
+}
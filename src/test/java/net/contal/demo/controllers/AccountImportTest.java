@@ -0,0 +1,100 @@
+package net.contal.demo.controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.contal.demo.services.BankService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Uploads account imports in both formats, with chunks small enough that one upload spans several of them.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:bank-import;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "bank.import.chunk-size=3"
+})
+@AutoConfigureMockMvc
+public class AccountImportTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    BankService bankService;
+
+    @Test
+    public void testCsvImport() throws Exception {
+        List<JsonNode> results = importAccounts("text/csv", "firstName,lastName,accountBalance\n" +
+                "Ada,Lovelace,10.50\n" +
+                "\"Smith, Jr\",John,\n" +
+                "\n" +
+                "NoBalance,Only\n" +
+                "Bad,Amount,1.001\n" +
+                ",Missing,1\n" +
+                "Grace,Hopper,-1\n" +
+                "Alan,Turing,0.01\n");
+
+        assertEquals(7, results.size());
+        assertEquals(2, results.get(0).get("line").asLong());
+        assertEquals(1050L, bankService.getBalance(results.get(0).get("accountNumber").asInt(), true));
+        assertEquals("Smith, Jr", bankService.getAccountDetails(results.get(1).get("accountNumber").asInt()).getFirstName());
+        assertEquals(5, results.get(2).get("line").asLong());
+        assertTrue(results.get(2).has("accountNumber"));
+        assertTrue(results.get(3).has("error"));
+        assertTrue(results.get(4).has("error"));
+        assertTrue(results.get(5).has("error"));
+        assertEquals(9, results.get(6).get("line").asLong());
+        assertEquals(1L, bankService.getBalance(results.get(6).get("accountNumber").asInt()));
+    }
+
+    @Test
+    public void testNdjsonImport() throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            body.append("{\"firstName\":\"Bulk\",\"lastName\":\"Account").append(i).append("\",\"accountBalance\":").append(i).append("}\n");
+        }
+        body.append("{not json}\n");
+
+        List<JsonNode> results = importAccounts("application/x-ndjson", body.toString());
+
+        assertEquals(11, results.size());
+        for (int i = 0; i < 10; i++) {
+            int accountNumber = results.get(i).get("accountNumber").asInt();
+            assertEquals("Account" + i, bankService.getAccountDetails(accountNumber).getLastName());
+            assertEquals(i * 100L, bankService.getBalance(accountNumber, true));
+        }
+        assertTrue(results.get(10).get("error").asText().startsWith("Invalid JSON"));
+    }
+
+    @Test
+    public void testUnsupportedFormat() throws Exception {
+        mockMvc.perform(post("/banks/import").contentType("text/plain").content("Ada,Lovelace"))
+                .andExpect(status().isUnsupportedMediaType());
+    }
+
+    private List<JsonNode> importAccounts(String contentType, String body) throws Exception {
+        String response = mockMvc.perform(post("/banks/import").contentType(contentType).content(body))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        List<JsonNode> results = new ArrayList<>();
+        for (String line : response.split("\n")) {
+            results.add(objectMapper.readTree(line));
+        }
+        return results;
+    }
+}
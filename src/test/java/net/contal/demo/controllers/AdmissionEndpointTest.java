@@ -0,0 +1,71 @@
+package net.contal.demo.controllers;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Postings over the limit of their account get 429, until the limit is raised through /actuator/admission.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:bank-admission;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "bank.admission.account-rate=1",
+        "bank.admission.account-burst=2",
+        "bank.admission.max-wait-ms=0"
+})
+@AutoConfigureMockMvc
+public class AdmissionEndpointTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Test
+    public void testPostingsOverTheLimitAreRejected() throws Exception {
+        String accountNumber = mockMvc.perform(post("/banks/create")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"firstName\":\"Admission\",\"lastName\":\"Test\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        mockMvc.perform(posting(accountNumber)).andExpect(status().isOk());
+        mockMvc.perform(posting(accountNumber)).andExpect(status().isOk());
+        mockMvc.perform(posting(accountNumber))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+
+        mockMvc.perform(post("/actuator/admission")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"accountRate\":1000}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accountRate").value(1000.0))
+                .andExpect(jsonPath("$.accountBurst").value(2));
+        mockMvc.perform(posting(accountNumber)).andExpect(status().isOk());
+
+        mockMvc.perform(post("/actuator/admission")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"accountBurst\":0}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/actuator/admission"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accountBurst").value(2));
+    }
+
+    private static RequestBuilder posting(String accountNumber) {
+        return post("/banks/transaction")
+                .param("accountNumber", accountNumber)
+                .param("amount", "1.0");
+    }
+}
@@ -0,0 +1,86 @@
+package net.contal.demo.controllers;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Runs the /banks endpoints in async mode, where database work completes on the request pool.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:bank-async;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "bank.web.mode=async",
+        "bank.web.async.threads=4"
+})
+@AutoConfigureMockMvc
+public class AsyncBankControllerTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    ApplicationContext context;
+
+    @Test
+    public void testOnlyAsyncHandlersAreMapped() {
+        assertEquals(1, context.getBeanNamesForType(AsyncBankController.class).length);
+        assertEquals(0, context.getBeanNamesForType(BankController.class).length);
+    }
+
+    @Test
+    public void testRequestsCompleteOnThePool() throws Exception {
+        String accountNumber = performAsync(post("/banks/create")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"firstName\":\"Async\",\"lastName\":\"Test\",\"accountBalance\":10.0}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        performAsync(post("/banks/transaction")
+                .param("accountNumber", accountNumber)
+                .param("amount", "15.5"))
+                .andExpect(status().isOk());
+
+        performAsync(post("/banks/balance")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"accountNumber\":" + accountNumber + "}"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("25.50"));
+    }
+
+    @Test
+    public void testServiceErrorsKeepTheirStatus() throws Exception {
+        performAsync(post("/banks/account").param("accountNumber", "1"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testStatisticsAreAnsweredSynchronously() throws Exception {
+        mockMvc.perform(get("/banks/cache"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isOk());
+    }
+
+    private ResultActions performAsync(RequestBuilder requestBuilder) throws Exception {
+        MvcResult started = mockMvc.perform(requestBuilder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(started));
+    }
+}
@@ -0,0 +1,117 @@
+package net.contal.demo.controllers;
+
+import net.contal.demo.modal.CustomerAccount;
+import net.contal.demo.services.BankService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Retries postings with the same Idempotency-Key, one after the other and concurrently.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:bank-idempotency;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false"
+})
+@AutoConfigureMockMvc
+public class IdempotencyKeyTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    BankService bankService;
+
+    @Test
+    public void testRetryIsNotAppliedAgain() throws Exception {
+        int accountNumber = createAccount();
+        String key = UUID.randomUUID().toString();
+
+        mockMvc.perform(post("/banks/transaction").header("Idempotency-Key", key)
+                .param("accountNumber", String.valueOf(accountNumber)).param("amount", "2.50"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"));
+        mockMvc.perform(post("/banks/transaction").header("Idempotency-Key", key)
+                .param("accountNumber", String.valueOf(accountNumber)).param("amount", "2.50"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Idempotent-Replayed", "true"));
+
+        assertEquals(10250L, bankService.getBalance(accountNumber, true));
+    }
+
+    @Test
+    public void testKeyOfAnotherTransaction() throws Exception {
+        int accountNumber = createAccount();
+        String key = UUID.randomUUID().toString();
+        bankService.addTransactions(accountNumber, 100L, key);
+
+        mockMvc.perform(post("/banks/transaction").header("Idempotency-Key", key)
+                .param("accountNumber", String.valueOf(accountNumber)).param("amount", "2.00"))
+                .andExpect(status().isUnprocessableEntity());
+        assertEquals(10100L, bankService.getBalance(accountNumber, true));
+    }
+
+    @Test
+    public void testMalformedKey() throws Exception {
+        int accountNumber = createAccount();
+        char[] key = new char[256];
+        Arrays.fill(key, 'k');
+
+        mockMvc.perform(post("/banks/transaction").header("Idempotency-Key", new String(key))
+                .param("accountNumber", String.valueOf(accountNumber)).param("amount", "2.00"))
+                .andExpect(status().isBadRequest());
+        assertEquals(10000L, bankService.getBalance(accountNumber, true));
+    }
+
+    @Test
+    public void testConcurrentRetriesPostOnce() throws Exception {
+        int accountNumber = createAccount();
+        String key = UUID.randomUUID().toString();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<MvcResult>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                Callable<MvcResult> request = () -> mockMvc.perform(post("/banks/transaction").header("Idempotency-Key", key)
+                        .param("accountNumber", String.valueOf(accountNumber)).param("amount", "1.00"))
+                        .andExpect(status().isOk())
+                        .andReturn();
+                results.add(executor.submit(request));
+            }
+            int replayed = 0;
+            for (Future<MvcResult> result : results) {
+                replayed += result.get().getResponse().getHeader("Idempotent-Replayed") != null ? 1 : 0;
+            }
+            assertEquals(7, replayed);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(10100L, bankService.getBalance(accountNumber, true));
+    }
+
+    private int createAccount() {
+        CustomerAccount account = new CustomerAccount();
+        account.setFirstName("Idempotency");
+        account.setLastName("Test");
+        account.setAccountBalanceCents(10000L);
+        return bankService.createAnAccount(account);
+    }
+}
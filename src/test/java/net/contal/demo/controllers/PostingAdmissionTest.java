@@ -0,0 +1,174 @@
+package net.contal.demo.controllers;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.contal.demo.exceptions.ServiceException;
+import net.contal.demo.exceptions.TooManyRequestsException;
+import net.contal.demo.modal.AdmissionLimits;
+import net.contal.demo.modal.TransactionRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Token buckets per account and per node, on a clock that only moves when the test moves it.
+ */
+public class PostingAdmissionTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void testAccountIsLimitedAlone() {
+        // 10 per second, bursts of 3
+        PostingAdmission admission = admission(new AdmissionLimits(true, 10, 3, 1000, 1000, 0, 10));
+        for (int i = 0; i < 3; i++) {
+            admission.admit(1);
+        }
+        TooManyRequestsException error = assertThrows(TooManyRequestsException.class, () -> admission.admit(1));
+        assertEquals(1, error.getRetryAfterSeconds());
+        admission.admit(2);
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        admission.admit(1);
+        assertThrows(TooManyRequestsException.class, () -> admission.admit(1));
+
+        assertEquals(5, count("requests", "result", "admitted"));
+        assertEquals(2, count("rejections", "limit", "account"));
+    }
+
+    @Test
+    public void testRejectedRequestsGiveBackTheirTokens() {
+        // the account refills in a second, the node in 100ms
+        PostingAdmission admission = admission(new AdmissionLimits(true, 1, 2, 10, 2, 0, 10));
+        admission.admit(1);
+        admission.admit(2);
+        // the node is out of tokens, account 1 keeps the one it has left
+        assertThrows(TooManyRequestsException.class, () -> admission.admit(1));
+        assertEquals(1, count("rejections", "limit", "global"));
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        admission.admit(1);
+        assertThrows(TooManyRequestsException.class, () -> admission.admit(1));
+        assertEquals(1, count("rejections", "limit", "account"));
+    }
+
+    @Test
+    public void testNewLimitsApplyAtOnce() {
+        PostingAdmission admission = admission(new AdmissionLimits(true, 1, 1, 1000, 1000, 0, 10));
+        admission.admit(1);
+        assertThrows(TooManyRequestsException.class, () -> admission.admit(1));
+
+        admission.setLimits(new AdmissionLimits(true, 1000, 2, 1000, 1000, 0, 10));
+        admission.admit(1);
+        admission.admit(1);
+        assertThrows(TooManyRequestsException.class, () -> admission.admit(1));
+    }
+
+    @Test
+    public void testNewLimitsDuringRejectionsLeaveTheBucketsUsable() throws InterruptedException {
+        // the node refills in 200ms and nobody may wait, so once it is empty requests are rejected after reserving
+        AdmissionLimits limits = new AdmissionLimits(true, 1000, 1000, 10, 2, 1000, 0);
+        PostingAdmission admission = admission(limits);
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread rejected = new Thread(() -> {
+            for (int i = 0; running.get(); i++) {
+                try {
+                    // postings of different sizes, so a wrong refund is not undone by the next charge
+                    if (i % 2 == 0) {
+                        admission.admit(1);
+                    } else {
+                        admission.admit(1, 2);
+                    }
+                } catch (TooManyRequestsException e) {
+                    // expected
+                }
+            }
+        });
+        rejected.start();
+        for (int i = 0; i < 100_000; i++) {
+            admission.setLimits(limits);
+        }
+        running.set(false);
+        rejected.join();
+
+        // no request waits longer than the maximum, only a bucket refunded below empty asks for more
+        assertEquals(0, count("rejections", "limit", "global"));
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        admission.admit(2);
+    }
+
+    @Test
+    public void testInterruptedRequestsGiveBackTheirTokens() {
+        PostingAdmission admission = admission(new AdmissionLimits(true, 1000, 1000, 10, 1, 1000, 10));
+        admission.admit(1);
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(ServiceException.class, () -> admission.admit(1));
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+
+        // the node is full again once its first token is back, nothing waits
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        admission.admit(1);
+        assertEquals(2, count("requests", "result", "admitted"));
+        assertEquals(0, count("requests", "result", "delayed"));
+    }
+
+    @Test
+    public void testTransfersAndBatchesTakeATokenPerPosting() {
+        PostingAdmission admission = admission(new AdmissionLimits(true, 10, 3, 1000, 1000, 0, 10));
+        admission.admit(1, 2);
+        admission.admit(Arrays.asList(new TransactionRequest(1, 100L), new TransactionRequest(1, 100L)));
+        assertThrows(TooManyRequestsException.class, () -> admission.admit(1));
+        admission.admit(2);
+
+        // charged at most a burst, so it goes through once the account is idle
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        admission.admit(Arrays.asList(new TransactionRequest(3, 100L), new TransactionRequest(3, 100L),
+                new TransactionRequest(3, 100L), new TransactionRequest(3, 100L)));
+    }
+
+    @Test
+    public void testRequestsWaitForTheirTurnWhileTheQueueHasRoom() {
+        // a token every 20ms, waiting at most 50ms, one request at a time
+        PostingAdmission admission = admission(new AdmissionLimits(true, 50, 1, 1000, 1000, 50, 1));
+        admission.admit(1);
+        long start = System.nanoTime();
+        admission.admit(1);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(1, count("requests", "result", "delayed"));
+        assertEquals(0, meterRegistry.get("bank.admission.waiting").gauge().value());
+    }
+
+    @Test
+    public void testRequestsAreRejectedWhenTheQueueIsFull() {
+        PostingAdmission admission = admission(new AdmissionLimits(true, 50, 1, 1000, 1000, 50, 0));
+        admission.admit(1);
+        assertThrows(TooManyRequestsException.class, () -> admission.admit(1));
+        assertEquals(1, count("rejections", "limit", "queue"));
+    }
+
+    @Test
+    public void testDisabled() {
+        PostingAdmission admission = admission(new AdmissionLimits(false, 1, 1, 1, 1, 0, 0));
+        for (int i = 0; i < 10; i++) {
+            admission.admit(1);
+        }
+        assertEquals(0, count("requests", "result", "admitted"));
+    }
+
+    private PostingAdmission admission(AdmissionLimits limits) {
+        return new PostingAdmission(limits, 1000, meterRegistry, clock::get);
+    }
+
+    private double count(String name, String tag, String value) {
+        return meterRegistry.get("bank.admission." + name).tag(tag, value).functionCounter().count();
+    }
+}
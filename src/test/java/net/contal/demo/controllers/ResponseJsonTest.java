@@ -0,0 +1,93 @@
+package net.contal.demo.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import net.contal.demo.modal.CustomerAccount;
+import net.contal.demo.services.BankService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Account and transaction responses are projections, serialised with the same fields as the entities were.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:bank-response-json;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false"
+})
+@AutoConfigureMockMvc
+public class ResponseJsonTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    BankService bankService;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Test
+    public void testAfterburnerIsRegistered() {
+        assertTrue(objectMapper.getRegisteredModuleIds().contains(new AfterburnerModule().getTypeId()));
+    }
+
+    @Test
+    public void testAccountResponse() throws Exception {
+        int accountNumber = createAccount();
+        String expected = "{\"id\":" + bankService.getAccountDetails(accountNumber).getId() +
+                ",\"firstName\":\"Json\",\"lastName\":\"Test\",\"accountNumber\":" + accountNumber +
+                ",\"accountBalance\":100.25}";
+
+        mockMvc.perform(post("/banks/account").param("accountNumber", String.valueOf(accountNumber)))
+                .andExpect(status().isOk())
+                .andExpect(content().json(expected, true));
+    }
+
+    @Test
+    public void testTransactionResponses() throws Exception {
+        int accountNumber = createAccount();
+        bankService.addTransactions(accountNumber, -25L);
+        String today = LocalDate.now().toString();
+
+        mockMvc.perform(post("/banks/transactionsLastTen")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"accountNumber\":" + accountNumber + "}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].transactionAmount").value(-0.25))
+                .andExpect(jsonPath("$[0].transactionDate").value(today))
+                .andExpect(jsonPath("$[0].transactionTime").exists())
+                .andExpect(jsonPath("$[0].id").doesNotExist())
+                .andExpect(jsonPath("$[0].customerAccount").doesNotExist())
+                .andExpect(jsonPath("$[1].transactionAmount").value(100.25));
+
+        mockMvc.perform(get("/banks/transactions/history").param("accountNumber", String.valueOf(accountNumber)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.transactions.length()").value(2))
+                .andExpect(jsonPath("$.transactions[1].transactionAmount").value(100.25))
+                .andExpect(jsonPath("$.transactions[1].id").doesNotExist())
+                .andExpect(jsonPath("$.nextCursor").isEmpty());
+    }
+
+    private int createAccount() {
+        CustomerAccount account = new CustomerAccount();
+        account.setFirstName("Json");
+        account.setLastName("Test");
+        account.setAccountBalanceCents(10025L);
+        return bankService.createAnAccount(account);
+    }
+}
@@ -0,0 +1,120 @@
+package net.contal.demo.controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.contal.demo.modal.CustomerAccount;
+import net.contal.demo.services.BankService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Exports transactions in both formats, with chunks small enough that one export spans several of them.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:bank-export;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "bank.export.chunk-size=3",
+        "bank.export.fetch-size=2"
+})
+@AutoConfigureMockMvc
+public class TransactionExportTest {
+
+    private static final int TRANSACTIONS = 7;
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    BankService bankService;
+
+    @Test
+    public void testNdjsonAccountExport() throws Exception {
+        int accountNumber = createAccountWithTransactions();
+        createAccountWithTransactions();
+
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : export(get("/banks/transactions/export").param("accountNumber", String.valueOf(accountNumber)))
+                .split("\n")) {
+            lines.add(objectMapper.readTree(line));
+        }
+
+        // the opening balance, then the postings in time order
+        assertEquals(TRANSACTIONS + 1, lines.size());
+        assertEquals(100, lines.get(0).get("transactionAmount").asLong());
+        for (int i = 1; i <= TRANSACTIONS; i++) {
+            assertEquals(accountNumber, lines.get(i).get("accountNumber").asInt());
+            assertEquals(i, lines.get(i).get("transactionAmount").asLong());
+            assertTrue(lines.get(i).get("id").asLong() > lines.get(i - 1).get("id").asLong());
+        }
+    }
+
+    @Test
+    public void testCsvExportOfAllAccounts() throws Exception {
+        int first = createAccountWithTransactions();
+        int second = createAccountWithTransactions();
+
+        String[] lines = export(get("/banks/transactions/export").param("format", "csv")).split("\n");
+
+        assertEquals("id,accountNumber,transactionDate,transactionTime,transactionAmount", lines[0]);
+        long firstRows = 0;
+        long secondRows = 0;
+        long lastId = 0;
+        for (int i = 1; i < lines.length; i++) {
+            String[] fields = lines[i].split(",");
+            assertEquals(5, fields.length);
+            long id = Long.parseLong(fields[0]);
+            assertTrue(id > lastId);
+            lastId = id;
+            int accountNumber = Integer.parseInt(fields[1]);
+            firstRows += accountNumber == first ? 1 : 0;
+            secondRows += accountNumber == second ? 1 : 0;
+        }
+        assertEquals(TRANSACTIONS + 1, firstRows);
+        assertEquals(TRANSACTIONS + 1, secondRows);
+    }
+
+    @Test
+    public void testUnknownAccount() throws Exception {
+        mockMvc.perform(get("/banks/transactions/export").param("accountNumber", "1"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testUnsupportedFormat() throws Exception {
+        mockMvc.perform(get("/banks/transactions/export").param("format", "xml"))
+                .andExpect(status().isNotAcceptable());
+    }
+
+    private int createAccountWithTransactions() {
+        CustomerAccount account = new CustomerAccount();
+        account.setFirstName("Export");
+        account.setLastName("Test");
+        account.setAccountBalanceCents(10000);
+        int accountNumber = bankService.createAnAccount(account);
+        for (int i = 1; i <= TRANSACTIONS; i++) {
+            bankService.addTransactions(accountNumber, i * 100L);
+        }
+        return accountNumber;
+    }
+
+    private String export(MockHttpServletRequestBuilder request) throws Exception {
+        return mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+    }
+}
@@ -0,0 +1,140 @@
+package net.contal.demo.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.contal.demo.modal.CustomerAccount;
+import net.contal.demo.modal.TransactionDetails;
+import net.contal.demo.modal.TransactionRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Reads through the read model while postings are projected into it.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:bank-read-model;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "bank.read-model.enabled=true"
+})
+public class AccountReadModelTest {
+
+    @Autowired
+    BankService bankService;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    public void testReadYourWritesAfterEveryKindOfPosting() {
+        int accountNumber = createAccount(10000L);
+        int otherAccountNumber = createAccount(0L);
+        // loads the views, later postings reach them as events
+        assertEquals(10000L, bankService.getBalance(accountNumber, false, true));
+        assertEquals(0L, bankService.getBalance(otherAccountNumber, false, true));
+
+        assertTrue(bankService.addTransactions(accountNumber, 500L));
+        assertEquals(10500L, bankService.getBalance(accountNumber, false, true));
+
+        bankService.transfer(accountNumber, otherAccountNumber, 2500L);
+        bankService.addTransactionsBatch(Arrays.asList(
+                new TransactionRequest(accountNumber, -1000L),
+                new TransactionRequest(otherAccountNumber, 300L)));
+
+        assertEquals(7000L, bankService.getBalance(accountNumber, false, true));
+        assertEquals(7000L, bankService.getAccountDetails(accountNumber, true).getAccountBalanceCents());
+        assertEquals(2800L, bankService.getBalance(otherAccountNumber, false, true));
+        assertEquals(7000L, bankService.getDateBalance(accountNumber, null, null, true).get(LocalDate.now()).longValue());
+        assertEquals(bankService.getBalance(accountNumber, true), bankService.getBalance(accountNumber, false, true));
+
+        List<TransactionDetails> recent = bankService.getLastTenTransactions(accountNumber, true);
+        assertEquals(4, recent.size());
+        assertEquals(-1000L, recent.get(0).getTransactionAmountCents());
+        assertEquals(-2500L, recent.get(1).getTransactionAmountCents());
+        assertEquals(10000L, recent.get(3).getTransactionAmountCents());
+
+        assertTrue(meterRegistry.get("bank.readmodel.loads").functionCounter().count() >= 2);
+        assertNotNull(meterRegistry.get("bank.readmodel.lag").timeGauge());
+    }
+
+    @Test
+    public void testConcurrentPostingsConverge() throws Exception {
+        int accountNumber = createAccount(0L);
+        bankService.getBalance(accountNumber);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        assertTrue(bankService.addTransactions(accountNumber, 100L));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(40000L, bankService.getBalance(accountNumber, false, true));
+        List<TransactionDetails> recent = bankService.getLastTenTransactions(accountNumber, true);
+        assertEquals(10, recent.size());
+        for (int i = 1; i < recent.size(); i++) {
+            assertTrue(recent.get(i - 1).getId() > recent.get(i).getId());
+        }
+    }
+
+    @Test
+    public void testViewWaitsForMissingVersion() {
+        CustomerAccount account = new CustomerAccount();
+        account.setAccountNumber(1);
+        account.setLedgerVersion(3);
+        account.setAccountBalanceCents(1000L);
+        AccountReadModel.AccountView view = AccountReadModel.AccountView.of(account, Collections.emptyList(),
+                Collections.emptyList());
+        long now = System.nanoTime();
+
+        // version 5 arrives first and waits for version 4, version 3 is already in the view
+        assertTrue(view.apply(posting(5, 200L, 1300L), now - 1));
+        assertTrue(view.isMissingVersion());
+        assertEquals(1000L, view.getBalance());
+        assertTrue(view.apply(posting(3, 500L, 1000L), now - 1));
+        assertTrue(view.apply(posting(4, 100L, 1100L), now - 1));
+        assertFalse(view.isMissingVersion());
+        assertEquals(1300L, view.getBalance());
+        assertEquals(2, view.getRecentTransactions().size());
+
+        // a version that never arrives drops the view once the gap times out
+        assertFalse(view.apply(posting(7, 100L, 1500L), System.nanoTime() + 1));
+    }
+
+    private static AccountReadModel.Posting posting(long version, long amount, long closingBalance) {
+        AccountReadModel.Posting posting = new AccountReadModel.Posting(1, version, version, LocalDateTime.now(),
+                amount, closingBalance);
+        posting.publishedNanos = System.nanoTime();
+        return posting;
+    }
+
+    private int createAccount(long openingBalance) {
+        CustomerAccount account = new CustomerAccount();
+        account.setFirstName("Read");
+        account.setLastName("Model");
+        account.setAccountBalanceCents(openingBalance);
+        return bankService.createAnAccount(account);
+    }
+}
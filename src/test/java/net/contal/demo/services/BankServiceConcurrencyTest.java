@@ -0,0 +1,156 @@
+package net.contal.demo.services;
+
+import net.contal.demo.exceptions.AccountNumberNotFoundException;
+import net.contal.demo.exceptions.InsufficientBalanceException;
+import net.contal.demo.exceptions.InvalidTransferException;
+import net.contal.demo.modal.CustomerAccount;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hammers a single account, or a pair of accounts, from many threads against an in-memory H2 database.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:bank-concurrency;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false"
+})
+public class BankServiceConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int POSTINGS_PER_THREAD = 100;
+
+    private final Logger logger = LoggerFactory.getLogger(BankServiceConcurrencyTest.class);
+
+    @Autowired
+    BankService bankService;
+
+    @Test
+    public void testConcurrentCreditsAreNotLost() throws Exception {
+        int accountNumber = createAccount(0L);
+
+        run("credits", () -> {
+            for (int i = 0; i < POSTINGS_PER_THREAD; i++) {
+                assertTrue(bankService.addTransactions(accountNumber, 100L));
+            }
+            return null;
+        });
+
+        long expected = THREADS * POSTINGS_PER_THREAD * 100L;
+        assertEquals(expected, bankService.getBalance(accountNumber));
+        assertEquals(expected, bankService.getBalance(accountNumber, true));
+        assertEquals(expected, bankService.getDateBalance(accountNumber).get(LocalDate.now()).longValue());
+    }
+
+    @Test
+    public void testConcurrentDebitsCannotOverdraw() throws Exception {
+        long openingBalance = 50000L;
+        int accountNumber = createAccount(openingBalance);
+        AtomicInteger applied = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        run("debits", () -> {
+            for (int i = 0; i < POSTINGS_PER_THREAD; i++) {
+                try {
+                    bankService.addTransactions(accountNumber, -100L);
+                    applied.incrementAndGet();
+                } catch (InsufficientBalanceException e) {
+                    rejected.incrementAndGet();
+                }
+            }
+            return null;
+        });
+
+        int affordable = (int) (openingBalance / 100);
+        assertEquals(affordable, applied.get());
+        assertEquals(THREADS * POSTINGS_PER_THREAD - affordable, rejected.get());
+        assertEquals(0L, bankService.getBalance(accountNumber));
+        assertEquals(0L, bankService.getBalance(accountNumber, true));
+    }
+
+    @Test
+    public void testOpposingTransfersDoNotDeadlock() throws Exception {
+        long openingBalance = 100000L;
+        int first = createAccount(openingBalance);
+        int second = createAccount(openingBalance);
+        AtomicInteger thread = new AtomicInteger();
+
+        // half of the threads move money one way, the other half the other way
+        run("transfers", () -> {
+            boolean forward = thread.getAndIncrement() % 2 == 0;
+            for (int i = 0; i < POSTINGS_PER_THREAD; i++) {
+                if (forward) {
+                    bankService.transfer(first, second, 100L);
+                } else {
+                    bankService.transfer(second, first, 100L);
+                }
+            }
+            return null;
+        });
+
+        assertEquals(openingBalance, bankService.getBalance(first));
+        assertEquals(openingBalance, bankService.getBalance(second));
+        assertEquals(openingBalance, bankService.getBalance(first, true));
+        assertEquals(openingBalance, bankService.getBalance(second, true));
+    }
+
+    @Test
+    public void testRejectedTransfersChangeNothing() {
+        int first = createAccount(1000L);
+        int second = createAccount(0L);
+
+        assertThrows(InsufficientBalanceException.class, () -> bankService.transfer(first, second, 1001L));
+        assertThrows(AccountNumberNotFoundException.class, () -> bankService.transfer(first, -1, 100L));
+        assertThrows(InvalidTransferException.class, () -> bankService.transfer(first, first, 100L));
+        assertThrows(InvalidTransferException.class, () -> bankService.transfer(first, second, 0L));
+        assertEquals(1000L, bankService.getBalance(first, true));
+        assertEquals(0L, bankService.getBalance(second, true));
+
+        bankService.transfer(first, second, 1000L);
+        assertEquals(0L, bankService.getBalance(first));
+        assertEquals(1000L, bankService.getBalance(second));
+    }
+
+    private int createAccount(long openingBalance) {
+        CustomerAccount account = new CustomerAccount();
+        account.setFirstName("Hot");
+        account.setLastName("Account");
+        account.setAccountBalanceCents(openingBalance);
+        return bankService.createAnAccount(account);
+    }
+
+    private void run(String name, Callable<Void> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            long start = System.nanoTime();
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<Void> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+            long elapsed = System.nanoTime() - start;
+            logger.info("{}: {} operations from {} threads, {} operations/s", name,
+                    THREADS * POSTINGS_PER_THREAD, THREADS,
+                    (long) (THREADS * POSTINGS_PER_THREAD / (elapsed / 1_000_000_000.0)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package net.contal.demo.services;
+
+import net.contal.demo.exceptions.AccountNumberNotFoundException;
+import net.contal.demo.exceptions.InvalidCursorException;
+import net.contal.demo.modal.CustomerAccount;
+import net.contal.demo.modal.TransactionDetails;
+import net.contal.demo.modal.TransactionPage;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pages through a transaction history against an in-memory H2 database.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:bank-history;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false"
+})
+public class BankServiceHistoryTest {
+
+    private static final int TRANSACTIONS = 25;
+
+    @Autowired
+    BankService bankService;
+
+    @Test
+    public void testPagesCoverHistoryNewestFirst() {
+        int accountNumber = createAccount();
+        for (int i = 1; i <= TRANSACTIONS; i++) {
+            bankService.addTransactions(accountNumber, (long) i);
+        }
+
+        List<Long> amounts = new ArrayList<>();
+        List<Integer> pageSizes = new ArrayList<>();
+        String cursor = null;
+        do {
+            TransactionPage page = bankService.getTransactionHistory(accountNumber, cursor, 10);
+            pageSizes.add(page.getTransactions().size());
+            for (TransactionDetails transaction : page.getTransactions()) {
+                amounts.add(transaction.getTransactionAmountCents());
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        assertEquals(List.of(10, 10, 5), pageSizes);
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            assertEquals(TRANSACTIONS - i, amounts.get(i).longValue());
+        }
+        assertEquals(amounts.subList(0, 10), transactionAmounts(bankService.getLastTenTransactions(accountNumber)));
+    }
+
+    @Test
+    public void testDefaultPageSize() {
+        int accountNumber = createAccount();
+        for (int i = 1; i <= TRANSACTIONS; i++) {
+            bankService.addTransactions(accountNumber, 100L);
+        }
+
+        TransactionPage page = bankService.getTransactionHistory(accountNumber, null, null);
+        assertEquals(20, page.getTransactions().size());
+        assertNotNull(page.getNextCursor());
+    }
+
+    @Test
+    public void testInvalidCursor() {
+        int accountNumber = createAccount();
+        assertThrows(InvalidCursorException.class,
+                () -> bankService.getTransactionHistory(accountNumber, "not-a-cursor", 10));
+    }
+
+    @Test
+    public void testUnknownAccount() {
+        assertThrows(AccountNumberNotFoundException.class,
+                () -> bankService.getTransactionHistory(-1, null, 10));
+    }
+
+    private int createAccount() {
+        CustomerAccount account = new CustomerAccount();
+        account.setFirstName("History");
+        account.setLastName("Test");
+        return bankService.createAnAccount(account);
+    }
+
+    private static List<Long> transactionAmounts(List<TransactionDetails> transactions) {
+        List<Long> amounts = new ArrayList<>();
+        for (TransactionDetails transaction : transactions) {
+            amounts.add(transaction.getTransactionAmountCents());
+        }
+        return amounts;
+    }
+}
@@ -1,24 +1,39 @@
 package net.contal.demo.services;
 
 
+import net.contal.demo.AccountNumberAllocator;
 import net.contal.demo.DbUtils;
+import net.contal.demo.exceptions.AccountNumberNotFoundException;
+import net.contal.demo.exceptions.InsufficientBalanceException;
+import net.contal.demo.exceptions.InvalidAmountException;
+import net.contal.demo.modal.AccountDetails;
 import net.contal.demo.modal.BankTransaction;
 import net.contal.demo.modal.CustomerAccount;
+import net.contal.demo.modal.DailyBalance;
+import net.contal.demo.modal.TransactionDetails;
+import net.contal.demo.modal.TransactionRequest;
+import net.contal.demo.modal.TransactionResult;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import javax.persistence.LockModeType;
 import javax.persistence.NoResultException;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import static org.hibernate.validator.internal.util.Contracts.assertNotNull;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.*;
 
@@ -28,6 +43,12 @@ public class BankServiceTest {
     @Mock
     private DbUtils dbUtils;
 
+    @Mock
+    private AccountNumberAllocator accountNumberAllocator;
+
+    @Spy
+    private AccountCache accountCache = new AccountCache(100, 30);
+
     @Mock
     private Session session;
 
@@ -43,6 +64,8 @@ public class BankServiceTest {
     @BeforeEach
     void setUp() {
         when(dbUtils.openASession()).thenReturn(session);
+        when(dbUtils.inTransaction(any())).thenCallRealMethod();
+        when(dbUtils.readOnly(any())).thenCallRealMethod();
         when(session.getTransaction()).thenReturn(transaction);
 
         mockAccount = new CustomerAccount();
@@ -51,36 +74,83 @@ public class BankServiceTest {
 
     @Test
     public void testCreateAccountSuccess() {
+        when(accountNumberAllocator.nextAccountNumber()).thenReturn(MOCK_ACCOUNT_NUMBER);
         CustomerAccount newAccount = new CustomerAccount();
         int accountNumber = bankService.createAnAccount(newAccount);
-        assertNotNull(accountNumber);
+        assertEquals(MOCK_ACCOUNT_NUMBER, accountNumber);
+    }
+
+    @Test
+    public void testCreateAccountRetriesTakenAccountNumber() {
+        when(accountNumberAllocator.nextAccountNumber()).thenReturn(MOCK_ACCOUNT_NUMBER, MOCK_ACCOUNT_NUMBER + 1);
+        doThrow(new ConstraintViolationException("duplicate account number", null, "uk_account_number"))
+                .doNothing()
+                .when(transaction).commit();
+
+        int accountNumber = bankService.createAnAccount(new CustomerAccount());
+        assertEquals(MOCK_ACCOUNT_NUMBER + 1, accountNumber);
+        verify(session, times(2)).close();
     }
 
 
     @Test
     public void testSuccessfulTransaction() {
 
-        org.hibernate.query.Query<CustomerAccount> query = mock(org.hibernate.query.Query.class);
-        when(session.createQuery(anyString(), eq(CustomerAccount.class))).thenReturn(query);
-        when(query.setParameter(anyString(), anyInt())).thenReturn(query);
-        when(query.getSingleResult()).thenReturn(mockAccount);
+        org.hibernate.query.Query<Long> query = mock(org.hibernate.query.Query.class);
+        when(session.createQuery(anyString(), eq(Long.class))).thenReturn(query);
+        when(query.setParameter(anyString(), any())).thenReturn(query);
+        when(query.getSingleResult()).thenReturn(1L);
+
+        // closing balance in cents and ledger version
+        org.hibernate.query.Query<Object[]> state = mock(org.hibernate.query.Query.class);
+        when(session.createQuery(anyString(), eq(Object[].class))).thenReturn(state);
+        when(state.setParameter(anyString(), any())).thenReturn(state);
+        when(state.getSingleResult()).thenReturn(new Object[]{5000L, 1L});
 
-        boolean result = bankService.addTransactions(MOCK_ACCOUNT_NUMBER, 50.0);
+        org.hibernate.query.Query update = mock(org.hibernate.query.Query.class);
+        when(session.createQuery(anyString())).thenReturn(update);
+        when(update.setParameter(anyString(), any())).thenReturn(update);
+        when(update.executeUpdate()).thenReturn(1);
+
+        boolean result = bankService.addTransactions(MOCK_ACCOUNT_NUMBER, 5000L);
 
         assertTrue(result);
-        verify(session, times(1)).createQuery(anyString(), eq(CustomerAccount.class));
+        // account balance and daily balance
+        verify(update, times(2)).executeUpdate();
+        verify(session, times(1)).save(any(BankTransaction.class));
+        verify(session, never()).save(any(DailyBalance.class));
+        verify(accountCache).invalidate(MOCK_ACCOUNT_NUMBER);
+    }
+
+    @Test
+    public void testInsufficientBalanceTransaction() {
+
+        org.hibernate.query.Query<Long> query = mock(org.hibernate.query.Query.class);
+        when(session.createQuery(anyString(), eq(Long.class))).thenReturn(query);
+        when(query.setParameter(anyString(), anyInt())).thenReturn(query);
+        when(query.getSingleResult()).thenReturn(1L);
+
+        org.hibernate.query.Query update = mock(org.hibernate.query.Query.class);
+        when(session.createQuery(anyString())).thenReturn(update);
+        when(update.setParameter(anyString(), any())).thenReturn(update);
+        when(update.executeUpdate()).thenReturn(0);
+        when(session.getTransaction().isActive()).thenReturn(true);
+
+        assertThrows(InsufficientBalanceException.class, () -> bankService.addTransactions(MOCK_ACCOUNT_NUMBER, -5000L));
+        verify(session, never()).save(any(BankTransaction.class));
+        verify(transaction, times(1)).rollback();
     }
 
     @Test
     public void testAccountNumberNotFoundTransaction() {
 
-        org.hibernate.query.Query<CustomerAccount> query = mock(org.hibernate.query.Query.class);
-        when(session.createQuery(anyString(), eq(CustomerAccount.class))).thenReturn(query);
+        org.hibernate.query.Query<Long> query = mock(org.hibernate.query.Query.class);
+        when(session.createQuery(anyString(), eq(Long.class))).thenReturn(query);
         when(query.setParameter(anyString(), anyInt())).thenReturn(query);
         when(query.getSingleResult()).thenThrow(new NoResultException());
         when(session.getTransaction().isActive()).thenReturn(true);
 
-        boolean result = bankService.addTransactions(12345679, 50.0);
+        boolean result = bankService.addTransactions(12345679, 5000L);
 
         assertFalse(result);
         verify(transaction, times(1)).rollback();
@@ -89,62 +159,149 @@ public class BankServiceTest {
     @Test
     public void testAmountZeroTransaction() {
 
-        org.hibernate.query.Query<CustomerAccount> query = mock(org.hibernate.query.Query.class);
-        when(session.createQuery(anyString(), eq(CustomerAccount.class))).thenReturn(query);
+        org.hibernate.query.Query<Long> query = mock(org.hibernate.query.Query.class);
+        when(session.createQuery(anyString(), eq(Long.class))).thenReturn(query);
         when(query.setParameter(anyString(), anyInt())).thenReturn(query);
         when(query.getSingleResult()).thenThrow(new NoResultException());
 
-        boolean result = bankService.addTransactions(12345679, 0.0);
+        boolean result = bankService.addTransactions(12345679, 0L);
 
         assertFalse(result);
     }
 
+    @Test
+    public void testBatchTransactionsReportPerItemResults() {
+        mockAccount.setAccountBalanceCents(10000L);
+
+        org.hibernate.query.Query<CustomerAccount> query = mock(org.hibernate.query.Query.class);
+        when(session.createQuery(anyString(), eq(CustomerAccount.class))).thenReturn(query);
+        when(query.setParameterList(anyString(), anyCollection())).thenReturn(query);
+        when(query.setLockMode(any(LockModeType.class))).thenReturn(query);
+        when(query.getResultList()).thenReturn(List.of(mockAccount));
+
+        org.hibernate.query.Query dailyBalanceUpdate = mock(org.hibernate.query.Query.class);
+        when(session.createQuery(anyString())).thenReturn(dailyBalanceUpdate);
+        when(dailyBalanceUpdate.setParameter(anyString(), any())).thenReturn(dailyBalanceUpdate);
+        when(dailyBalanceUpdate.executeUpdate()).thenReturn(0);
+
+        List<TransactionResult> results = bankService.addTransactionsBatch(Arrays.asList(
+                new TransactionRequest(MOCK_ACCOUNT_NUMBER, 5000L),
+                new TransactionRequest(MOCK_ACCOUNT_NUMBER, -50000L),
+                new TransactionRequest(12345679, 1000L),
+                new TransactionRequest(MOCK_ACCOUNT_NUMBER, 0L)));
+
+        assertEquals(TransactionResult.Status.APPLIED, results.get(0).getStatus());
+        assertEquals(TransactionResult.Status.INSUFFICIENT_BALANCE, results.get(1).getStatus());
+        assertEquals(TransactionResult.Status.ACCOUNT_NOT_FOUND, results.get(2).getStatus());
+        assertEquals(TransactionResult.Status.INVALID_AMOUNT, results.get(3).getStatus());
+        assertEquals(15000L, mockAccount.getAccountBalanceCents());
+        verify(session, times(1)).save(any(BankTransaction.class));
+        verify(session, times(1)).save(any(DailyBalance.class));
+        verify(transaction, times(1)).commit();
+    }
+
+    @Test
+    public void testBatchWithMissingEntryIsRejected() {
+        assertThrows(InvalidAmountException.class, () -> bankService.addTransactionsBatch(Arrays.asList(
+                new TransactionRequest(MOCK_ACCOUNT_NUMBER, 5000L), null)));
+
+        verify(session, never()).save(any());
+    }
+
     @Test
     public void testGetBalanceSuccess() {
-        org.hibernate.query.Query<Double> query = mock(org.hibernate.query.Query.class);
+        org.hibernate.query.Query<AccountDetails> query = mock(org.hibernate.query.Query.class);
 
-        Double value = 100.0;
-        when(session.createQuery(anyString(), eq(Double.class))).thenReturn(query);
+        long value = 10000L;
+        mockAccount.setAccountBalanceCents(value);
+        when(session.createQuery(anyString(), eq(AccountDetails.class))).thenReturn(query);
         when(query.setParameter(anyString(), anyInt())).thenReturn(query);
-        when(query.getSingleResult()).thenReturn(value);
-        double balance = bankService.getBalance(MOCK_ACCOUNT_NUMBER);
+        when(query.uniqueResult()).thenReturn(AccountDetails.of(mockAccount));
+        long balance = bankService.getBalance(MOCK_ACCOUNT_NUMBER);
 
-        assertEquals(balance, value);
+        assertEquals(value, balance);
 
+        // the second read is served by the account cache
+        assertEquals(value, bankService.getBalance(MOCK_ACCOUNT_NUMBER));
+        verify(session, times(1)).createQuery(anyString(), eq(AccountDetails.class));
+        assertEquals(1, accountCache.getStats().getHits());
+    }
+
+    @Test
+    public void testGetBalanceVerifySumsTransactions() {
+        org.hibernate.query.Query<Long> query = mock(org.hibernate.query.Query.class);
+
+        when(session.createQuery(anyString(), eq(Long.class))).thenReturn(query);
+        when(query.setParameter(anyString(), anyInt())).thenReturn(query);
+        when(query.getSingleResult()).thenReturn(10000L, 9000L);
+        long balance = bankService.getBalance(MOCK_ACCOUNT_NUMBER, true);
+
+        assertEquals(9000L, balance);
+        verify(session, times(2)).createQuery(anyString(), eq(Long.class));
+    }
+
+    @Test
+    public void testGetBalanceAccountNumberNotFound() {
+        org.hibernate.query.Query<AccountDetails> query = mock(org.hibernate.query.Query.class);
+
+        when(session.createQuery(anyString(), eq(AccountDetails.class))).thenReturn(query);
+        when(query.setParameter(anyString(), anyInt())).thenReturn(query);
+        when(query.uniqueResult()).thenReturn(null);
+
+        assertThrows(AccountNumberNotFoundException.class, () -> bankService.getBalance(12345679));
     }
 
     @Test
     public void testGetDateBalanceSuccess() {
 
-        BankTransaction mockTransaction = new BankTransaction();
-        mockTransaction.setTransactionAmount(100.0);
-        mockTransaction.setTransactionDate(LocalDate.of(2024, 9, 10));
-        mockTransaction.setCustomerAccount(mockAccount);
-        List<BankTransaction> mockTransactions = List.of(mockTransaction);
+        List<DailyBalance> mockDailyBalances = List.of(
+                new DailyBalance(MOCK_ACCOUNT_NUMBER, LocalDate.of(2024, 9, 10), 10000L, 10000L),
+                new DailyBalance(MOCK_ACCOUNT_NUMBER, LocalDate.of(2024, 9, 12), -4000L, 6000L));
 
-        org.hibernate.query.Query<BankTransaction> query = mock(org.hibernate.query.Query.class);
+        org.hibernate.query.Query<DailyBalance> query = mock(org.hibernate.query.Query.class);
 
-        when(session.createQuery(anyString(), eq(BankTransaction.class)))
+        when(session.createQuery(anyString(), eq(DailyBalance.class)))
                 .thenReturn(query);
         when(query.setParameter(anyString(), anyInt())).thenReturn(query);
-        when(query.getResultList()).thenReturn(mockTransactions);
-        Map<LocalDate, Double> dateBalance = bankService.getDateBalance(12345678);
+        when(query.getResultList()).thenReturn(mockDailyBalances);
+        Map<LocalDate, Long> dateBalance = bankService.getDateBalance(12345678);
 
-        assertEquals(dateBalance.size(), mockTransactions.size());
+        assertEquals(dateBalance.size(), mockDailyBalances.size());
+        assertEquals(6000L, dateBalance.get(LocalDate.of(2024, 9, 12)).longValue());
 
     }
 
+    @Test
+    public void testEmptyDateRangeIsReadWithoutLocking() {
+        org.hibernate.query.Query<DailyBalance> query = mock(org.hibernate.query.Query.class);
+        when(session.createQuery(anyString(), eq(DailyBalance.class))).thenReturn(query);
+        when(query.setParameter(anyString(), any())).thenReturn(query);
+        when(query.getResultList()).thenReturn(Collections.emptyList());
+
+        // the account has daily balances, just none in the range
+        org.hibernate.query.Query<Long> ids = mock(org.hibernate.query.Query.class);
+        when(session.createQuery(anyString(), eq(Long.class))).thenReturn(ids);
+        when(ids.setParameter(anyString(), anyInt())).thenReturn(ids);
+        when(ids.setMaxResults(anyInt())).thenReturn(ids);
+        when(ids.getResultList()).thenReturn(List.of(1L));
+
+        LocalDate day = LocalDate.of(2024, 9, 11);
+        assertTrue(bankService.getDateBalance(MOCK_ACCOUNT_NUMBER, day, day).isEmpty());
+
+        verify(dbUtils, never()).inTransaction(any());
+        verify(session, never()).createQuery(anyString(), eq(CustomerAccount.class));
+    }
 
     @Test
     public void testAccountDetailsSuccess() {
 
-        org.hibernate.query.Query<CustomerAccount> query = mock(org.hibernate.query.Query.class);
+        org.hibernate.query.Query<AccountDetails> query = mock(org.hibernate.query.Query.class);
 
-        when(session.createQuery(anyString(), eq(CustomerAccount.class)))
+        when(session.createQuery(anyString(), eq(AccountDetails.class)))
                 .thenReturn(query);
         when(query.setParameter(anyString(), anyInt())).thenReturn(query);
-        when(query.getSingleResult()).thenReturn(mockAccount);
-        CustomerAccount accountDetails = bankService.getAccountDetails(MOCK_ACCOUNT_NUMBER);
+        when(query.uniqueResult()).thenReturn(AccountDetails.of(mockAccount));
+        AccountDetails accountDetails = bankService.getAccountDetails(MOCK_ACCOUNT_NUMBER);
 
         assertEquals(accountDetails.getAccountNumber(), mockAccount.getAccountNumber());
 
@@ -154,23 +311,22 @@ public class BankServiceTest {
     @Test
     public void testLastTenTransactionsSuccess() {
 
-        BankTransaction mockTransaction = new BankTransaction();
-        mockTransaction.setTransactionAmount(100.0);
-        mockTransaction.setTransactionDate(LocalDate.of(2024, 9, 10));
-        mockTransaction.setCustomerAccount(mockAccount);
-        List<BankTransaction> mockTransactions = List.of(mockTransaction);
+        TransactionDetails mockTransaction = new TransactionDetails(1L, 10000L, LocalDate.of(2024, 9, 10),
+                LocalDate.of(2024, 9, 10).atStartOfDay());
+        List<TransactionDetails> mockTransactions = List.of(mockTransaction);
 
-        org.hibernate.query.Query<BankTransaction> query = mock(org.hibernate.query.Query.class);
+        org.hibernate.query.Query<TransactionDetails> query = mock(org.hibernate.query.Query.class);
 
-        when(session.createQuery(anyString(), eq(BankTransaction.class))).thenReturn(query);
-        when(query.setParameter(anyString(), anyInt())).thenReturn(query);
-        when(query.setMaxResults(10)).thenReturn(query);
-        when(query.getResultList()).thenReturn(mockTransactions);
+        // the table, then the archive
+        when(session.createQuery(anyString(), eq(TransactionDetails.class))).thenReturn(query);
+        when(query.setParameter(anyString(), any())).thenReturn(query);
+        when(query.setMaxResults(anyInt())).thenReturn(query);
+        when(query.getResultList()).thenReturn(mockTransactions, Collections.emptyList());
 
-        List<BankTransaction> last10Transactions = bankService.getLastTenTransactions(MOCK_ACCOUNT_NUMBER);
+        List<TransactionDetails> last10Transactions = bankService.getLastTenTransactions(MOCK_ACCOUNT_NUMBER);
 
         assertEquals(last10Transactions.size(), mockTransactions.size());
-        assertEquals(last10Transactions.get(0).getCustomerAccount().getAccountNumber(), MOCK_ACCOUNT_NUMBER);
+        assertEquals(10000L, last10Transactions.get(0).getTransactionAmountCents());
 
     }
 }
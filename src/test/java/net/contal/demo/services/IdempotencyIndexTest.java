@@ -0,0 +1,65 @@
+package net.contal.demo.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.contal.demo.DbUtils;
+import net.contal.demo.modal.CustomerAccount;
+import net.contal.demo.modal.IdempotencyRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:bank-idempotency-index;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false"
+})
+public class IdempotencyIndexTest {
+
+    @Autowired
+    BankService bankService;
+
+    @Autowired
+    DbUtils dbUtils;
+
+    @Test
+    public void testBloomFilterHasNoFalseNegatives() {
+        IdempotencyIndex.BloomFilter filter = new IdempotencyIndex.BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add("key-" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(filter.mightContain("key-" + i));
+            falsePositives += filter.mightContain("other-" + i) ? 1 : 0;
+        }
+        assertTrue(falsePositives < 300, "false positives: " + falsePositives);
+    }
+
+    @Test
+    public void testRecordedKeysSurviveRestart() {
+        CustomerAccount account = new CustomerAccount();
+        account.setFirstName("Idempotency");
+        account.setLastName("Index");
+        account.setAccountBalanceCents(10000L);
+        int accountNumber = bankService.createAnAccount(account);
+        String key = UUID.randomUUID().toString();
+        long transactionId = bankService.addTransactions(accountNumber, 300L, key).getTransactionId();
+
+        // a new index only knows the key through its filter, filled from the stored records
+        IdempotencyIndex restarted = new IdempotencyIndex(dbUtils, new SimpleMeterRegistry(), 3600, 4, 100, 1000, 0.01);
+        restarted.start();
+        try {
+            IdempotencyRecord record = restarted.find(key);
+            assertNotNull(record);
+            assertEquals(transactionId, record.getTransactionId());
+            assertEquals(accountNumber, record.getAccountNumber());
+            assertNull(restarted.find(UUID.randomUUID().toString()));
+        } finally {
+            restarted.stop();
+        }
+    }
+}
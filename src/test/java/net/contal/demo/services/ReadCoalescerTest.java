@@ -0,0 +1,135 @@
+package net.contal.demo.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.contal.demo.exceptions.AccountNumberNotFoundException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Concurrent identical reads run one query, while a write lets later reads run their own.
+ */
+public class ReadCoalescerTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ReadCoalescer coalescer = new ReadCoalescer(meterRegistry, true);
+
+    @Test
+    public void testConcurrentReadsShareOneQuery() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger queries = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<Long> leader = executor.submit(() -> coalescer.read(ReadCoalescer.Read.BALANCE, 1, null, () -> {
+                started.countDown();
+                await(release);
+                return 100L + queries.incrementAndGet();
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            List<Future<Long>> followers = new ArrayList<>();
+            for (int i = 0; i < 7; i++) {
+                followers.add(executor.submit(() -> coalescer.read(ReadCoalescer.Read.BALANCE, 1, null,
+                        () -> 200L + queries.incrementAndGet())));
+            }
+            // another account and another read are not collapsed into the balance of account 1
+            assertEquals(301L, coalescer.read(ReadCoalescer.Read.BALANCE, 2, null, () -> 301L).longValue());
+            assertEquals(302L, coalescer.read(ReadCoalescer.Read.LAST_TEN, 1, null, () -> 302L).longValue());
+
+            while (collapsed("balance") < 7) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            assertEquals(101L, leader.get().longValue());
+            for (Future<Long> follower : followers) {
+                assertEquals(101L, follower.get().longValue());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, queries.get());
+        assertEquals(3, meterRegistry.get("bank.coalescing.requests").tag("result", "executed")
+                .functionCounters().stream().mapToDouble(counter -> counter.count()).sum());
+    }
+
+    @Test
+    public void testWriteStartsANewQuery() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Long> beforeWrite = executor.submit(() -> coalescer.read(ReadCoalescer.Read.BALANCE, 1, null, () -> {
+                started.countDown();
+                await(release);
+                return 100L;
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            coalescer.forget(1);
+            assertEquals(150L, coalescer.read(ReadCoalescer.Read.BALANCE, 1, null, () -> 150L).longValue());
+
+            release.countDown();
+            assertEquals(100L, beforeWrite.get().longValue());
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(0, collapsed("balance"));
+    }
+
+    @Test
+    public void testFailureIsSharedAndNotKept() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Long> leader = executor.submit(() -> coalescer.read(ReadCoalescer.Read.BALANCE, 9, null, () -> {
+                started.countDown();
+                await(release);
+                throw new AccountNumberNotFoundException("Account Number Not Found");
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            Future<Long> follower = executor.submit(() ->
+                    coalescer.read(ReadCoalescer.Read.BALANCE, 9, null, () -> 0L));
+            while (collapsed("balance") < 1) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            assertTrue(assertThrows(ExecutionException.class, leader::get).getCause() instanceof AccountNumberNotFoundException);
+            assertTrue(assertThrows(ExecutionException.class, follower::get).getCause() instanceof AccountNumberNotFoundException);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(5L, coalescer.read(ReadCoalescer.Read.BALANCE, 9, null, () -> 5L).longValue());
+    }
+
+    private double collapsed(String read) {
+        return meterRegistry.get("bank.coalescing.requests").tags("read", read, "result", "collapsed")
+                .functionCounter().count();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
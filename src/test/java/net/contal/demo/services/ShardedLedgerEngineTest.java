@@ -0,0 +1,196 @@
+package net.contal.demo.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.contal.demo.DbUtils;
+import net.contal.demo.exceptions.InsufficientBalanceException;
+import net.contal.demo.exceptions.ServiceException;
+import net.contal.demo.modal.CustomerAccount;
+import net.contal.demo.modal.ShardStats;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.persistence.LockModeType;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:bank-sharded;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "bank.engine.mode=sharded",
+        "bank.engine.shards=2",
+        "bank.journal.enabled=true",
+        "bank.journal.directory=${java.io.tmpdir}/bank-journal-${random.uuid}"
+})
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ShardedLedgerEngineTest {
+
+    private static final int THREADS = 8;
+    private static final int POSTINGS_PER_THREAD = 250;
+
+    @Autowired
+    BankService bankService;
+
+    @Autowired
+    DbUtils dbUtils;
+
+    @Autowired
+    ShardedLedgerEngine ledgerEngine;
+
+    @AfterAll
+    public void deleteJournals() throws IOException {
+        // the journals of the context's engine, the context itself outlives the class
+        Path journalDirectory = Paths.get((String) ReflectionTestUtils.getField(ledgerEngine, "journalDirectory"));
+        try (Stream<Path> files = Files.walk(journalDirectory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentPostingsArePersisted() throws Exception {
+        CustomerAccount account = new CustomerAccount();
+        account.setFirstName("Hot");
+        account.setLastName("Account");
+        account.setAccountBalanceCents(1000L);
+        int accountNumber = bankService.createAnAccount(account);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < POSTINGS_PER_THREAD; j++) {
+                        assertTrue(bankService.addTransactions(accountNumber, 200L));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long expected = 1000L + THREADS * POSTINGS_PER_THREAD * 200L;
+        assertEquals(expected, bankService.getBalance(accountNumber));
+        assertThrows(InsufficientBalanceException.class, () -> bankService.addTransactions(accountNumber, -expected - 1));
+        assertFalse(bankService.addTransactions(12345, 100L));
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (persisted() < THREADS * POSTINGS_PER_THREAD && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(THREADS * POSTINGS_PER_THREAD, persisted());
+        assertEquals(expected, bankService.getBalance(accountNumber, true));
+        assertEquals(expected, bankService.getAccountDetails(accountNumber).getAccountBalanceCents());
+        assertEquals(expected, bankService.getDateBalance(accountNumber, LocalDate.now(), null).get(LocalDate.now()).longValue());
+    }
+
+    @Test
+    public void testJournalIsReplayedOnStartup(@TempDir Path directory) throws Exception {
+        CustomerAccount account = new CustomerAccount();
+        account.setFirstName("Replayed");
+        account.setLastName("Account");
+        int accountNumber = bankService.createAnAccount(account);
+
+        try (TransactionJournal journal = TransactionJournal.open(directory.resolve("shard-7.wal"), 16)) {
+            journal.append(accountNumber, 500L, System.currentTimeMillis());
+            journal.append(accountNumber, 750L, System.currentTimeMillis());
+        }
+
+        ShardedLedgerEngine engine = new ShardedLedgerEngine(dbUtils, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(engine, "mode", ShardedLedgerEngine.MODE);
+        ReflectionTestUtils.setField(engine, "shardCount", 1);
+        ReflectionTestUtils.setField(engine, "journalEnabled", true);
+        ReflectionTestUtils.setField(engine, "journalDirectory", directory.toString());
+        ReflectionTestUtils.setField(engine, "journalCapacity", 16);
+        engine.start();
+        try {
+            assertEquals(1250L, engine.getBalance(accountNumber));
+        } finally {
+            engine.stop();
+        }
+        assertEquals(1250L, bankService.getBalance(accountNumber, true));
+
+        // the checkpoint prevents a second replay
+        engine.start();
+        engine.stop();
+        assertEquals(1250L, bankService.getBalance(accountNumber, true));
+    }
+
+    @Test
+    public void testPostingTheCallerGaveUpOnIsDropped() throws Exception {
+        CustomerAccount account = new CustomerAccount();
+        account.setFirstName("Timed");
+        account.setLastName("Out");
+        int accountNumber = bankService.createAnAccount(account);
+
+        ShardedLedgerEngine engine = new ShardedLedgerEngine(dbUtils, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(engine, "mode", ShardedLedgerEngine.MODE);
+        ReflectionTestUtils.setField(engine, "shardCount", 1);
+        ReflectionTestUtils.setField(engine, "timeoutMillis", 300L);
+        engine.start();
+        // the account row stays locked, so the persister blocks and the shard with it once its queued batches are full
+        Session lock = dbUtils.openASession();
+        int posted = 0;
+        try {
+            lock.createQuery("from CustomerAccount ca where ca.accountNumber = :accountNumber", CustomerAccount.class)
+                    .setParameter("accountNumber", accountNumber)
+                    .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                    .getSingleResult();
+            while (true) {
+                try {
+                    assertTrue(engine.post(accountNumber, 100L));
+                    posted++;
+                } catch (ServiceException e) {
+                    break;
+                }
+                assertTrue(posted < 100, "The shard never blocked");
+            }
+        } finally {
+            lock.getTransaction().commit();
+            lock.close();
+        }
+        try {
+            long deadline = System.currentTimeMillis() + 20_000;
+            while (engine.getStats().get(0).getPersisted() < posted && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            // without the posting that timed out
+            assertEquals(posted * 100L, engine.getBalance(accountNumber));
+        } finally {
+            engine.stop();
+        }
+        assertEquals(posted * 100L, bankService.getBalance(accountNumber, true));
+    }
+
+    private long persisted() {
+        long persisted = 0;
+        for (ShardStats stats : bankService.getEngineStats()) {
+            persisted += stats.getPersisted();
+        }
+        return persisted;
+    }
+}
@@ -0,0 +1,144 @@
+package net.contal.demo.services;
+
+import net.contal.demo.DbUtils;
+import net.contal.demo.modal.BankTransaction;
+import net.contal.demo.modal.CustomerAccount;
+import net.contal.demo.modal.OpeningBalance;
+import net.contal.demo.modal.StatementLine;
+import net.contal.demo.modal.TransactionDetails;
+import net.contal.demo.modal.TransactionPage;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Archives the older half of an account's transactions and reads the account through both stores.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:bank-archive;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "bank.archive.chunk-size=4",
+        "bank.export.chunk-size=3"
+})
+public class TransactionArchiverTest {
+
+    private static final int TRANSACTIONS = 12;
+
+    @Autowired
+    BankService bankService;
+
+    @Autowired
+    TransactionArchiver archiver;
+
+    @Autowired
+    DbUtils dbUtils;
+
+    @Test
+    public void testArchivedTransactionsAreReadThrough() {
+        int accountNumber = createAccountWithHistory();
+        LocalDateTime horizon = LocalDate.now().minusDays(TRANSACTIONS / 2).atStartOfDay();
+
+        // the opening balance and the first five postings
+        assertEquals(6, archiver.archive(horizon));
+        assertEquals(0, archiver.archive(horizon));
+
+        OpeningBalance openingBalance = dbUtils.readOnly(session -> session.get(OpeningBalance.class, accountNumber));
+        assertEquals(6, openingBalance.getArchivedTransactions());
+        assertEquals(10000L + 1500L, openingBalance.getBalanceCents());
+        long balance = 10000L + 7800L;
+        assertEquals(balance, bankService.getBalance(accountNumber));
+        assertEquals(balance, bankService.getBalance(accountNumber, true));
+
+        // newest first across the table and the archive, one page at a time
+        List<TransactionDetails> history = new ArrayList<>();
+        String cursor = null;
+        do {
+            TransactionPage page = bankService.getTransactionHistory(accountNumber, cursor, 5);
+            history.addAll(page.getTransactions());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        assertEquals(TRANSACTIONS + 1, history.size());
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            assertEquals((TRANSACTIONS - i) * 100L, history.get(i).getTransactionAmountCents());
+        }
+        assertEquals(10000L, history.get(TRANSACTIONS).getTransactionAmountCents());
+
+        List<StatementLine> exported = export(accountNumber);
+        assertEquals(TRANSACTIONS + 1, exported.size());
+        for (int i = 1; i < exported.size(); i++) {
+            assertTrue(exported.get(i).getTransactionTime().isAfter(exported.get(i - 1).getTransactionTime()));
+        }
+    }
+
+    @Test
+    public void testLastTenAndDailyBalancesIncludeTheArchive() {
+        int accountNumber = createAccountWithHistory();
+        archiver.archive(LocalDate.now().minusDays(2).atStartOfDay());
+
+        List<TransactionDetails> lastTen = bankService.getLastTenTransactions(accountNumber);
+        assertEquals(10, lastTen.size());
+        assertEquals(TRANSACTIONS * 100L, lastTen.get(0).getTransactionAmountCents());
+        assertEquals(300L, lastTen.get(9).getTransactionAmountCents());
+
+        // rebuilt from both stores
+        dbUtils.inTransaction(session -> session.createQuery("delete from DailyBalance db where db.accountNumber = :accountNumber")
+                .setParameter("accountNumber", accountNumber)
+                .executeUpdate());
+        Map<LocalDate, Long> dateBalance = bankService.getDateBalance(accountNumber);
+        assertEquals(TRANSACTIONS + 1, dateBalance.size());
+        assertEquals(10000L + 7800L, dateBalance.get(LocalDate.now()).longValue());
+    }
+
+    /**
+     * @return account whose opening balance is {@value #TRANSACTIONS} days old, followed by a posting of
+     * {@code n * 100} cents on each later day
+     */
+    private int createAccountWithHistory() {
+        CustomerAccount account = new CustomerAccount();
+        account.setFirstName("Archive");
+        account.setLastName("Test");
+        account.setAccountBalanceCents(10000L);
+        int accountNumber = bankService.createAnAccount(account);
+        for (int i = 1; i <= TRANSACTIONS; i++) {
+            bankService.addTransactions(accountNumber, i * 100L);
+        }
+        dbUtils.inTransaction(session -> {
+            List<BankTransaction> transactions = session.createQuery("from BankTransaction bt " +
+                    "where bt.customerAccount.accountNumber = :accountNumber order by bt.id", BankTransaction.class)
+                    .setParameter("accountNumber", accountNumber)
+                    .getResultList();
+            LocalDateTime now = LocalDateTime.now();
+            for (int i = 0; i < transactions.size(); i++) {
+                LocalDateTime time = now.minusDays(TRANSACTIONS - i);
+                transactions.get(i).setTransactionTime(time);
+                transactions.get(i).setTransactionDate(time.toLocalDate());
+            }
+            return null;
+        });
+        return accountNumber;
+    }
+
+    private List<StatementLine> export(int accountNumber) {
+        List<StatementLine> lines = new ArrayList<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bankService.exportTransactions(accountNumber, StatementWriter.csv(out));
+        String[] rows = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        for (int i = 1; i < rows.length; i++) {
+            String[] fields = rows[i].split(",");
+            lines.add(new StatementLine(Long.parseLong(fields[0]), Integer.parseInt(fields[1]),
+                    LocalDate.parse(fields[2]), LocalDateTime.parse(fields[3]), 0));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,149 @@
+package net.contal.demo.services;
+
+import net.contal.demo.exceptions.ServiceException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransactionJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRecordsSurviveReopen() throws Exception {
+        Path path = directory.resolve("shard-0.wal");
+        try (TransactionJournal journal = TransactionJournal.open(path, 16)) {
+            long first = journal.append(12345678, 1000L, 1000L);
+            long second = journal.append(12345679, -250L, 2000L);
+            CompletableFuture<Void> durable = journal.whenDurable(second);
+            durable.get(5, TimeUnit.SECONDS);
+            assertEquals(1, first);
+            assertEquals(2, second);
+            assertTrue(journal.getDurableSequence() >= second);
+        }
+
+        try (TransactionJournal journal = TransactionJournal.open(path, 16)) {
+            List<TransactionJournal.JournalRecord> records = journal.recordsAfter(0);
+            assertEquals(2, records.size());
+            assertEquals(12345679, records.get(1).getAccountNumber());
+            assertEquals(-250L, records.get(1).getAmountCents());
+            assertEquals(2000L, records.get(1).getTimestamp());
+
+            journal.markApplied(1);
+            assertEquals(1, journal.recordsAfter(journal.getAppliedSequence()).size());
+            assertEquals(3, journal.append(12345678, 100L, 3000L));
+        }
+    }
+
+    @Test
+    public void testSlotsAreReusedOnceApplied() throws Exception {
+        Path path = directory.resolve("shard-1.wal");
+        try (TransactionJournal journal = TransactionJournal.open(path, 4)) {
+            for (int i = 0; i < 4; i++) {
+                journal.append(12345678, 100L, i);
+            }
+            assertFalse(journal.hasSpace());
+            assertFalse(journal.awaitSpace(10));
+
+            journal.markApplied(2);
+            assertTrue(journal.hasSpace());
+            assertEquals(5, journal.append(12345678, 100L, 5));
+            journal.whenDurable(5).get(5, TimeUnit.SECONDS);
+        }
+
+        try (TransactionJournal journal = TransactionJournal.open(path, 4)) {
+            List<TransactionJournal.JournalRecord> records = journal.recordsAfter(journal.getAppliedSequence());
+            assertEquals(3, records.size());
+            assertEquals(3, records.get(0).getSequence());
+            assertEquals(5, records.get(2).getSequence());
+            assertEquals(6, journal.append(12345678, 100L, 6));
+        }
+    }
+
+    @Test
+    public void testRecordsOfAFailedFsyncAreNotReplayed() throws Exception {
+        Path path = directory.resolve("shard-3.wal");
+        AtomicBoolean failing = new AtomicBoolean();
+        try (TransactionJournal journal = TransactionJournal.open(path, 16, buffer -> {
+            if (failing.get()) {
+                throw new UncheckedIOException(new IOException("disk gone"));
+            }
+            buffer.force();
+        })) {
+            journal.whenDurable(journal.append(12345678, 100L, 1000L)).get(5, TimeUnit.SECONDS);
+
+            failing.set(true);
+            CompletableFuture<Void> failed = journal.whenDurable(journal.append(12345678, 200L, 2000L));
+            assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+            assertThrows(ServiceException.class, () -> journal.append(12345678, 300L, 3000L));
+        }
+
+        try (TransactionJournal journal = TransactionJournal.open(path, 16)) {
+            List<TransactionJournal.JournalRecord> records = journal.recordsAfter(0);
+            assertEquals(1, records.size());
+            assertEquals(100L, records.get(0).getAmountCents());
+            assertEquals(2, journal.append(12345678, 400L, 4000L));
+        }
+    }
+
+    @Test
+    public void testJournalOnlyOpensWithItsCapacity() throws Exception {
+        Path path = directory.resolve("shard-4.wal");
+        try (TransactionJournal journal = TransactionJournal.open(path, 16)) {
+            journal.append(12345678, 100L, 1000L);
+        }
+        assertThrows(IOException.class, () -> TransactionJournal.open(path, 8));
+        assertThrows(IOException.class, () -> TransactionJournal.open(path, 32));
+        try (TransactionJournal journal = TransactionJournal.open(path, 16)) {
+            assertEquals(1, journal.recordsAfter(0).size());
+        }
+    }
+
+    @Test
+    public void testDoubleAmountJournalIsConvertedToCents() throws Exception {
+        Path path = directory.resolve("shard-2.wal");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(TransactionJournal.HEADER_SIZE + 4 * TransactionJournal.RECORD_SIZE);
+            buffer.putInt(0, TransactionJournal.MAGIC);
+            buffer.putInt(4, 1);
+            writeDoubleRecord(buffer, 0, 1, 12345678, 10.1);
+            writeDoubleRecord(buffer, 1, 2, 12345678, -0.29);
+            channel.write(buffer);
+        }
+
+        for (int open = 0; open < 2; open++) {
+            try (TransactionJournal journal = TransactionJournal.open(path, 4)) {
+                List<TransactionJournal.JournalRecord> records = journal.recordsAfter(0);
+                assertEquals(2, records.size());
+                assertEquals(1010L, records.get(0).getAmountCents());
+                assertEquals(-29L, records.get(1).getAmountCents());
+            }
+        }
+        // the header had no capacity yet, the file holds 4 slots
+        assertThrows(IOException.class, () -> TransactionJournal.open(path, 16));
+    }
+
+    private static void writeDoubleRecord(ByteBuffer buffer, int slot, long sequence, int accountNumber, double amount) {
+        int offset = TransactionJournal.HEADER_SIZE + slot * TransactionJournal.RECORD_SIZE;
+        long amountBits = Double.doubleToLongBits(amount);
+        buffer.putLong(offset, sequence);
+        buffer.putLong(offset + 8, sequence * 1000);
+        buffer.putLong(offset + 16, amountBits);
+        buffer.putInt(offset + 24, accountNumber);
+        buffer.putInt(offset + 28, TransactionJournal.checksum(sequence, sequence * 1000, amountBits, accountNumber));
+    }
+}